@@ -0,0 +1,75 @@
+package net.cg360.spookums.loadgen;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in log-linear buckets, each power of two being split
+ * into 64 so any recorded value is off by at most ~1.6%. Recording is a
+ * single atomic increment, so any number of threads can record at once.
+ */
+public class LatencyHistogram {
+
+    protected static final int SUB_BUCKET_BITS = 6;
+    protected static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    protected static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    protected final AtomicLongArray counts;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKET_COUNT);
+    }
+
+
+    public void record(long nanos) {
+        counts.incrementAndGet(indexOf(Math.max(0, nanos)));
+    }
+
+    /**
+     * @param percentile from 0 to 100.
+     * @return the highest value in the bucket holding the percentile, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+
+        if(total == 0) return 0;
+
+        long target = Math.max(1, (long) Math.ceil((percentile / 100d) * total));
+        long seen = 0;
+
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if(seen >= target) return upperBoundOf(i);
+        }
+
+        return upperBoundOf(BUCKET_COUNT - 1);
+    }
+
+    public long getCount() {
+        long total = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++) total += counts.get(i);
+        return total;
+    }
+
+
+    protected static int indexOf(long value) {
+        if(value < SUB_BUCKETS) return (int) value;
+
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        int mantissa = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return ((shift + 1) << SUB_BUCKET_BITS) + mantissa;
+    }
+
+    protected static long upperBoundOf(int index) {
+        if(index < SUB_BUCKETS) return index;
+
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long mantissa = index & (SUB_BUCKETS - 1);
+        return ((SUB_BUCKETS + mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,375 @@
+package net.cg360.spookums.loadgen;
+
+import net.cg360.spookums.server.exception.MalformedFrameException;
+import net.cg360.spookums.server.network.VanillaProtocol;
+import net.cg360.spookums.server.network.netimpl.frame.FrameDecoder;
+import net.cg360.spookums.server.network.packet.NetworkPacket;
+import net.cg360.spookums.server.network.packet.auth.PacketInLogin;
+import net.cg360.spookums.server.network.packet.auth.PacketInUpdateAccount;
+import net.cg360.spookums.server.network.packet.generic.PacketInOutChatMessage;
+import net.cg360.spookums.server.network.packet.info.PacketInOutBatch;
+import net.cg360.spookums.server.network.packet.info.PacketInProtocolCheck;
+import net.cg360.spookums.server.network.packet.info.PacketInServerPingRequest;
+import net.cg360.spookums.server.util.NetworkBuffer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A single simulated client with a real TCP connection. It's only ever
+ * touched by the LoadWorkerThread that owns it.
+ *
+ * Pings and auth requests carry no ID, so only one of each is in flight
+ * at a time and a response always belongs to the request waiting on it.
+ * (The auth checks also run off the network thread, so two could be
+ * answered out of order.) The server drops requests over its rate limits
+ * without answering, so anything unanswered by its deadline is counted
+ * as a timeout and given up on, letting the client carry on. A response
+ * turning up after that with nothing waiting is ignored, rather than
+ * being counted again.
+ */
+public class LoadClient {
+
+    public static final long NEVER = Long.MAX_VALUE;
+
+    protected final int index;
+    protected final LoadProfile profile;
+    protected final LoadStats stats;
+    protected final String runID; // Keeps usernames unique between runs.
+    protected final long timeoutNanos; // How long a request is waited on before it's counted as timed out.
+
+    protected SocketChannel channel;
+    protected SelectionKey key;
+    protected final FrameDecoder decoder;
+    protected final ByteBuffer outbound; // Frames waiting to be written. Left in write mode.
+
+    protected Pending pendingProtocol; // Each null if nothing is in flight.
+    protected Pending pendingPing;
+    protected Pending pendingAuth;
+    protected int latePings; // Timed out pings which could still be answered.
+    protected int lateAuth;
+
+    protected State state;
+    protected long connectNanos;
+    protected long nextPing;
+    protected long nextChat;
+    protected long nextLogin;
+    protected long nextRegister;
+
+    protected String username;
+    protected String password;
+    protected boolean hasAccount;
+    protected int accountCount; // Registrations sent, used for fresh usernames.
+
+    public LoadClient(int index, LoadProfile profile, LoadStats stats, String runID, long timeoutNanos) {
+        this.index = index;
+        this.profile = profile;
+        this.stats = stats;
+        this.runID = runID;
+        this.timeoutNanos = timeoutNanos;
+
+        this.channel = null;
+        this.key = null;
+        this.decoder = new FrameDecoder(this::onFrame);
+        this.outbound = ByteBuffer.allocate(VanillaProtocol.MAX_BUFFER_SIZE);
+
+        this.pendingProtocol = null;
+        this.pendingPing = null;
+        this.pendingAuth = null;
+        this.latePings = 0;
+        this.lateAuth = 0;
+
+        this.state = State.NEW;
+        this.nextPing = NEVER;
+        this.nextChat = NEVER;
+        this.nextLogin = NEVER;
+        this.nextRegister = NEVER;
+
+        this.username = null;
+        this.password = "load-" + Integer.toHexString(ThreadLocalRandom.current().nextInt());
+        this.hasAccount = false;
+        this.accountCount = 0;
+    }
+
+
+    /** Starts connecting without blocking. */
+    public void connect(InetSocketAddress address, Selector selector) throws IOException {
+        this.channel = SocketChannel.open();
+        this.channel.configureBlocking(false);
+        this.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+        this.connectNanos = System.nanoTime();
+        this.state = State.CONNECTING;
+        this.key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+
+        if(channel.connect(address)) onConnected();
+    }
+
+    protected void onConnected() throws IOException {
+        long now = System.nanoTime();
+        stats.recordResponse(RequestType.CONNECT, now - connectNanos);
+        stats.recordOpened();
+        key.interestOps(SelectionKey.OP_READ);
+
+        if(profile.doesHandshake()) {
+            this.state = State.HANDSHAKE;
+            pendingProtocol = new Pending(RequestType.PROTOCOL_CHECK, now);
+            send(new PacketInProtocolCheck(), RequestType.PROTOCOL_CHECK);
+            flush();
+
+        } else {
+            onReady(now);
+        }
+    }
+
+    protected void onReady(long now) {
+        this.state = State.READY;
+        this.nextPing = schedule(now, profile.getPingRate());
+        this.nextChat = schedule(now, profile.getChatRate());
+        this.nextLogin = schedule(now, profile.getLoginRate());
+        this.nextRegister = profile.registersOnJoin() ? now : schedule(now, profile.getRegisterRate());
+    }
+
+
+    /** Handles whatever the selector says the channel is ready for. */
+    public void handleKey() {
+        try {
+            if(key.isConnectable()) {
+                if(channel.finishConnect()) onConnected();
+                return;
+            }
+
+            if(key.isReadable() && (decoder.readFrom(channel) < 0)) {
+                close("closed by server");
+                return;
+            }
+
+            if(key.isValid() && key.isWritable()) flush();
+
+        } catch (MalformedFrameException frameErr) {
+            close("malformed frame from server");
+
+        } catch (IOException err) {
+            close(state == State.CONNECTING ? "connect failed: " + err.getMessage() : "io error: " + err.getMessage());
+        }
+    }
+
+    /**
+     * Sends anything that's due.
+     * @return when something is next due, in System.nanoTime() terms.
+     */
+    public long runDue(long now) {
+        if(state == State.HANDSHAKE) {
+            if(now - pendingProtocol.sentNanos < timeoutNanos) return pendingProtocol.sentNanos + timeoutNanos;
+
+            close(RequestType.PROTOCOL_CHECK.getLabel() + " timed out");
+            return NEVER;
+        }
+
+        if(state != State.READY) return NEVER;
+
+        if((pendingPing != null) && (now - pendingPing.sentNanos >= timeoutNanos)) {
+            stats.recordError(RequestType.PING.getLabel() + " timed out");
+            this.pendingPing = null;
+            this.latePings++;
+        }
+
+        if((pendingAuth != null) && (now - pendingAuth.sentNanos >= timeoutNanos)) {
+            stats.recordError(pendingAuth.type.getLabel() + " timed out");
+            this.pendingAuth = null;
+            this.lateAuth++;
+        }
+
+        try {
+            // Pings wait for the last one to be answered (or time out) too.
+            if((pendingPing == null) && (now >= nextPing)) {
+                pendingPing = new Pending(RequestType.PING, now);
+                send(new PacketInServerPingRequest(), RequestType.PING);
+                nextPing = schedule(now, profile.getPingRate());
+            }
+
+            if(now >= nextChat) {
+                send(new PacketInOutChatMessage("load test message from client " + index), RequestType.CHAT);
+                nextChat = schedule(now, profile.getChatRate());
+            }
+
+            // Auth requests wait for the last one to be answered.
+            if(pendingAuth == null) {
+
+                if(now >= nextRegister) {
+                    this.username = "lg" + runID + "x" + index + "x" + (accountCount++);
+                    pendingAuth = new Pending(RequestType.REGISTER, now);
+                    send(new PacketInUpdateAccount().setCreatingNewAccount(true).setNewUsername(username).setNewPassword(password), RequestType.REGISTER);
+                    nextRegister = schedule(now, profile.getRegisterRate());
+
+                } else if(now >= nextLogin) {
+                    String loginName = username == null ? "lg" + runID + "x" + index : username; // Fails without an account, which is still load.
+                    pendingAuth = new Pending(RequestType.LOGIN, now);
+                    send(new PacketInLogin().setCredentials(loginName, password), RequestType.LOGIN);
+                    nextLogin = schedule(now, profile.getLoginRate());
+                }
+            }
+
+            flush();
+
+        } catch (IOException err) {
+            close("io error: " + err.getMessage());
+            return NEVER;
+        }
+
+        long next = nextChat;
+        next = Math.min(next, pendingPing == null ? nextPing : pendingPing.sentNanos + timeoutNanos);
+        next = Math.min(next, pendingAuth == null ? Math.min(nextLogin, nextRegister) : pendingAuth.sentNanos + timeoutNanos);
+        return next;
+    }
+
+
+    protected void send(NetworkPacket packet, RequestType type) throws IOException {
+        NetworkBuffer frame = packet.encode();
+
+        if(outbound.remaining() < frame.capacity()) {
+            flush();
+
+            if(outbound.remaining() < frame.capacity()) {
+                stats.recordError("send buffer full (" + type.getLabel() + ")");
+                return;
+            }
+        }
+
+        outbound.put(frame.array(), frame.arrayOffset(), frame.capacity());
+        stats.recordSent(type);
+    }
+
+    protected void flush() throws IOException {
+        if(outbound.position() == 0) return;
+
+        outbound.flip();
+        channel.write(outbound);
+        outbound.compact();
+
+        // Wait for OP_WRITE if the socket couldn't take it all.
+        int interest = outbound.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        if(key.interestOps() != interest) key.interestOps(interest);
+    }
+
+
+    protected void onFrame(NetworkBuffer frame) {
+        byte packetID = frame.peek(FrameDecoder.SIZE_BYTES);
+
+        if(packetID == VanillaProtocol.PACKET_PROTOCOL_BATCH) {
+            frame.reset();
+            int contentSize = frame.getUnsignedShort() - 1;
+            frame.get();
+
+            NetworkBuffer content = frame.slice(contentSize);
+            while (content.countBytesRemaining() > 0) onFrame(PacketInOutBatch.nextFrame(content));
+            return;
+        }
+
+        long now = System.nanoTime();
+
+        switch (packetID) {
+            case VanillaProtocol.PACKET_PROTOCOL_SUCCESS:
+            case VanillaProtocol.PACKET_PROTOCOL_ERROR:
+                if(pendingProtocol != null) stats.recordResponse(RequestType.PROTOCOL_CHECK, now - pendingProtocol.sentNanos);
+                this.pendingProtocol = null;
+
+                if(packetID == VanillaProtocol.PACKET_PROTOCOL_ERROR) close("protocol rejected");
+                else if(state == State.HANDSHAKE) onReady(now);
+                break;
+
+            case VanillaProtocol.PACKET_SERVER_DETAIL:
+                if(pendingPing != null) {
+                    stats.recordResponse(RequestType.PING, now - pendingPing.sentNanos);
+                    this.pendingPing = null;
+
+                } else if(latePings > 0) latePings--; // Already counted as a timeout.
+                else stats.recordError("unrequested server detail");
+                break;
+
+            case VanillaProtocol.PACKET_LOGIN_RESPONSE:
+                Pending auth = pendingAuth;
+                this.pendingAuth = null;
+
+                if(auth == null) {
+                    if(lateAuth > 0) lateAuth--; // Already counted as a timeout.
+                    else stats.recordError("unrequested login response");
+                    break;
+                }
+
+                stats.recordResponse(auth.type, now - auth.sentNanos);
+
+                int status = frame.capacity() > FrameDecoder.SIZE_BYTES + 1 ? frame.peek(FrameDecoder.SIZE_BYTES + 1) : -1;
+                if(status == 0) {
+                    if(auth.type == RequestType.REGISTER) this.hasAccount = true;
+
+                } else {
+                    stats.recordError(auth.type.getLabel() + " status " + status);
+                }
+                break;
+
+            case VanillaProtocol.PACKET_DISCONNECT_REASON:
+                close("disconnected by server");
+                break;
+
+            default:
+                break; // Chat, notices etc. aren't timed.
+        }
+    }
+
+
+    /** Closes the connection, counting the reason as an error if it wasn't asked for. */
+    public void close(String reason) {
+        if(state == State.CLOSED) return;
+        if(state != State.CONNECTING && state != State.NEW) stats.recordClosed();
+        if(reason != null) stats.recordError(reason);
+
+        this.state = State.CLOSED;
+
+        try {
+            if(key != null) key.cancel();
+            if(channel != null) channel.close();
+
+        } catch (IOException ignored) { }
+    }
+
+
+    protected static long schedule(long now, double rate) {
+        if(rate <= 0) return NEVER;
+        double seconds = -Math.log(1d - ThreadLocalRandom.current().nextDouble()) / rate;
+        return now + (long) (seconds * 1e9);
+    }
+
+
+
+    public int getIndex() { return index; }
+    public LoadProfile getProfile() { return profile; }
+    public State getState() { return state; }
+    public boolean hasAccount() { return hasAccount; }
+
+
+    public enum State {
+        NEW,
+        CONNECTING,
+        HANDSHAKE,
+        READY,
+        CLOSED
+    }
+
+    protected static class Pending {
+
+        protected final RequestType type;
+        protected final long sentNanos;
+
+        protected Pending(RequestType type, long sentNanos) {
+            this.type = type;
+            this.sentNanos = sentNanos;
+        }
+    }
+}
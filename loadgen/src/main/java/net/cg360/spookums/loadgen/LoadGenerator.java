@@ -0,0 +1,153 @@
+package net.cg360.spookums.loadgen;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A headless load generator. Opens lots of real TCP connections to a
+ * server and has each run a LoadProfile, then reports throughput,
+ * per-type latency percentiles and errors.
+ *
+ * Arguments are all optional and given as --key=value:
+ * host (127.0.0.1), port (22057), clients (100), threads (cpu count),
+ * duration in seconds (30), ramp - seconds taken to open every connection (5),
+ * report - seconds between interval reports (5),
+ * timeout - seconds a request is waited on before it counts as an error (10),
+ * profile - a preset or a weighted mix such as "lobby:80,ping:20" (lobby),
+ * ping-rate, chat-rate, login-rate, register-rate - override every profile's rates.
+ */
+public class LoadGenerator {
+
+    protected final InetSocketAddress address;
+    protected final int clientCount;
+    protected final int threadCount;
+    protected final long durationNanos;
+    protected final long rampNanos;
+    protected final long reportNanos;
+    protected final long timeoutNanos;
+    protected final List<LoadProfile> profiles;
+    protected final List<Integer> weights;
+
+    protected final LoadStats stats;
+
+    public LoadGenerator(HashMap<String, String> options) {
+        String host = options.getOrDefault("host", "127.0.0.1");
+        int port = Integer.parseInt(options.getOrDefault("port", "22057"));
+
+        this.address = new InetSocketAddress(host, port);
+        this.clientCount = Math.max(1, Integer.parseInt(options.getOrDefault("clients", "100")));
+        this.threadCount = Math.max(1, Integer.parseInt(options.getOrDefault("threads", String.valueOf(Runtime.getRuntime().availableProcessors()))));
+        this.durationNanos = secondsToNanos(options.getOrDefault("duration", "30"));
+        this.rampNanos = secondsToNanos(options.getOrDefault("ramp", "5"));
+        this.reportNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(100), secondsToNanos(options.getOrDefault("report", "5")));
+        this.timeoutNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1), secondsToNanos(options.getOrDefault("timeout", "10")));
+
+        this.profiles = new ArrayList<>();
+        this.weights = new ArrayList<>();
+
+        for(String entry: options.getOrDefault("profile", "lobby").split(",")) {
+            String[] parts = entry.split(":");
+            LoadProfile profile = LoadProfile.preset(parts[0]);
+
+            if(options.containsKey("ping-rate")) profile.setPingRate(Double.parseDouble(options.get("ping-rate")));
+            if(options.containsKey("chat-rate")) profile.setChatRate(Double.parseDouble(options.get("chat-rate")));
+            if(options.containsKey("login-rate")) profile.setLoginRate(Double.parseDouble(options.get("login-rate")));
+            if(options.containsKey("register-rate")) profile.setRegisterRate(Double.parseDouble(options.get("register-rate")));
+
+            profiles.add(profile);
+            weights.add(parts.length > 1 ? Math.max(0, Integer.parseInt(parts[1])) : 1);
+        }
+
+        this.stats = new LoadStats();
+    }
+
+
+    /** Runs the load for the whole duration, printing reports along the way. */
+    public void run() throws IOException, InterruptedException {
+        System.out.println(String.format("Connecting %d client(s) to %s over %d thread(s) for %.1fs", clientCount, address, threadCount, durationNanos / 1e9));
+        for(int i = 0; i < profiles.size(); i++) System.out.println(String.format("  weight %d: %s", weights.get(i), profiles.get(i)));
+
+        LoadWorkerThread[] workers = new LoadWorkerThread[threadCount];
+        for(int i = 0; i < threadCount; i++) {
+            workers[i] = new LoadWorkerThread(i, address, stats);
+            workers[i].start();
+        }
+
+        String runID = Long.toString(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE), 36);
+        long start = System.nanoTime();
+        long end = start + durationNanos;
+        long nextReport = start + reportNanos;
+        int added = 0;
+
+        while (System.nanoTime() < end) {
+            long now = System.nanoTime();
+
+            // Clients are spread evenly over the ramp.
+            int due = rampNanos <= 0 ? clientCount : (int) Math.min(clientCount, ((now - start) * clientCount) / rampNanos);
+            for(; added < due; added++) workers[added % threadCount].addClient(new LoadClient(added, pickProfile(added), stats, runID, timeoutNanos));
+
+            if(now >= nextReport) {
+                System.out.println(stats.createIntervalReport());
+                nextReport += reportNanos;
+            }
+
+            Thread.sleep(10);
+        }
+
+        for(LoadWorkerThread worker: workers) worker.shutdown();
+        for(LoadWorkerThread worker: workers) worker.join(TimeUnit.SECONDS.toMillis(5));
+
+        System.out.println();
+        System.out.println(stats.createFinalReport());
+    }
+
+    // Deterministic so a mix like 80:20 is exact rather than roughly right.
+    protected LoadProfile pickProfile(int clientIndex) {
+        int total = 0;
+        for(int weight: weights) total += weight;
+        if(total == 0) return profiles.get(clientIndex % profiles.size());
+
+        int point = clientIndex % total;
+        for(int i = 0; i < profiles.size(); i++) {
+            point -= weights.get(i);
+            if(point < 0) return profiles.get(i);
+        }
+
+        return profiles.get(profiles.size() - 1);
+    }
+
+    public LoadStats getStats() {
+        return stats;
+    }
+
+
+    protected static long secondsToNanos(String seconds) {
+        return (long) (Double.parseDouble(seconds) * 1e9);
+    }
+
+    protected static HashMap<String, String> parseArguments(String[] args) {
+        HashMap<String, String> options = new HashMap<>();
+
+        for(String arg: args) {
+            if(!arg.startsWith("--") || !arg.contains("="))
+                throw new IllegalArgumentException("Arguments should be given as --key=value, got '" + arg + "'");
+
+            int split = arg.indexOf('=');
+            options.put(arg.substring(2, split).toLowerCase(Locale.ROOT), arg.substring(split + 1));
+        }
+
+        return options;
+    }
+
+
+
+    public static void main(String[] args) throws Exception {
+        new LoadGenerator(parseArguments(args)).run();
+    }
+}
@@ -0,0 +1,87 @@
+package net.cg360.spookums.loadgen;
+
+import net.cg360.spookums.server.util.clean.Check;
+
+import java.util.Locale;
+
+/**
+ * How a simulated client behaves once it's connected. Rates are per
+ * client, in actions per second, and the gaps between actions are
+ * random (exponential) so clients don't all act in lock-step.
+ */
+public class LoadProfile {
+
+    protected final String name;
+    protected boolean doesHandshake; // Sends a protocol check first. Required for anything but pings.
+    protected boolean registersOnJoin; // Creates its own account once the handshake is done.
+    protected double pingRate;
+    protected double chatRate;
+    protected double loginRate;
+    protected double registerRate;
+
+    public LoadProfile(String name) {
+        this.name = Check.nullParam(name, "name");
+        this.doesHandshake = true;
+        this.registersOnJoin = false;
+        this.pingRate = 0;
+        this.chatRate = 0;
+        this.loginRate = 0;
+        this.registerRate = 0;
+    }
+
+
+    /**
+     * Creates one of the built-in profiles:
+     * ping - pings once a second without a handshake, like a server list.
+     * idle - handshakes and then does nothing.
+     * lobby - registers, then chats and pings now and again.
+     * chat - registers, then chats once a second.
+     * auth - registers, then logs in twice a second.
+     * @throws IllegalArgumentException if there's no profile with the name.
+     */
+    public static LoadProfile preset(String name) {
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "ping":
+                return new LoadProfile("ping").setDoesHandshake(false).setPingRate(1);
+
+            case "idle":
+                return new LoadProfile("idle");
+
+            case "lobby":
+                return new LoadProfile("lobby").setRegistersOnJoin(true).setChatRate(0.2).setPingRate(0.05);
+
+            case "chat":
+                return new LoadProfile("chat").setRegistersOnJoin(true).setChatRate(1);
+
+            case "auth":
+                return new LoadProfile("auth").setRegistersOnJoin(true).setLoginRate(2);
+
+            default:
+                throw new IllegalArgumentException("Unknown load profile '" + name + "'. Expected ping, idle, lobby, chat or auth");
+        }
+    }
+
+
+    public LoadProfile setDoesHandshake(boolean doesHandshake) { this.doesHandshake = doesHandshake; return this; }
+    public LoadProfile setRegistersOnJoin(boolean registersOnJoin) { this.registersOnJoin = registersOnJoin; return this; }
+    public LoadProfile setPingRate(double pingRate) { this.pingRate = Check.inclusiveLowerBound(pingRate, 0, "pingRate"); return this; }
+    public LoadProfile setChatRate(double chatRate) { this.chatRate = Check.inclusiveLowerBound(chatRate, 0, "chatRate"); return this; }
+    public LoadProfile setLoginRate(double loginRate) { this.loginRate = Check.inclusiveLowerBound(loginRate, 0, "loginRate"); return this; }
+    public LoadProfile setRegisterRate(double registerRate) { this.registerRate = Check.inclusiveLowerBound(registerRate, 0, "registerRate"); return this; }
+
+    public String getName() { return name; }
+    public boolean doesHandshake() { return doesHandshake; }
+    public boolean registersOnJoin() { return registersOnJoin; }
+    public double getPingRate() { return pingRate; }
+    public double getChatRate() { return chatRate; }
+    public double getLoginRate() { return loginRate; }
+    public double getRegisterRate() { return registerRate; }
+
+
+
+    @Override
+    public String toString() {
+        return String.format("%s (handshake: %s, register on join: %s, ping: %s/s, chat: %s/s, login: %s/s, register: %s/s)",
+                name, doesHandshake, registersOnJoin, pingRate, chatRate, loginRate, registerRate);
+    }
+}
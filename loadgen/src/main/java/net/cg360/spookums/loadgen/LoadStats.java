@@ -0,0 +1,140 @@
+package net.cg360.spookums.loadgen;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Totals shared by every simulated client of a run. */
+public class LoadStats {
+
+    protected final EnumMap<RequestType, TypeStats> types;
+    protected final ConcurrentHashMap<String, LongAdder> errors;
+    protected final AtomicLong openConnections;
+    protected final long startNanos;
+
+    // Totals at the last interval report.
+    protected long lastReportNanos;
+    protected long lastSent;
+    protected long lastReceived;
+
+    public LoadStats() {
+        this.types = new EnumMap<>(RequestType.class);
+        for(RequestType type: RequestType.values()) types.put(type, new TypeStats());
+
+        this.errors = new ConcurrentHashMap<>();
+        this.openConnections = new AtomicLong(0);
+        this.startNanos = System.nanoTime();
+        this.lastReportNanos = startNanos;
+        this.lastSent = 0;
+        this.lastReceived = 0;
+    }
+
+
+    public void recordSent(RequestType type) {
+        types.get(type).sent.increment();
+    }
+
+    public void recordResponse(RequestType type, long latencyNanos) {
+        TypeStats stats = types.get(type);
+        stats.received.increment();
+        stats.latency.record(latencyNanos);
+    }
+
+    public void recordError(String error) {
+        errors.computeIfAbsent(error, e -> new LongAdder()).increment();
+    }
+
+    public void recordOpened() { openConnections.incrementAndGet(); }
+    public void recordClosed() { openConnections.decrementAndGet(); }
+
+
+    /** @return a line of throughput since the last call. */
+    public synchronized String createIntervalReport() {
+        long now = System.nanoTime();
+        long sent = getTotalSent();
+        long received = getTotalReceived();
+        double seconds = Math.max(1e-9, (now - lastReportNanos) / 1e9);
+
+        String line = String.format("[%6.1fs] open: %d | sent: %.0f/s | received: %.0f/s | errors: %d",
+                (now - startNanos) / 1e9, openConnections.get(),
+                (sent - lastSent) / seconds, (received - lastReceived) / seconds, getTotalErrors());
+
+        this.lastReportNanos = now;
+        this.lastSent = sent;
+        this.lastReceived = received;
+        return line;
+    }
+
+    /** @return a table of every packet type and error seen over the whole run. */
+    public String createFinalReport() {
+        double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        StringBuilder report = new StringBuilder();
+
+        report.append(String.format("%-10s %10s %10s %10s %10s %10s %10s %10s%n", "type", "sent", "received", "recv/s", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+
+        for(Map.Entry<RequestType, TypeStats> entry: types.entrySet()) {
+            TypeStats stats = entry.getValue();
+            long sent = stats.sent.sum();
+            long received = stats.received.sum();
+            if((sent == 0) && (received == 0)) continue;
+
+            report.append(String.format("%-10s %10d %10d %10.1f %10.3f %10.3f %10.3f %10.3f%n",
+                    entry.getKey().getLabel(), sent, received, received / seconds,
+                    toMillis(stats.latency.getPercentile(50)), toMillis(stats.latency.getPercentile(99)),
+                    toMillis(stats.latency.getPercentile(99.9)), toMillis(stats.latency.getPercentile(100))));
+        }
+
+        report.append(String.format("%nTotal: %d sent, %d received over %.1fs%n", getTotalSent(), getTotalReceived(), seconds));
+
+        if(errors.isEmpty()) {
+            report.append("No errors.\n");
+
+        } else {
+            report.append("Errors:\n");
+            TreeMap<String, LongAdder> sorted = new TreeMap<>(errors);
+            for(Map.Entry<String, LongAdder> entry: sorted.entrySet())
+                report.append(String.format("  %-40s %d%n", entry.getKey(), entry.getValue().sum()));
+        }
+
+        return report.toString();
+    }
+
+
+    public long getTotalSent() {
+        long total = 0;
+        for(TypeStats stats: types.values()) total += stats.sent.sum();
+        return total;
+    }
+
+    public long getTotalReceived() {
+        long total = 0;
+        for(TypeStats stats: types.values()) total += stats.received.sum();
+        return total;
+    }
+
+    public long getTotalErrors() {
+        long total = 0;
+        for(LongAdder count: errors.values()) total += count.sum();
+        return total;
+    }
+
+    public LatencyHistogram getLatency(RequestType type) { return types.get(type).latency; }
+    public long getOpenConnections() { return openConnections.get(); }
+
+
+    protected static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+
+    protected static class TypeStats {
+
+        protected final LongAdder sent = new LongAdder();
+        protected final LongAdder received = new LongAdder();
+        protected final LatencyHistogram latency = new LatencyHistogram();
+    }
+}
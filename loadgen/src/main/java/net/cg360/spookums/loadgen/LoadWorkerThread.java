@@ -0,0 +1,99 @@
+package net.cg360.spookums.loadgen;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a share of the simulated clients on one selector, reading their
+ * responses and sending whatever each of them has due.
+ */
+public class LoadWorkerThread extends Thread {
+
+    protected final InetSocketAddress address;
+    protected final LoadStats stats;
+    protected final Selector selector;
+    protected final ConcurrentLinkedQueue<LoadClient> toConnect; // Added by the main thread as the load ramps up.
+    protected final ArrayList<LoadClient> clients;
+
+    protected volatile boolean isRunning;
+
+    public LoadWorkerThread(int index, InetSocketAddress address, LoadStats stats) throws IOException {
+        super("LoadGen-Worker-" + index);
+        this.setDaemon(true);
+
+        this.address = address;
+        this.stats = stats;
+        this.selector = Selector.open();
+        this.toConnect = new ConcurrentLinkedQueue<>();
+        this.clients = new ArrayList<>();
+        this.isRunning = true;
+    }
+
+
+    /** Has the worker connect a client. Safe to call from any thread. */
+    public void addClient(LoadClient client) {
+        toConnect.add(client);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        long nextDue = LoadClient.NEVER;
+
+        while (isRunning) {
+
+            try {
+                long waitNanos = nextDue - System.nanoTime();
+
+                if(nextDue == LoadClient.NEVER) selector.select(100);
+                else if(waitNanos >= TimeUnit.MILLISECONDS.toNanos(1)) selector.select(TimeUnit.NANOSECONDS.toMillis(waitNanos));
+                else selector.selectNow();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if(key.isValid()) ((LoadClient) key.attachment()).handleKey();
+                }
+
+                LoadClient newClient;
+                while ((newClient = toConnect.poll()) != null) {
+                    clients.add(newClient);
+
+                    try {
+                        newClient.connect(address, selector);
+
+                    } catch (IOException err) {
+                        newClient.close("connect failed: " + err.getMessage());
+                    }
+                }
+
+                long now = System.nanoTime();
+                nextDue = LoadClient.NEVER;
+
+                for(LoadClient client: clients) nextDue = Math.min(nextDue, client.runDue(now));
+
+            } catch (IOException err) {
+                System.err.println(getName() + "'s selector failed: " + err.getMessage());
+                break;
+            }
+        }
+
+        for(LoadClient client: clients) client.close(null);
+
+        try { selector.close(); }
+        catch (IOException ignored) { }
+    }
+
+    /** Stops the worker, closing all of its clients. */
+    public void shutdown() {
+        this.isRunning = false;
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,22 @@
+package net.cg360.spookums.loadgen;
+
+/** Everything a simulated client times or counts. */
+public enum RequestType {
+
+    CONNECT("connect"),
+    PROTOCOL_CHECK("protocol"),
+    PING("ping"),
+    LOGIN("login"),
+    REGISTER("register"),
+    CHAT("chat"); // The server doesn't answer chat, so it's only ever counted.
+
+    private final String label;
+
+    RequestType(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,55 @@
+package net.cg360.spookums.server.bench;
+
+import net.cg360.spookums.server.network.VanillaProtocol;
+import net.cg360.spookums.server.util.NetworkBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The NetworkBuffer primitives every packet is built from. Each call
+ * rewinds the buffer first so it's always writing to (or reading from)
+ * the same spot.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NetworkBufferBenchmark {
+
+    @Param({"ghost", "A chat message of a fairly typical length, maybe sixty chars."})
+    public String text;
+
+    protected NetworkBuffer buffer;
+    protected NetworkBuffer encodedShort;
+    protected int value;
+
+    @Setup
+    public void setup() {
+        this.buffer = NetworkBuffer.allocate(VanillaProtocol.MAX_PACKET_SIZE);
+        this.encodedShort = NetworkBuffer.allocate(2);
+        this.encodedShort.putUnsignedShort(40000);
+        this.value = 40000;
+    }
+
+
+    @Benchmark
+    public boolean putUnsignedShort() {
+        buffer.reset();
+        return buffer.putUnsignedShort(value);
+    }
+
+    @Benchmark
+    public int putSmallUTF8String() {
+        buffer.reset();
+        return buffer.putSmallUTF8String(text);
+    }
+
+    @Benchmark
+    public int getUnsignedShort() {
+        encodedShort.reset();
+        return encodedShort.getUnsignedShort();
+    }
+}
@@ -0,0 +1,71 @@
+package net.cg360.spookums.server.bench;
+
+import net.cg360.spookums.server.network.PacketRegistry;
+import net.cg360.spookums.server.network.VanillaProtocol;
+import net.cg360.spookums.server.network.packet.NetworkPacket;
+import net.cg360.spookums.server.util.NetworkBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full encode and decode of every vanilla packet type. Run with the GC
+ * profiler (the jmh task does) to get the bytes allocated per operation
+ * alongside the time taken.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketCodecBenchmark {
+
+    @Param({
+            "0x01", "0x02", "0x03", "0x04", "0x10", "0x11", "0x12", "0x13",
+            "0x14", "0x15", "0x17", "0x18", "0x20", "0x22", "0x24"
+    }) // Same as SamplePackets.PACKET_IDS, which JMH can't reference.
+    public String packetID;
+
+    protected PacketRegistry registry;
+    protected NetworkPacket packet;
+    protected NetworkBuffer scratch; // For encoding in place.
+    protected NetworkBuffer encoded; // The packet's frame, for decoding.
+    protected byte id;
+
+    @Setup
+    public void setup() {
+        this.registry = SamplePackets.createRegistry();
+        this.id = SamplePackets.parseID(packetID);
+        this.packet = SamplePackets.create(id);
+
+        if(packet == null) throw new IllegalStateException("No sample packet for " + packetID);
+
+        this.scratch = NetworkBuffer.allocate(VanillaProtocol.MAX_PACKET_SIZE);
+        this.encoded = packet.encode();
+    }
+
+
+    /** Encodes into a frame of its own, as EncodedFrame does without a pool. */
+    @Benchmark
+    public NetworkBuffer encode() {
+        return packet.encode();
+    }
+
+    /** Encodes in place, as EncodedFrame does with a pool. */
+    @Benchmark
+    public int encodeInPlace() {
+        return packet.encode(scratch);
+    }
+
+    /** Creates the packet from the registry and decodes the frame into it, as the PacketDispatcher does. */
+    @Benchmark
+    public NetworkPacket decode() {
+        return registry.createPacket(id).decode(encoded);
+    }
+
+    @Benchmark
+    public NetworkPacket roundTrip() {
+        return registry.createPacket(id).decode(packet.encode());
+    }
+}
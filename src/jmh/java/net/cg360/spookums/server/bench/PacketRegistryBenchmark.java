@@ -0,0 +1,54 @@
+package net.cg360.spookums.server.bench;
+
+import net.cg360.spookums.server.network.PacketRegistry;
+import net.cg360.spookums.server.network.VanillaProtocol;
+import net.cg360.spookums.server.network.packet.NetworkPacket;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/** Looking up packet types by ID and creating them, done once for every inbound packet. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketRegistryBenchmark {
+
+    protected PacketRegistry registry;
+    protected byte[] ids;
+    protected int next;
+
+    @Setup
+    public void setup() {
+        this.registry = SamplePackets.createRegistry();
+        this.ids = new byte[SamplePackets.PACKET_IDS.length];
+        for(int i = 0; i < ids.length; i++) ids[i] = SamplePackets.parseID(SamplePackets.PACKET_IDS[i]);
+        this.next = 0;
+    }
+
+    // Cycles through every type so the lookup can't be folded away.
+    protected byte nextID() {
+        byte id = ids[next];
+        next = (next + 1) % ids.length;
+        return id;
+    }
+
+
+    @Benchmark
+    public Optional<Class<? extends NetworkPacket>> lookup() {
+        return registry.getPacketTypeForID(nextID());
+    }
+
+    @Benchmark
+    public NetworkPacket create() {
+        return registry.createPacket(nextID());
+    }
+
+    @Benchmark
+    public NetworkPacket createUnregistered() {
+        return registry.createPacket(VanillaProtocol.PACKET_GAME_STATUS);
+    }
+}
@@ -0,0 +1,90 @@
+package net.cg360.spookums.server.bench;
+
+import net.cg360.spookums.server.network.PacketRegistry;
+import net.cg360.spookums.server.network.VanillaProtocol;
+import net.cg360.spookums.server.network.netimpl.frame.EncodedFrame;
+import net.cg360.spookums.server.network.packet.NetworkPacket;
+import net.cg360.spookums.server.network.packet.auth.PacketInLogin;
+import net.cg360.spookums.server.network.packet.auth.PacketInUpdateAccount;
+import net.cg360.spookums.server.network.packet.auth.PacketOutLoginResponse;
+import net.cg360.spookums.server.network.packet.generic.PacketInOutChatMessage;
+import net.cg360.spookums.server.network.packet.generic.PacketInOutDisconnect;
+import net.cg360.spookums.server.network.packet.generic.PacketInOutError;
+import net.cg360.spookums.server.network.packet.generic.PacketInOutWarn;
+import net.cg360.spookums.server.network.packet.info.*;
+
+/**
+ * Packets filled with realistic values, one for each type registered by
+ * VanillaProtocol, so the benchmarks encode what a server really sends.
+ */
+public final class SamplePackets {
+
+    // Every ID VanillaProtocol registers a type for. Used as a JMH @Param.
+    public static final String[] PACKET_IDS = {
+            "0x01", "0x02", "0x03", "0x04", "0x10", "0x11", "0x12", "0x13",
+            "0x14", "0x15", "0x17", "0x18", "0x20", "0x22", "0x24"
+    };
+
+    private SamplePackets() { }
+
+
+    /** @return a registry with the vanilla protocol applied, kept separate from any primary instance. */
+    public static PacketRegistry createRegistry() {
+        PacketRegistry registry = new PacketRegistry();
+        VanillaProtocol.applyToRegistry(registry);
+        return registry;
+    }
+
+    public static byte parseID(String id) {
+        return (byte) Integer.parseInt(id.substring(2), 16);
+    }
+
+    /** @return a filled in packet of the type, or null if VanillaProtocol doesn't register one. */
+    public static NetworkPacket create(byte id) {
+        switch (id) {
+            case VanillaProtocol.PACKET_PROTOCOL_CHECK:
+                return new PacketInProtocolCheck(VanillaProtocol.PROTOCOL_ID, VanillaProtocol.CAPABILITY_COMPRESSION);
+            case VanillaProtocol.PACKET_PROTOCOL_SUCCESS:
+                return new PacketOutProtocolSuccess(VanillaProtocol.CAPABILITY_COMPRESSION);
+            case VanillaProtocol.PACKET_PROTOCOL_ERROR:
+                return new PacketOutProtocolError(VanillaProtocol.PROTOCOL_ID, "1.0.0");
+
+            case VanillaProtocol.PACKET_PROTOCOL_BATCH:
+                PacketInOutBatch batch = new PacketInOutBatch();
+                for(int i = 0; i < 8; i++) {
+                    EncodedFrame frame = EncodedFrame.encode(new PacketInOutChatMessage("Batched message number " + i));
+                    batch.addFrame(frame);
+                    frame.release(); // The batch holds its own reference.
+                }
+                return batch;
+
+            case VanillaProtocol.PACKET_SERVER_PING_REQUEST:
+                return new PacketInServerPingRequest();
+            case VanillaProtocol.PACKET_SERVER_DETAIL:
+                return new PacketOutServerDetail("Ghost Game Server", "en-gb", "A server used for benchmarking the packet codec.");
+            case VanillaProtocol.PACKET_CLIENT_DETAIL:
+                return new PacketInClientDetail();
+            case VanillaProtocol.PACKET_SERVER_NOTICE:
+                return new PacketOutServerNotice(PacketOutServerNotice.Type.NOTIFICATION, "The server restarts in 5 minutes.");
+            case VanillaProtocol.PACKET_DISCONNECT_REASON:
+                return new PacketInOutDisconnect("Your connection couldn't keep up with the server.");
+
+            case VanillaProtocol.PACKET_RESPONSE_WARNING:
+                return new PacketInOutWarn().setStatusCode(2).setContent("That name is nearly taken.");
+            case VanillaProtocol.PACKET_RESPONSE_ERROR:
+                return new PacketInOutError().setStatusCode(3).setContent("Something went wrong.");
+            case VanillaProtocol.PACKET_CHAT_MESSAGE:
+                return new PacketInOutChatMessage("Hello everyone! Is anyone up for a game?");
+
+            case VanillaProtocol.PACKET_LOGIN:
+                return new PacketInLogin().setCredentials("benchmark_user", "correct-horse-battery-staple");
+            case VanillaProtocol.PACKET_UPDATE_ACCOUNT:
+                return new PacketInUpdateAccount().setCreatingNewAccount(true).setNewUsername("benchmark_user").setNewPassword("correct-horse-battery-staple");
+            case VanillaProtocol.PACKET_LOGIN_RESPONSE:
+                return new PacketOutLoginResponse("benchmark_user", "0123456789abcdef0123456789abcdef", PacketOutLoginResponse.Status.SUCCESS);
+
+            default:
+                return null;
+        }
+    }
+}
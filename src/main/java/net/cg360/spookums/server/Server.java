@@ -13,12 +13,23 @@ import net.cg360.spookums.server.core.event.EventManager;
 import net.cg360.spookums.server.core.event.handler.EventHandler;
 import net.cg360.spookums.server.core.event.handler.Priority;
 import net.cg360.spookums.server.core.event.type.network.ClientSocketStatusEvent;
+import net.cg360.spookums.server.core.event.type.network.PacketBroadcastEvent;
 import net.cg360.spookums.server.core.event.type.network.PacketEvent;
+import net.cg360.spookums.server.core.scheduler.AsyncTaskExecutor;
 import net.cg360.spookums.server.core.scheduler.CommandingScheduler;
+import net.cg360.spookums.server.core.scheduler.TickLoop;
+import net.cg360.spookums.server.core.scheduler.profile.TickProfiler;
+import net.cg360.spookums.server.core.scheduler.profile.TickWatchdog;
 import net.cg360.spookums.server.db.DatabaseManager;
 import net.cg360.spookums.server.network.PacketRegistry;
 import net.cg360.spookums.server.network.VanillaProtocol;
+import net.cg360.spookums.server.network.netimpl.InboundPacketQueue;
 import net.cg360.spookums.server.network.netimpl.NetworkInterface;
+import net.cg360.spookums.server.network.netimpl.ServerDetailCache;
+import net.cg360.spookums.server.network.netimpl.capture.CaptureReplayer;
+import net.cg360.spookums.server.network.netimpl.capture.PacketCapture;
+import net.cg360.spookums.server.network.netimpl.loopback.NILoopback;
+import net.cg360.spookums.server.network.netimpl.selector.NISelector;
 import net.cg360.spookums.server.network.netimpl.socket.NISocket;
 import net.cg360.spookums.server.network.packet.auth.PacketInLogin;
 import net.cg360.spookums.server.network.packet.auth.PacketInUpdateAccount;
@@ -31,6 +42,8 @@ import net.cg360.spookums.server.network.packet.info.PacketOutServerDetail;
 import net.cg360.spookums.server.network.user.ConnectionState;
 import net.cg360.spookums.server.network.user.NetworkClient;
 import net.cg360.spookums.server.util.MicroBoolean;
+import net.cg360.spookums.server.util.NetworkBufferPool;
+import net.cg360.spookums.server.util.NetworkBufferVectorCheck;
 import net.cg360.spookums.server.util.Patterns;
 import net.cg360.spookums.server.util.clean.Check;
 import net.cg360.spookums.server.util.clean.Pair;
@@ -48,7 +61,7 @@ import java.util.List;
  */
 public class Server {
 
-    public static final int MSPT = 1000 / 20; // Millis per tick.
+    public static final int MSPT = 1000 / 20; // Millis per tick at the default tick_rate.
 
     protected static Server instance;
     protected static SimpleLoggerFactory loggerFactory = new SimpleLoggerFactory();
@@ -74,16 +87,23 @@ public class Server {
 
     protected Logger logger;
     protected CommandingScheduler serverScheduler;
+    protected AsyncTaskExecutor asyncExecutor;
+    protected TickLoop tickLoop;
+    protected TickProfiler tickProfiler; // Null if ticks aren't being profiled.
     protected EventManager serverEventManager;
     protected DatabaseManager databaseManager;
     protected AuthenticationManager authenticationManager;
 
     protected PacketRegistry packetRegistry;
+    protected NetworkBufferPool bufferPool;
 
 
     // -- Network --
 
     protected NetworkInterface networkInterface;
+    protected InboundPacketQueue inboundQueue; // Null if packets are dispatched on the I/O threads.
+    protected ServerDetailCache detailCache;
+    protected PacketCapture packetCapture; // Null if frames aren't being captured.
 
 
     public Server() {
@@ -112,22 +132,35 @@ public class Server {
 
                 // -- Core Components --
                 this.serverScheduler = new CommandingScheduler();
+                this.asyncExecutor = AsyncTaskExecutor.fromSettings(this.settings);
+                this.tickLoop = TickLoop.fromSettings(this.settings);
+                this.tickProfiler = createTickProfiler();
                 this.serverEventManager = new EventManager();
                 this.databaseManager = new DatabaseManager();
                 this.authenticationManager = new AuthenticationManager();
 
                 // -- Core Registries --
                 this.packetRegistry = new PacketRegistry();
+                this.bufferPool = new NetworkBufferPool(VanillaProtocol.MAX_PACKET_SIZE, this.getSettings().getOrDefault(ServerConfig.NETWORK_BUFFER_POOL_SIZE), false);
+                this.inboundQueue = createInboundQueue();
+                this.detailCache = new ServerDetailCache(this.settings);
+                this.packetCapture = createPacketCapture();
 
 
                 // Attempt to claim the primary instances.
                 boolean resultScheduler = this.serverScheduler.setAsPrimaryInstance();
+                boolean resultAsyncExecutor = this.asyncExecutor.setAsPrimaryInstance();
+                boolean resultTickProfiler = (this.tickProfiler == null) || this.tickProfiler.setAsPrimaryInstance();
                 boolean resultEventManager = this.serverEventManager.setAsPrimaryInstance();
                 boolean resultDatabaseManager = this.databaseManager.setAsPrimaryInstance();
                 boolean resultAuthManager = this.authenticationManager.setAsPrimaryInstance();
                 boolean resultPacketRegistry = this.packetRegistry.setAsPrimaryInstance();
+                boolean resultBufferPool = this.bufferPool.setAsPrimaryInstance();
+                boolean resultInboundQueue = (this.inboundQueue == null) || this.inboundQueue.setAsPrimaryInstance();
+                boolean resultDetailCache = this.detailCache.setAsPrimaryInstance();
+                boolean resultPacketCapture = (this.packetCapture == null) || this.packetCapture.setAsPrimaryInstance();
 
-                if(resultScheduler && resultEventManager && resultDatabaseManager && resultAuthManager && resultPacketRegistry){
+                if(resultScheduler && resultAsyncExecutor && resultTickProfiler && resultEventManager && resultDatabaseManager && resultAuthManager && resultPacketRegistry && resultBufferPool && resultInboundQueue && resultDetailCache && resultPacketCapture){
                     btLog.info("Claimed primary instances! This is the main server! :)");
                 }
 
@@ -155,7 +188,7 @@ public class Server {
 
 
                 btLog.info("Starting network threads...");
-                this.networkInterface = new NISocket();
+                this.networkInterface = createNetworkInterface();
 
                 String serverIP = this.getSettings().getOrDefault(ServerConfig.SERVER_IP);
                 int port = this.getSettings().getOrDefault(ServerConfig.SERVER_PORT);
@@ -182,18 +215,45 @@ public class Server {
                     }
                 };
 
+                // Registered before the network starts so the I/O threads never see a partial registry.
+                VanillaProtocol.applyToRegistry(this.packetRegistry);
+
+                if(this.packetCapture != null) {
+                    this.packetCapture.start();
+                    Runtime.getRuntime().addShutdownHook(new Thread(this.packetCapture::close, "Network-Capture-Shutdown"));
+                    netLog.info("Capturing network frames to " + this.packetCapture.getFolder().getPath());
+                }
+
                 this.netServerThread.start();
                 btLog.info("Starting network server thread!");
 
-                VanillaProtocol.applyToRegistry(this.packetRegistry);
+                startReplay();
 
-                // Scheduler ticking is done here now.
-                // TODO: Account for variation in ticks otherwise clients will become desynchronized with the server.
-                //       While ticking is less important on the client, it could cause unexpected behaviour.
-                while (this.isRunning) {
-                    serverScheduler.serverTick();
-                    this.wait(MSPT);
-                }
+                // Scheduler ticking is done here now, at a fixed rate so clients stay in sync under load.
+                int inboundBudget = this.getSettings().getOrDefault(ServerConfig.INBOUND_PACKETS_PER_TICK);
+                Check.inclusiveLowerBound(inboundBudget, 1, "config.inbound_packets_per_tick");
+
+                int watchdogThreshold = this.getSettings().getOrDefault(ServerConfig.TICK_WATCHDOG_THRESHOLD);
+                if(watchdogThreshold > 0) new TickWatchdog(this.tickLoop, watchdogThreshold).start();
+
+                this.tickLoop.run(this, () -> this.isRunning, () -> {
+                    TickProfiler profiler = TickProfiler.get();
+
+                    if(profiler == null) {
+                        if(inboundQueue != null) inboundQueue.dispatch(inboundBudget);
+                        serverScheduler.serverTick();
+                        networkInterface.flushOutbound();
+
+                    } else {
+                        long phaseStart = System.nanoTime();
+                        if(inboundQueue != null) inboundQueue.dispatch(inboundBudget);
+                        phaseStart = profiler.endPhase("inbound", phaseStart);
+                        serverScheduler.serverTick();
+                        phaseStart = profiler.endPhase("scheduler", phaseStart);
+                        networkInterface.flushOutbound();
+                        profiler.endPhase("outbound", phaseStart);
+                    }
+                });
 
             } catch (Exception err) {
                 logger.info("Error whilst running server... :<");
@@ -207,9 +267,100 @@ public class Server {
     }
 
 
+    protected NetworkInterface createNetworkInterface() {
+        String type = this.getSettings().getOrDefault(ServerConfig.NETWORK_INTERFACE);
+
+        switch (type.trim().toLowerCase()) {
+            case "selector":
+            case "nio":
+                int ioThreads = this.getSettings().getOrDefault(ServerConfig.NETWORK_IO_THREADS);
+                Check.inclusiveLowerBound(ioThreads, 1, "config.network_io_threads");
+                int queueCapacity = this.getSettings().getOrDefault(ServerConfig.OUTBOUND_QUEUE_CAPACITY);
+                return new NISelector(ioThreads, queueCapacity);
+
+            case "socket":
+                return new NISocket();
+
+            case "loopback":
+                return new NILoopback(this.getSettings().getOrDefault(ServerConfig.OUTBOUND_QUEUE_CAPACITY));
+
+            default:
+                throw new ConfigFormatException("The property 'network_interface' must be either 'socket', 'selector' or 'loopback'!");
+        }
+    }
+
+
+    protected TickProfiler createTickProfiler() {
+        if(!this.getSettings().getOrDefault(ServerConfig.TICK_PROFILER)) return null;
+
+        int topCount = this.getSettings().getOrDefault(ServerConfig.TICK_PROFILER_TOP);
+        Check.inclusiveLowerBound(topCount, 1, "config.tick_profiler_top");
+        return new TickProfiler(topCount);
+    }
+
+
+    protected PacketCapture createPacketCapture() {
+        String path = this.getSettings().getOrDefault(ServerConfig.CAPTURE_PATH);
+        if(path.trim().isEmpty()) return null;
+
+        int segmentSize = this.getSettings().getOrDefault(ServerConfig.CAPTURE_SEGMENT_SIZE);
+        Check.inclusiveBounds(segmentSize, 1, 1024, "config.capture_segment_size");
+        return new PacketCapture(new File(path), segmentSize * 1024 * 1024);
+    }
+
+
+    // Replays a capture into the server once it's up. Only loopback clients can be created in-process.
+    protected void startReplay() {
+        String path = this.getSettings().getOrDefault(ServerConfig.REPLAY_PATH);
+        if(path.trim().isEmpty()) return;
+
+        if(!(this.networkInterface instanceof NILoopback))
+            throw new ConfigFormatException("The property 'replay_path' can only be used with the 'loopback' network_interface!");
+
+        boolean isPaced = this.getSettings().getOrDefault(ServerConfig.REPLAY_PACED);
+        CaptureReplayer replayer = new CaptureReplayer((NILoopback) this.networkInterface, new File(path));
+
+        Thread replayThread = new Thread(() -> {
+            NILoopback loopback = (NILoopback) this.networkInterface;
+
+            try {
+                while (!loopback.isRunning()) {
+                    if(!this.isRunning) return;
+                    Thread.sleep(10);
+                }
+
+            } catch (InterruptedException ignored) {
+                return;
+            }
+
+            replayer.replayAndLog(isPaced);
+        }, "Network-Replay");
+
+        replayThread.setDaemon(true);
+        replayThread.start();
+    }
+
+
+    protected InboundPacketQueue createInboundQueue() {
+        String mode = this.getSettings().getOrDefault(ServerConfig.PACKET_DISPATCH);
+
+        switch (mode.trim().toLowerCase()) {
+            case "io":
+                return null;
+
+            case "tick":
+                return new InboundPacketQueue();
+
+            default:
+                throw new ConfigFormatException("The property 'packet_dispatch' must be either 'io' or 'tick'!");
+        }
+    }
+
+
     protected void runLaunchTests() {
         test_databaseControl();
         test_jsonParsing();
+        test_networkBufferVectors();
     }
 
 
@@ -249,6 +400,26 @@ public class Server {
     }
 
 
+    public void test_networkBufferVectors() {
+        Logger log = Server.getLogger(Server.TEST_LOG + "/NetworkBufferVectors");
+        File vectors = new File(NetworkBufferVectorCheck.DEFAULT_PATH);
+
+        if(!vectors.isFile()) {
+            log.info("Skipped. No vectors found at " + vectors.getAbsolutePath());
+            return;
+        }
+
+        try {
+            List<String> failures = NetworkBufferVectorCheck.check(vectors);
+            if(failures.isEmpty()) log.info("All vectors passed.");
+            for(String failure: failures) log.error("Failed " + failure);
+
+        } catch (IOException err) {
+            log.error("Unable to read the vectors: " + err.getMessage());
+        }
+    }
+
+
     @EventHandler
     public void onClientConnect(ClientSocketStatusEvent.Open event) {
         Server.getLogger(Server.NET_LOG).info("Connection | " + event.getClient().getID().toString());
@@ -289,7 +460,16 @@ public class Server {
                     if(protocolCheck.isValid()) {
 
                         if(VanillaProtocol.PROTOCOL_ID == protocolCheck.getProtocolVersion()) {
-                            client.send(new PacketOutProtocolSuccess(), true);
+                            int capabilities = 0;
+
+                            if(protocolCheck.hasCapability(VanillaProtocol.CAPABILITY_COMPRESSION) && networkInterface.canCompress(id))
+                                capabilities |= VanillaProtocol.CAPABILITY_COMPRESSION;
+
+                            client.setProtocolVersion(protocolCheck.getProtocolVersion());
+                            client.send(new PacketOutProtocolSuccess(capabilities), true);
+
+                            // Only enabled once the success is queued, so nothing queued before it gets compressed.
+                            if((capabilities & VanillaProtocol.CAPABILITY_COMPRESSION) != 0) networkInterface.enableCompression(id);
                             client.setState(ConnectionState.CONNECTED);
                             this.serverEventManager.call(new ClientSocketStatusEvent.Connected(client));
 
@@ -318,6 +498,7 @@ public class Server {
 
 
 
+            // Usually answered by the ServerDetailCache before it gets here.
             case VanillaProtocol.PACKET_SERVER_PING_REQUEST:
                 String name = this.settings.getOrDefault(ServerConfig.SERVER_NAME);
                 String region = this.settings.getOrDefault(ServerConfig.REGION);
@@ -399,6 +580,17 @@ public class Server {
         }
     }
 
+    @EventHandler(ignoreIfCancelled = true, priority = Priority.HIGHEST)
+    public void onPacketBroadcast(PacketBroadcastEvent<?> event) {
+        if(this.settings.getOrDefault(ServerConfig.LOG_PACKET_IO)) {
+            Server.getLogger(Server.NET_LOG).info(String.format("OUT | %s clients >> %s %s",
+                    event.getRecipients().size(),
+                    event.getPacket().toCoreString(),
+                    event.getPacket().toString())
+            );
+        }
+    }
+
 
 
     public LockableSettings getSettings() { return settings; }
@@ -406,11 +598,18 @@ public class Server {
     public boolean isRunning() { return isRunning; }
 
     public CommandingScheduler getServerScheduler() { return serverScheduler; }
+    public AsyncTaskExecutor getAsyncExecutor() { return asyncExecutor; }
+    public TickLoop getTickLoop() { return tickLoop; }
+    public TickProfiler getTickProfiler() { return tickProfiler; }
     public EventManager getEventManager() { return serverEventManager; }
     public DatabaseManager getDBManager() { return databaseManager; }
     public AuthenticationManager getAuthManager() {return authenticationManager;}
 
     public NetworkInterface getNetworkInterface() {return networkInterface;}
+    public InboundPacketQueue getInboundQueue() {return inboundQueue;}
+    public ServerDetailCache getDetailCache() {return detailCache;}
+    public PacketCapture getPacketCapture() {return packetCapture;}
+    public NetworkBufferPool getBufferPool() {return bufferPool;}
 
     public static Server get() { return instance; }
     public static Logger getLogger(String name) { return Server.loggerFactory.getLogger(name); }
@@ -21,6 +21,41 @@ public class ServerConfig {
     public static final DefaultKey<String> SERVER_IP = new DefaultKey<>("ip", "0.0.0.0");
     public static final DefaultKey<Integer> SERVER_PORT = new DefaultKey<>("port", 22057);
     public static final DefaultKey<Integer> CONNECTION_TIMEOUT = new DefaultKey<>("connection_timeout", 10000);
+    public static final DefaultKey<String> NETWORK_INTERFACE = new DefaultKey<>("network_interface", "socket"); // socket, selector or loopback (in-process clients only)
+    public static final DefaultKey<String> PACKET_DISPATCH = new DefaultKey<>("packet_dispatch", "io"); // io (on arrival) or tick (main thread)
+    public static final DefaultKey<Integer> INBOUND_PACKETS_PER_TICK = new DefaultKey<>("inbound_packets_per_tick", 2048); // tick dispatch only
+    public static final DefaultKey<Integer> NETWORK_IO_THREADS = new DefaultKey<>("network_io_threads", 2); // selector only
+    public static final DefaultKey<Integer> NETWORK_ACCEPTOR_THREADS = new DefaultKey<>("network_acceptor_threads", 1); // threads accepting new connections
+    public static final DefaultKey<Integer> NETWORK_ACCEPT_BACKLOG = new DefaultKey<>("network_accept_backlog", 128); // connections waiting to be accepted, per listener
+    public static final DefaultKey<Boolean> NETWORK_REUSE_PORT = new DefaultKey<>("network_reuse_port", true); // one listener per acceptor with SO_REUSEPORT, where available
+    public static final DefaultKey<Integer> OUTBOUND_QUEUE_CAPACITY = new DefaultKey<>("outbound_queue_capacity", 512); // frames per client
+    public static final DefaultKey<Boolean> BATCH_OUTBOUND_PACKETS = new DefaultKey<>("batch_outbound_packets", false); // sent as one batch per tick
+    public static final DefaultKey<Integer> OUTBOUND_COALESCE_INTERVAL = new DefaultKey<>("outbound_coalesce_interval", 0); // millis non-urgent packets can wait. 0 = no wait
+    public static final DefaultKey<Integer> OUTBOUND_COALESCE_THRESHOLD = new DefaultKey<>("outbound_coalesce_threshold", 1400); // bytes waiting before they're sent early
+    public static final DefaultKey<Integer> OUTBOUND_HIGH_WATERMARK = new DefaultKey<>("outbound_high_watermark", 262144); // queued bytes before non-urgent packets are dropped. 0 = no limit
+    public static final DefaultKey<Integer> OUTBOUND_LOW_WATERMARK = new DefaultKey<>("outbound_low_watermark", 65536); // queued bytes before they're accepted again
+    public static final DefaultKey<Integer> SLOW_CLIENT_TIMEOUT = new DefaultKey<>("slow_client_timeout", 5000); // millis over the high watermark before a client is kicked. 0 = never
+    public static final DefaultKey<String> RATE_LIMIT_PING = new DefaultKey<>("rate_limit_ping", "20/10"); // inbound packets/seconds per client. 0 = no limit
+    public static final DefaultKey<String> RATE_LIMIT_LOGIN = new DefaultKey<>("rate_limit_login", "5/30"); // login + account updates
+    public static final DefaultKey<String> RATE_LIMIT_CHAT = new DefaultKey<>("rate_limit_chat", "10/5");
+    public static final DefaultKey<String> RATE_LIMIT_DEFAULT = new DefaultKey<>("rate_limit_default", "400/1"); // anything else
+    public static final DefaultKey<Integer> RATE_LIMIT_STRIKES = new DefaultKey<>("rate_limit_strikes", 100); // dropped packets per minute before a client is kicked. 0 = never
+    public static final DefaultKey<Integer> NETWORK_BUFFER_POOL_SIZE = new DefaultKey<>("network_buffer_pool_size", 256); // buffers kept for reuse
+    public static final DefaultKey<Integer> COMPRESSION_THRESHOLD = new DefaultKey<>("compression_threshold", 256); // body bytes before a packet is compressed. -1 = never
+    public static final DefaultKey<String> CAPTURE_PATH = new DefaultKey<>("capture_path", ""); // folder every frame is logged to. Empty = no capture
+    public static final DefaultKey<Integer> CAPTURE_SEGMENT_SIZE = new DefaultKey<>("capture_segment_size", 64); // megabytes per capture file
+    public static final DefaultKey<String> REPLAY_PATH = new DefaultKey<>("replay_path", ""); // capture folder replayed on start. loopback only
+    public static final DefaultKey<Boolean> REPLAY_PACED = new DefaultKey<>("replay_paced", false); // replay at the captured pace rather than flat out
+    public static final DefaultKey<String> ASYNC_TASK_EXECUTOR = new DefaultKey<>("async_task_executor", "pool"); // pool or virtual (java 21+)
+    public static final DefaultKey<Integer> ASYNC_TASK_THREADS = new DefaultKey<>("async_task_threads", 8); // async scheduler tasks running at once
+    public static final DefaultKey<Integer> ASYNC_TASK_QUEUE_CAPACITY = new DefaultKey<>("async_task_queue_capacity", 1024); // async tasks waiting for a thread
+    public static final DefaultKey<String> ASYNC_TASK_REJECTION = new DefaultKey<>("async_task_rejection", "drop"); // drop or caller (runs it on the tick thread, stalling the tick), once the queue is full
+    public static final DefaultKey<Integer> TICK_RATE = new DefaultKey<>("tick_rate", 20); // ticks per second
+    public static final DefaultKey<String> TICK_CATCH_UP = new DefaultKey<>("tick_catch_up", "catchup"); // catchup (run missed ticks back to back) or skip
+    public static final DefaultKey<Integer> TICK_MAX_CATCH_UP = new DefaultKey<>("tick_max_catch_up", 10); // missed ticks run back to back before the rest are skipped
+    public static final DefaultKey<Boolean> TICK_PROFILER = new DefaultKey<>("tick_profiler", false); // times every tick phase and scheduler task
+    public static final DefaultKey<Integer> TICK_PROFILER_TOP = new DefaultKey<>("tick_profiler_top", 10); // slowest task runs kept by the profiler
+    public static final DefaultKey<Integer> TICK_WATCHDOG_THRESHOLD = new DefaultKey<>("tick_watchdog_threshold", 2000); // millis a tick can run before the main thread's stack is logged. 0 = never
 
     public static final DefaultKey<Boolean> LOG_UNSUPPORTED_PACKETS = new DefaultKey<>("log_unsupported_packets", true);
     public static final DefaultKey<Boolean> LOG_PACKET_IO = new DefaultKey<>("log_packet_io", false);
@@ -38,6 +73,41 @@ public class ServerConfig {
                     "    " + formatLine(SERVER_IP) + "," + "\n" +
                     "    " + formatLine(SERVER_PORT) + "," + "\n" +
                     "    " + formatLine(CONNECTION_TIMEOUT) + "," + "\n" +
+                    "    " + formatLine(NETWORK_INTERFACE) + "," + "\n" +
+                    "    " + formatLine(PACKET_DISPATCH) + "," + "\n" +
+                    "    " + formatLine(INBOUND_PACKETS_PER_TICK) + "," + "\n" +
+                    "    " + formatLine(NETWORK_IO_THREADS) + "," + "\n" +
+                    "    " + formatLine(NETWORK_ACCEPTOR_THREADS) + "," + "\n" +
+                    "    " + formatLine(NETWORK_ACCEPT_BACKLOG) + "," + "\n" +
+                    "    " + formatLine(NETWORK_REUSE_PORT) + "," + "\n" +
+                    "    " + formatLine(OUTBOUND_QUEUE_CAPACITY) + "," + "\n" +
+                    "    " + formatLine(BATCH_OUTBOUND_PACKETS) + "," + "\n" +
+                    "    " + formatLine(OUTBOUND_COALESCE_INTERVAL) + "," + "\n" +
+                    "    " + formatLine(OUTBOUND_COALESCE_THRESHOLD) + "," + "\n" +
+                    "    " + formatLine(OUTBOUND_HIGH_WATERMARK) + "," + "\n" +
+                    "    " + formatLine(OUTBOUND_LOW_WATERMARK) + "," + "\n" +
+                    "    " + formatLine(SLOW_CLIENT_TIMEOUT) + "," + "\n" +
+                    "    " + formatLine(RATE_LIMIT_PING) + "," + "\n" +
+                    "    " + formatLine(RATE_LIMIT_LOGIN) + "," + "\n" +
+                    "    " + formatLine(RATE_LIMIT_CHAT) + "," + "\n" +
+                    "    " + formatLine(RATE_LIMIT_DEFAULT) + "," + "\n" +
+                    "    " + formatLine(RATE_LIMIT_STRIKES) + "," + "\n" +
+                    "    " + formatLine(NETWORK_BUFFER_POOL_SIZE) + "," + "\n" +
+                    "    " + formatLine(COMPRESSION_THRESHOLD) + "," + "\n" +
+                    "    " + formatLine(CAPTURE_PATH) + "," + "\n" +
+                    "    " + formatLine(CAPTURE_SEGMENT_SIZE) + "," + "\n" +
+                    "    " + formatLine(REPLAY_PATH) + "," + "\n" +
+                    "    " + formatLine(REPLAY_PACED) + "," + "\n" +
+                    "    " + formatLine(ASYNC_TASK_EXECUTOR) + "," + "\n" +
+                    "    " + formatLine(ASYNC_TASK_THREADS) + "," + "\n" +
+                    "    " + formatLine(ASYNC_TASK_QUEUE_CAPACITY) + "," + "\n" +
+                    "    " + formatLine(ASYNC_TASK_REJECTION) + "," + "\n" +
+                    "    " + formatLine(TICK_RATE) + "," + "\n" +
+                    "    " + formatLine(TICK_CATCH_UP) + "," + "\n" +
+                    "    " + formatLine(TICK_MAX_CATCH_UP) + "," + "\n" +
+                    "    " + formatLine(TICK_PROFILER) + "," + "\n" +
+                    "    " + formatLine(TICK_PROFILER_TOP) + "," + "\n" +
+                    "    " + formatLine(TICK_WATCHDOG_THRESHOLD) + "," + "\n" +
 
                     "    " + formatLine(LOG_UNSUPPORTED_PACKETS) + "," + "\n" +
                     "    " + formatLine(LOG_PACKET_IO) + "," + "\n" +
@@ -56,6 +126,41 @@ public class ServerConfig {
         if(isSettingNull(settings, SERVER_IP)) replacements++;
         if(isSettingNull(settings, SERVER_PORT)) replacements++;
         if(isSettingNull(settings, CONNECTION_TIMEOUT)) replacements++;
+        if(isSettingNull(settings, NETWORK_INTERFACE)) replacements++;
+        if(isSettingNull(settings, PACKET_DISPATCH)) replacements++;
+        if(isSettingNull(settings, INBOUND_PACKETS_PER_TICK)) replacements++;
+        if(isSettingNull(settings, NETWORK_IO_THREADS)) replacements++;
+        if(isSettingNull(settings, NETWORK_ACCEPTOR_THREADS)) replacements++;
+        if(isSettingNull(settings, NETWORK_ACCEPT_BACKLOG)) replacements++;
+        if(isSettingNull(settings, NETWORK_REUSE_PORT)) replacements++;
+        if(isSettingNull(settings, OUTBOUND_QUEUE_CAPACITY)) replacements++;
+        if(isSettingNull(settings, BATCH_OUTBOUND_PACKETS)) replacements++;
+        if(isSettingNull(settings, OUTBOUND_COALESCE_INTERVAL)) replacements++;
+        if(isSettingNull(settings, OUTBOUND_COALESCE_THRESHOLD)) replacements++;
+        if(isSettingNull(settings, OUTBOUND_HIGH_WATERMARK)) replacements++;
+        if(isSettingNull(settings, OUTBOUND_LOW_WATERMARK)) replacements++;
+        if(isSettingNull(settings, SLOW_CLIENT_TIMEOUT)) replacements++;
+        if(isSettingNull(settings, RATE_LIMIT_PING)) replacements++;
+        if(isSettingNull(settings, RATE_LIMIT_LOGIN)) replacements++;
+        if(isSettingNull(settings, RATE_LIMIT_CHAT)) replacements++;
+        if(isSettingNull(settings, RATE_LIMIT_DEFAULT)) replacements++;
+        if(isSettingNull(settings, RATE_LIMIT_STRIKES)) replacements++;
+        if(isSettingNull(settings, NETWORK_BUFFER_POOL_SIZE)) replacements++;
+        if(isSettingNull(settings, COMPRESSION_THRESHOLD)) replacements++;
+        if(isSettingNull(settings, CAPTURE_PATH)) replacements++;
+        if(isSettingNull(settings, CAPTURE_SEGMENT_SIZE)) replacements++;
+        if(isSettingNull(settings, REPLAY_PATH)) replacements++;
+        if(isSettingNull(settings, REPLAY_PACED)) replacements++;
+        if(isSettingNull(settings, ASYNC_TASK_EXECUTOR)) replacements++;
+        if(isSettingNull(settings, ASYNC_TASK_THREADS)) replacements++;
+        if(isSettingNull(settings, ASYNC_TASK_QUEUE_CAPACITY)) replacements++;
+        if(isSettingNull(settings, ASYNC_TASK_REJECTION)) replacements++;
+        if(isSettingNull(settings, TICK_RATE)) replacements++;
+        if(isSettingNull(settings, TICK_CATCH_UP)) replacements++;
+        if(isSettingNull(settings, TICK_MAX_CATCH_UP)) replacements++;
+        if(isSettingNull(settings, TICK_PROFILER)) replacements++;
+        if(isSettingNull(settings, TICK_PROFILER_TOP)) replacements++;
+        if(isSettingNull(settings, TICK_WATCHDOG_THRESHOLD)) replacements++;
 
         if(isSettingNull(settings, LOG_UNSUPPORTED_PACKETS)) replacements++;
         if(isSettingNull(settings, LOG_PACKET_IO)) replacements++;
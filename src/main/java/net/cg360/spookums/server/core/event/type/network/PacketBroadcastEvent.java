@@ -0,0 +1,33 @@
+package net.cg360.spookums.server.core.event.type.network;
+
+import net.cg360.spookums.server.core.event.type.Event;
+import net.cg360.spookums.server.network.packet.NetworkPacket;
+import net.cg360.spookums.server.util.clean.Check;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+
+/**
+ * Called once for a packet broadcast to several clients, in place of a
+ * PacketEvent.Out for every recipient. Cancelling it stops the packet
+ * being sent to all of them.
+ */
+public class PacketBroadcastEvent<P extends NetworkPacket> extends Event.Cancellable {
+
+    protected Collection<UUID> recipients;
+    protected P packet;
+
+    public PacketBroadcastEvent(Collection<UUID> recipients, P packet) {
+        Check.nullParam(recipients, "recipients");
+        Check.nullParam(packet, "packet");
+
+        this.recipients = Collections.unmodifiableCollection(recipients);
+        this.packet = packet;
+    }
+
+
+    public Collection<UUID> getRecipients() { return recipients; }
+    public P getPacket() { return packet; }
+
+}
@@ -0,0 +1,240 @@
+package net.cg360.spookums.server.core.scheduler;
+
+import net.cg360.spookums.server.Server;
+import net.cg360.spookums.server.ServerConfig;
+import net.cg360.spookums.server.core.data.Settings;
+import net.cg360.spookums.server.core.data.json.io.error.ConfigFormatException;
+import net.cg360.spookums.server.util.clean.Check;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the asynchronous tasks of every Scheduler, rather than each run
+ * starting a thread of its own. At most a fixed number of tasks run at
+ * once and only so many can wait behind them. Anything past that is
+ * handled by the rejection policy.
+ *
+ * On JDK 21+ tasks can run on virtual threads instead of a pool. The
+ * same limits apply, so a burst still can't grow without bound.
+ */
+public class AsyncTaskExecutor {
+
+    private static AsyncTaskExecutor primaryInstance = null;
+
+    public enum Type { POOL, VIRTUAL }
+
+    public enum RejectionPolicy {
+        CALLER_RUNS, // Ran on the thread which queued it, usually the tick thread, so an overload stalls the whole tick rather than losing the task.
+        DROP // Skipped and logged. The default, so overload can't stall the tick.
+    }
+
+    protected final Type type;
+    protected final int maxThreads;
+    protected final int queueCapacity;
+    protected final RejectionPolicy rejectionPolicy;
+
+    protected final ExecutorService executor;
+    protected final Semaphore runPermits; // Only used for virtual threads, which are never pooled.
+
+    protected final AtomicInteger queued;
+    protected final AtomicInteger active;
+    protected final AtomicLong completed;
+    protected final AtomicLong rejected;
+
+    /**
+     * @param type runs tasks on a pool of threads or on virtual threads (JDK 21+ only).
+     * @param maxThreads the most tasks which can run at once.
+     * @param queueCapacity the most tasks which can wait for a thread.
+     * @throws UnsupportedOperationException if virtual threads aren't supported by the JVM.
+     */
+    public AsyncTaskExecutor(Type type, int maxThreads, int queueCapacity, RejectionPolicy rejectionPolicy) {
+        this.type = Check.nullParam(type, "type");
+        this.maxThreads = Check.inclusiveLowerBound(maxThreads, 1, "maxThreads");
+        this.queueCapacity = Check.inclusiveLowerBound(queueCapacity, 0, "queueCapacity");
+        this.rejectionPolicy = Check.nullParam(rejectionPolicy, "rejectionPolicy");
+
+        this.queued = new AtomicInteger(0);
+        this.active = new AtomicInteger(0);
+        this.completed = new AtomicLong(0);
+        this.rejected = new AtomicLong(0);
+
+        if(type == Type.VIRTUAL) {
+            this.executor = createVirtualThreadExecutor();
+            this.runPermits = new Semaphore(maxThreads);
+
+        } else {
+            AtomicInteger threadCount = new AtomicInteger(0);
+            BlockingQueue<Runnable> queue = queueCapacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueCapacity);
+
+            this.executor = new ThreadPoolExecutor(maxThreads, maxThreads, 30, TimeUnit.SECONDS, queue, runnable -> {
+                Thread thread = new Thread(runnable, "Scheduler-Async-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            ((ThreadPoolExecutor) this.executor).allowCoreThreadTimeOut(true); // Idle servers don't keep the threads around.
+            this.runPermits = null;
+        }
+    }
+
+    /** Creates an executor from the async_task_* properties of the server config. */
+    public static AsyncTaskExecutor fromSettings(Settings settings) {
+        int threads = settings.getOrDefault(ServerConfig.ASYNC_TASK_THREADS);
+        int queueCapacity = settings.getOrDefault(ServerConfig.ASYNC_TASK_QUEUE_CAPACITY);
+        Check.inclusiveLowerBound(threads, 1, "config.async_task_threads");
+        Check.inclusiveLowerBound(queueCapacity, 0, "config.async_task_queue_capacity");
+
+        Type type;
+        switch (settings.getOrDefault(ServerConfig.ASYNC_TASK_EXECUTOR).trim().toLowerCase()) {
+            case "pool":
+                type = Type.POOL;
+                break;
+
+            case "virtual":
+                if(!isVirtualThreadSupported())
+                    throw new ConfigFormatException("The property 'async_task_executor' can only be 'virtual' on Java 21 or newer!");
+                type = Type.VIRTUAL;
+                break;
+
+            default:
+                throw new ConfigFormatException("The property 'async_task_executor' must be either 'pool' or 'virtual'!");
+        }
+
+        RejectionPolicy policy;
+        switch (settings.getOrDefault(ServerConfig.ASYNC_TASK_REJECTION).trim().toLowerCase()) {
+            case "caller":
+                policy = RejectionPolicy.CALLER_RUNS;
+                break;
+
+            case "drop":
+                policy = RejectionPolicy.DROP;
+                break;
+
+            default:
+                throw new ConfigFormatException("The property 'async_task_rejection' must be either 'caller' or 'drop'!");
+        }
+
+        return new AsyncTaskExecutor(type, threads, queueCapacity, policy);
+    }
+
+    public boolean setAsPrimaryInstance() {
+        if(primaryInstance == null) {
+            primaryInstance = this;
+            return true;
+        }
+        return false;
+    }
+
+
+
+    /**
+     * Queues a task to be run, applying the rejection policy if it's full.
+     * @return false if the task was dropped.
+     */
+    public boolean execute(Runnable task) {
+        // Virtual threads are started straight away, so the queue limit is kept here instead.
+        if((type == Type.VIRTUAL) && (queued.get() + active.get() >= maxThreads + queueCapacity))
+            return reject(task);
+
+        queued.incrementAndGet();
+
+        try {
+            executor.execute(() -> runQueued(task));
+            return true;
+
+        } catch (RejectedExecutionException full) {
+            queued.decrementAndGet();
+            return reject(task);
+        }
+    }
+
+    protected void runQueued(Runnable task) {
+        try {
+            if(runPermits != null) runPermits.acquire();
+
+        } catch (InterruptedException err) {
+            queued.decrementAndGet();
+            long count = rejected.incrementAndGet();
+
+            // Past the queue already, so there's no caller left to run it on.
+            Server.getLogger(Server.S7R_LOG).warn(String.format("Async task was interrupted while waiting to run. Rejected %s task(s) so far, dropping it.", count));
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        queued.decrementAndGet();
+        active.incrementAndGet();
+
+        try {
+            task.run();
+
+        } finally {
+            active.decrementAndGet();
+            completed.incrementAndGet();
+            if(runPermits != null) runPermits.release();
+        }
+    }
+
+    protected boolean reject(Runnable task) {
+        long count = rejected.incrementAndGet();
+
+        // Logged less and less often so a backlog can't flood the log.
+        if(Long.bitCount(count) == 1)
+            Server.getLogger(Server.S7R_LOG).warn(String.format("Async task queue is full (%s waiting). Rejected %s task(s) so far, %s.",
+                    queued.get(), count, rejectionPolicy == RejectionPolicy.CALLER_RUNS ? "running them on the caller" : "dropping them"));
+
+        if(rejectionPolicy == RejectionPolicy.CALLER_RUNS) {
+            task.run();
+            return true;
+        }
+
+        return false;
+    }
+
+    /** Stops taking tasks. Anything already queued still runs. */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+
+    // Only in the JDK from Java 21, so it's looked up rather than referenced.
+    protected static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+
+        } catch (ReflectiveOperationException err) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or newer", err);
+        }
+    }
+
+    public static boolean isVirtualThreadSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+
+        } catch (NoSuchMethodException err) {
+            return false;
+        }
+    }
+
+
+
+    public Type getType() { return type; }
+    public int getMaxThreads() { return maxThreads; }
+    public int getQueueCapacity() { return queueCapacity; }
+    public RejectionPolicy getRejectionPolicy() { return rejectionPolicy; }
+
+    /** @return the number of tasks waiting for a thread. */
+    public int getQueueDepth() { return queued.get(); }
+    /** @return the number of tasks running right now. */
+    public int getActiveCount() { return active.get(); }
+    public long getCompletedCount() { return completed.get(); }
+    public long getRejectedCount() { return rejected.get(); }
+
+    public static AsyncTaskExecutor get() {
+        return primaryInstance;
+    }
+}
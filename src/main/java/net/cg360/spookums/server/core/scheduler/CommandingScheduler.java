@@ -1,6 +1,7 @@
 package net.cg360.spookums.server.core.scheduler;
 
 import net.cg360.spookums.server.Server;
+import net.cg360.spookums.server.core.scheduler.profile.TickProfiler;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -63,9 +64,18 @@ public final class CommandingScheduler extends SchedulingType {
     public void schedulerTick() {
 
         if(isRunning) {
+            TickProfiler profiler = TickProfiler.get();
+
             // Must duplicate the set to allow schedulers to remove themselves.
             for (Scheduler scheduler : new HashSet<>(children)) {
-                scheduler.schedulerTick();
+                if(profiler == null) {
+                    scheduler.schedulerTick();
+
+                } else {
+                    long start = System.nanoTime();
+                    scheduler.schedulerTick();
+                    profiler.recordSchedulerTick(scheduler, System.nanoTime() - start);
+                }
             }
         }
     }
@@ -1,6 +1,7 @@
 package net.cg360.spookums.server.core.scheduler;
 
 import net.cg360.spookums.server.Server;
+import net.cg360.spookums.server.core.scheduler.profile.TickProfiler;
 import net.cg360.spookums.server.core.scheduler.task.RunnableTypeTask;
 import net.cg360.spookums.server.core.scheduler.task.SchedulerTask;
 import net.cg360.spookums.server.util.clean.Check;
@@ -12,14 +13,14 @@ public class Scheduler extends SchedulingType {
     private final UUID schedulerID;
 
     protected final Set<Thread> activeThreads;
-    protected final ArrayList<SchedulerTaskEntry> schedulerTasks;
+    protected final TimingWheel schedulerTasks;
 
     public Scheduler(int tickDelay) {
         this.schedulerID = UUID.randomUUID();
 
         this.tickDelay = Math.max(1, tickDelay);
 
-        this.schedulerTasks = new ArrayList<>();
+        this.schedulerTasks = new TimingWheel(this.schedulerTick);
         this.activeThreads = Collections.synchronizedSet(new HashSet<>());
     }
 
@@ -46,6 +47,10 @@ public class Scheduler extends SchedulingType {
         if(isRunning) {
             pauseScheduler();
             clearQueuedSchedulerTasks();
+
+            // A stopped scheduler never runs again, so its timings would only pile up.
+            TickProfiler profiler = TickProfiler.get();
+            if(profiler != null) profiler.forgetScheduler(schedulerID);
             return true;
         }
         return false;
@@ -59,10 +64,8 @@ public class Scheduler extends SchedulingType {
 
     /** Clears all the tasks queued in the scheduler. */
     public synchronized void clearQueuedSchedulerTasks() {
-        for(SchedulerTaskEntry entry: new ArrayList<>(schedulerTasks)) {
-            entry.getTask().cancel(); // For the runnable to use? idk
-            this.schedulerTasks.remove(entry);
-        }
+        // For the runnable to use? idk
+        this.schedulerTasks.clear(entry -> entry.getTask().cancel());
     }
 
 
@@ -74,77 +77,79 @@ public class Scheduler extends SchedulingType {
     /** Executes a scheduler tick, running any tasks due to run on this tick. */
     public synchronized void schedulerTick() {
         if(isRunning) {
+            // Only the tasks due on this tick are touched. Anything a task queues is for a later tick.
+            schedulerTasks.tick(this::runTaskEntry);
+            schedulerTick++; // Tick after so tasks can be ran without a delay.
+        }
+    }
 
-            // To avoid stopping the scheduler from inside a task making it scream, use ArrayList wrapping
-            for(SchedulerTaskEntry task: new ArrayList<>(schedulerTasks)) {
-                long taskTick = task.getNextTick();
-
-                if(taskTick == schedulerTick) {
+    protected void runTaskEntry(SchedulerTaskEntry task) {
 
-                    // Cancelled tasks shouldn't be in the scheduler queue anyway.
-                    if(!task.getTask().isCancelled()) {
+        // Cancelled tasks are skipped and dropped from the queue.
+        if(!task.getTask().isCancelled()) {
 
-                        if(task.isAsynchronous()) {
-                            new Thread() {
+            if(task.isAsynchronous()) {
+                Runnable asyncRun = () -> {
+                    activeThreads.add(Thread.currentThread());
 
-                                @Override
-                                public void run() {
-                                    synchronized (activeThreads) { activeThreads.add(this); }
+                    try {
+                        runTimed(task.getTask());
 
-                                    try {
-                                        task.getTask().run();
+                    } catch (Exception err) {
+                        Server.getLogger(Server.S7R_LOG).error("Error thrown in a scheduler (asynchronous) task:");
+                        err.printStackTrace();
 
-                                    } catch (Exception err) {
-                                        Server.getLogger(Server.S7R_LOG).error("Error thrown in a scheduler (asynchronous) task:");
-                                        err.printStackTrace();
-                                    }
+                    } finally {
+                        activeThreads.remove(Thread.currentThread());
+                    }
+                };
+
+                // Shared by every scheduler so a burst of tasks can't start a burst of threads.
+                AsyncTaskExecutor executor = AsyncTaskExecutor.get();
+                if(executor != null) executor.execute(asyncRun);
+                else new Thread(asyncRun, "Scheduler-Async").start(); // Not part of a running server.
+
+            } else {
+                // Run as sync. This task must complete before the next one
+                // is ran.
+                try {
+                    runTimed(task.getTask());
+
+                } catch (Exception err) {
+                    Server.getLogger(Server.S7R_LOG).error("Error thrown in a scheduler (synchronous) task:");
+                    err.printStackTrace();
+                }
+            }
 
-                                    synchronized (activeThreads) { activeThreads.remove(this); }
-                                }
 
-                                @Override
-                                public void interrupt() {
-                                    synchronized (activeThreads) {
-                                        activeThreads.remove(this);
-                                    }
-                                    super.interrupt();
-                                }
+            // Not cancelled by the call of #run() + it's a repeat task.
+            if(task.isRepeating() && (!task.getTask().isCancelled())) {
+                long targetTick = task.getNextTick() + task.getRepeatInterval();
 
-                            }.start(); // Start async thread and move on.
+                SchedulerTaskEntry newTask = new SchedulerTaskEntry(task.getTask(), task.getRepeatInterval(), targetTick, task.isAsynchronous());
+                queueTaskEntry(newTask);
+            }
+        }
+    }
 
-                        } else {
-                            // Run as sync. This task must complete before the next one
-                            // is ran.
-                            try {
-                                task.getTask().run();
 
-                            } catch (Exception err) {
-                                Server.getLogger(Server.S7R_LOG).error("Error thrown in a scheduler (synchronous) task:");
-                                err.printStackTrace();
-                            }
-                        }
 
+    // Only timed while a TickProfiler is running.
+    protected void runTimed(SchedulerTask task) {
+        TickProfiler profiler = TickProfiler.get();
 
-                        // Not cancelled by the call of #run() + it's a repeat task.
-                        if(task.isRepeating() && (!task.getTask().isCancelled())) {
-                            long targetTick = taskTick + task.getRepeatInterval();
+        if(profiler == null) {
+            task.run();
+            return;
+        }
 
-                            SchedulerTaskEntry newTask = new SchedulerTaskEntry(task.getTask(), task.getRepeatInterval(), targetTick, task.isAsynchronous());
-                            queueTaskEntry(newTask);
-                        }
-                    }
+        long start = System.nanoTime();
 
-                } else if(taskTick > schedulerTick) {
-                    // Upcoming task, do not remove from queue! :)
-                    break;
-                }
+        try {
+            task.run();
 
-                schedulerTasks.remove(0); // Operate like a queue.
-                // Remove from the start as long as it isn't an upcoming task.
-                // If a task is somehow scheduled *before* the current tick, it should
-                // be removed anyway.
-            }
-            schedulerTick++; // Tick after so tasks can be ran without a delay.
+        } finally {
+            profiler.recordTask(this, task, System.nanoTime() - start);
         }
     }
 
@@ -154,18 +159,7 @@ public class Scheduler extends SchedulingType {
 
     protected synchronized void queueTaskEntry(SchedulerTaskEntry entry){
         if(entry.getNextTick() <= schedulerTick) throw new IllegalStateException("Task cannot be scheduled before the current tick.");
-
-        int size = schedulerTasks.size();
-        for(int i = 0; i < size; i++) {
-            // Entry belongs before task? Insert into it's position
-            if(schedulerTasks.get(i).getNextTick() > entry.getNextTick()) {
-                this.schedulerTasks.add(i, entry);
-                return;
-            }
-        }
-
-        // Not added in loop. Append to the end.
-        this.schedulerTasks.add(entry);
+        this.schedulerTasks.add(entry); // Tasks due on the same tick keep the order they were queued in.
     }
 
 
@@ -187,8 +181,10 @@ public class Scheduler extends SchedulingType {
 
     /** The unique ID of this scheduler. */
     public UUID getSchedulerID() { return schedulerID; }
-    /** @return a list of active async task threads */
+    /** @return a list of threads running this scheduler's async tasks right now */
     public Set<Thread> getActiveThreads() { return new HashSet<>(activeThreads); }
+    /** @return the number of tasks waiting to run. */
+    public synchronized int getQueuedTaskCount() { return schedulerTasks.size(); }
 
 
 
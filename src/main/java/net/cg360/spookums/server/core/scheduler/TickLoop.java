@@ -0,0 +1,159 @@
+package net.cg360.spookums.server.core.scheduler;
+
+import net.cg360.spookums.server.Server;
+import net.cg360.spookums.server.ServerConfig;
+import net.cg360.spookums.server.core.data.Settings;
+import net.cg360.spookums.server.core.data.json.io.error.ConfigFormatException;
+import net.cg360.spookums.server.util.clean.Check;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs the server tick at a fixed rate. Each tick has a deadline on the
+ * System.nanoTime() clock, one tick's length after the last deadline,
+ * so time spent ticking is never added on top of the wait and the rate
+ * doesn't drift as the load grows.
+ *
+ * If ticks fall behind, a bounded number of the missed ticks are run back
+ * to back to catch up. Anything past that (or every missed tick, with the
+ * skip policy) is skipped and reported.
+ */
+public class TickLoop {
+
+    public static final long SKIP_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(15);
+
+    public enum CatchUpPolicy {
+        CATCH_UP, // Missed ticks are run back to back, up to the catch-up limit.
+        SKIP // Missed ticks are skipped, staying in step with the original deadlines.
+    }
+
+    protected final int tickRate;
+    protected final long tickNanos;
+    protected final CatchUpPolicy policy;
+    protected final int maxCatchUpTicks;
+    protected final TickStats stats;
+
+    protected long lastSkipLog;
+    protected long unloggedSkips;
+
+    // Read by the TickWatchdog.
+    protected volatile boolean isTicking;
+    protected volatile long tickStart;
+    protected volatile long tickNumber;
+    protected volatile Thread tickThread;
+
+    /**
+     * @param tickRate ticks per second.
+     * @param maxCatchUpTicks the most missed ticks run back to back when catching up.
+     */
+    public TickLoop(int tickRate, CatchUpPolicy policy, int maxCatchUpTicks) {
+        this.tickRate = Check.inclusiveBounds(tickRate, 1, 1000, "tickRate");
+        this.tickNanos = TimeUnit.SECONDS.toNanos(1) / tickRate;
+        this.policy = Check.nullParam(policy, "policy");
+        this.maxCatchUpTicks = Check.inclusiveLowerBound(maxCatchUpTicks, 0, "maxCatchUpTicks");
+        this.stats = new TickStats(tickNanos);
+
+        this.lastSkipLog = System.nanoTime() - SKIP_LOG_INTERVAL_NANOS;
+        this.unloggedSkips = 0;
+
+        this.isTicking = false;
+        this.tickStart = 0;
+        this.tickNumber = 0;
+        this.tickThread = null;
+    }
+
+    /** Creates a loop from the tick_* properties of the server config. */
+    public static TickLoop fromSettings(Settings settings) {
+        int tickRate = settings.getOrDefault(ServerConfig.TICK_RATE);
+        int maxCatchUp = settings.getOrDefault(ServerConfig.TICK_MAX_CATCH_UP);
+        Check.inclusiveBounds(tickRate, 1, 1000, "config.tick_rate");
+        Check.inclusiveLowerBound(maxCatchUp, 0, "config.tick_max_catch_up");
+
+        switch (settings.getOrDefault(ServerConfig.TICK_CATCH_UP).trim().toLowerCase()) {
+            case "catchup":
+                return new TickLoop(tickRate, CatchUpPolicy.CATCH_UP, maxCatchUp);
+
+            case "skip":
+                return new TickLoop(tickRate, CatchUpPolicy.SKIP, maxCatchUp);
+
+            default:
+                throw new ConfigFormatException("The property 'tick_catch_up' must be either 'catchup' or 'skip'!");
+        }
+    }
+
+
+    /**
+     * Runs the tick until isRunning returns false.
+     * @param monitor waited on between ticks. The caller must hold its lock, which is released while waiting.
+     */
+    public void run(Object monitor, BooleanSupplier isRunning, Runnable tick) throws InterruptedException {
+        long deadline = System.nanoTime();
+        this.tickThread = Thread.currentThread();
+
+        while (isRunning.getAsBoolean()) {
+            long start = System.nanoTime();
+            long lag = start - deadline;
+
+            if(lag < 0) {
+                // Woken early (or spuriously). Checks again once the wait's up.
+                long wait = -lag;
+                monitor.wait(TimeUnit.NANOSECONDS.toMillis(wait), (int) (wait % TimeUnit.MILLISECONDS.toNanos(1)));
+                continue;
+            }
+
+            long behind = lag / tickNanos; // Whole ticks missed.
+            long allowed = policy == CatchUpPolicy.CATCH_UP ? maxCatchUpTicks : 0;
+
+            if(behind > allowed) {
+                long skipped = behind - allowed;
+                deadline += skipped * tickNanos;
+                lag -= skipped * tickNanos;
+
+                stats.recordSkipped(skipped);
+                reportSkipped(start, skipped, behind);
+            }
+
+            this.tickStart = start;
+            this.tickNumber++;
+            this.isTicking = true;
+
+            try {
+                tick.run();
+
+            } finally {
+                this.isTicking = false;
+            }
+
+            stats.recordTick(start, System.nanoTime() - start, lag);
+            deadline += tickNanos;
+        }
+    }
+
+    // Logged at most once every 15 seconds so an overloaded server can't flood the log.
+    protected void reportSkipped(long now, long skipped, long behind) {
+        unloggedSkips += skipped;
+        if(now - lastSkipLog < SKIP_LOG_INTERVAL_NANOS) return;
+
+        Server.getLogger(Server.BASE_LOG).warn(String.format(
+                "Can't keep up! Is the server overloaded? Running %s tick(s) (%sms) behind, skipped %s tick(s) since the last warning. Mean tick: %.2fms",
+                behind, TimeUnit.NANOSECONDS.toMillis(behind * tickNanos), unloggedSkips, stats.getMeanTickMillis()
+        ));
+
+        this.lastSkipLog = now;
+        this.unloggedSkips = 0;
+    }
+
+
+
+    public int getTickRate() { return tickRate; }
+    public long getTickNanos() { return tickNanos; }
+    public CatchUpPolicy getPolicy() { return policy; }
+    public int getMaxCatchUpTicks() { return maxCatchUpTicks; }
+    public TickStats getStats() { return stats; }
+
+    public boolean isTicking() { return isTicking; }
+    public long getTickStart() { return tickStart; }
+    public long getTickNumber() { return tickNumber; }
+    public Thread getTickThread() { return tickThread; }
+}
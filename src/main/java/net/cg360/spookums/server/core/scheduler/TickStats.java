@@ -0,0 +1,108 @@
+package net.cg360.spookums.server.core.scheduler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timings of the most recent ticks of a TickLoop. Recorded by the tick
+ * thread and safe to read from any other.
+ */
+public class TickStats {
+
+    public static final int WINDOW = 100; // Ticks averaged over.
+
+    protected final long tickNanos;
+
+    protected final long[] startTimes; // Ring buffers over the window.
+    protected final long[] durations;
+    protected int next;
+    protected int filled;
+
+    protected long tickCount;
+    protected long lastDuration;
+    protected long lastLag;
+    protected long peakLag;
+    protected long overruns; // Ticks which took longer than a tick should.
+    protected long skippedTicks;
+
+    public TickStats(long tickNanos) {
+        this.tickNanos = tickNanos;
+
+        this.startTimes = new long[WINDOW];
+        this.durations = new long[WINDOW];
+        this.next = 0;
+        this.filled = 0;
+
+        this.tickCount = 0;
+        this.lastDuration = 0;
+        this.lastLag = 0;
+        this.peakLag = 0;
+        this.overruns = 0;
+        this.skippedTicks = 0;
+    }
+
+
+    /**
+     * @param start when the tick started, from System.nanoTime().
+     * @param duration how long the tick took.
+     * @param lag how late the tick started compared to its deadline.
+     */
+    public synchronized void recordTick(long start, long duration, long lag) {
+        startTimes[next] = start;
+        durations[next] = duration;
+        next = (next + 1) % WINDOW;
+        filled = Math.min(WINDOW, filled + 1);
+
+        tickCount++;
+        lastDuration = duration;
+        lastLag = lag;
+        peakLag = Math.max(peakLag, lag);
+        if(duration > tickNanos) overruns++;
+    }
+
+    public synchronized void recordSkipped(long ticks) {
+        skippedTicks += ticks;
+    }
+
+
+    /** @return the ticks run per second, measured over the last 100 ticks. */
+    public synchronized double getTPS() {
+        if(filled < 2) return 0;
+
+        long newest = startTimes[(next + WINDOW - 1) % WINDOW];
+        long oldest = startTimes[(next + WINDOW - filled) % WINDOW];
+        long span = newest - oldest;
+        return span <= 0 ? 0 : (filled - 1) * (double) TimeUnit.SECONDS.toNanos(1) / span;
+    }
+
+    /** @return the mean time taken by the last 100 ticks in milliseconds. */
+    public synchronized double getMeanTickMillis() {
+        if(filled == 0) return 0;
+
+        long total = 0;
+        for(int i = 0; i < filled; i++) total += durations[i];
+        return total / (double) filled / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /** @return the longest of the last 100 ticks in milliseconds. */
+    public synchronized double getMaxTickMillis() {
+        long max = 0;
+        for(int i = 0; i < filled; i++) max = Math.max(max, durations[i]);
+        return max / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public synchronized long getTickCount() { return tickCount; }
+    public synchronized long getLastDurationNanos() { return lastDuration; }
+    public synchronized long getLastLagNanos() { return lastLag; }
+    public synchronized long getPeakLagNanos() { return peakLag; }
+    public synchronized long getOverruns() { return overruns; }
+    public synchronized long getSkippedTicks() { return skippedTicks; }
+    public long getTickNanos() { return tickNanos; }
+
+
+
+    @Override
+    public String toString() {
+        return String.format("Ticks: {tps=%.2f, meanMillis=%.2f, maxMillis=%.2f, lagMillis=%.2f, overruns=%s, skipped=%s}",
+                getTPS(), getMeanTickMillis(), getMaxTickMillis(), getLastLagNanos() / 1e6, getOverruns(), getSkippedTicks());
+    }
+}
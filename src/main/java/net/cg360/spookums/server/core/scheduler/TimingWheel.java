@@ -0,0 +1,146 @@
+package net.cg360.spookums.server.core.scheduler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel holding the queued tasks of a Scheduler.
+ * Adding a task is O(1) and each tick only touches the tasks due on it,
+ * however many are queued for later.
+ *
+ * Each level is a wheel of 64 slots, each slot covering 64x the ticks of
+ * a slot on the level below. A task goes on the lowest level which can
+ * tell its tick apart from the current one, and is moved down a level
+ * (cascaded) each time the current tick reaches the slot it's in. All
+ * tasks due on the same tick are always in the same slot, so they run in
+ * the order they were added, just as they did with the old sorted list.
+ *
+ * Not thread-safe. The Scheduler owning it synchronizes every call.
+ */
+public class TimingWheel {
+
+    public static final int SLOT_BITS = 6;
+    public static final int SLOTS = 1 << SLOT_BITS;
+    public static final int SLOT_MASK = SLOTS - 1;
+    public static final int LEVELS = (63 + SLOT_BITS - 1) / SLOT_BITS; // Enough for any positive tick.
+
+    protected final ArrayList<ArrayDeque<SchedulerTaskEntry>[]> levels; // Slots are only created once they're used.
+    protected ArrayDeque<SchedulerTaskEntry> running; // The slot being run by tick(), kept so clear() can reach it.
+    protected long currentTick;
+    protected int size;
+
+    /** @param startTick the first tick which will be run. */
+    public TimingWheel(long startTick) {
+        if(startTick < 0) throw new IllegalArgumentException("The start tick must be positive");
+
+        this.levels = new ArrayList<>(LEVELS);
+        for(int i = 0; i < LEVELS; i++) this.levels.add(newLevel());
+
+        this.running = null;
+        this.currentTick = startTick;
+        this.size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArrayDeque<SchedulerTaskEntry>[] newLevel() {
+        return (ArrayDeque<SchedulerTaskEntry>[]) new ArrayDeque<?>[SLOTS];
+    }
+
+
+    /**
+     * Queues an entry to be returned on its next tick.
+     * @throws IllegalStateException if the entry is due before the current tick.
+     */
+    public void add(SchedulerTaskEntry entry) {
+        if(entry.getNextTick() < currentTick) throw new IllegalStateException("Task cannot be scheduled before the current tick.");
+
+        place(entry);
+        size++;
+    }
+
+    /**
+     * Passes each entry due on the current tick to the runner, in the order
+     * they were added, then moves on to the next tick. Entries added by
+     * the runner are always for a later tick. If the runner clears the
+     * wheel, the entries it hasn't reached yet are cleared too.
+     */
+    public void tick(Consumer<SchedulerTaskEntry> runner) {
+        ArrayDeque<SchedulerTaskEntry>[] slots = levels.get(0);
+        int index = (int) (currentTick & SLOT_MASK);
+        ArrayDeque<SchedulerTaskEntry> due = slots[index];
+
+        if(due != null) {
+            slots[index] = null; // Detached so the runner can safely add entries.
+            this.running = due;
+
+            SchedulerTaskEntry entry;
+            while((entry = due.pollFirst()) != null) {
+                size--;
+                runner.accept(entry);
+            }
+
+            this.running = null;
+        }
+
+        currentTick++;
+        cascade();
+    }
+
+    /** Removes every queued entry, passing each to the consumer. */
+    public void clear(Consumer<SchedulerTaskEntry> removed) {
+        if(running != null) {
+            for(SchedulerTaskEntry entry: running) removed.accept(entry);
+            running.clear();
+        }
+
+        for(ArrayDeque<SchedulerTaskEntry>[] slots: levels) {
+
+            for(int i = 0; i < SLOTS; i++) {
+                if(slots[i] == null) continue;
+
+                for(SchedulerTaskEntry entry: slots[i]) removed.accept(entry);
+                slots[i] = null;
+            }
+        }
+
+        this.size = 0;
+    }
+
+
+    // Moves entries down from each level whose slot the current tick has just reached.
+    // Done highest first so entries can fall through more than one level at once.
+    protected void cascade() {
+        int topLevel = Math.min(LEVELS - 1, Long.numberOfTrailingZeros(currentTick) / SLOT_BITS);
+
+        for(int level = topLevel; level > 0; level--) {
+            ArrayDeque<SchedulerTaskEntry>[] slots = levels.get(level);
+            int index = (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+            ArrayDeque<SchedulerTaskEntry> moving = slots[index];
+
+            if(moving != null) {
+                slots[index] = null;
+                for(SchedulerTaskEntry entry: moving) place(entry);
+            }
+        }
+    }
+
+    protected void place(SchedulerTaskEntry entry) {
+        long tick = entry.getNextTick();
+        long differingBits = tick ^ currentTick;
+        int level = differingBits == 0 ? 0 : (63 - Long.numberOfLeadingZeros(differingBits)) / SLOT_BITS;
+        int index = (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+
+        ArrayDeque<SchedulerTaskEntry>[] slots = levels.get(level);
+        if(slots[index] == null) slots[index] = new ArrayDeque<>();
+        slots[index].add(entry);
+    }
+
+
+
+    /** @return the tick which will be run next. */
+    public long getCurrentTick() { return currentTick; }
+    /** @return the number of entries queued. */
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+}
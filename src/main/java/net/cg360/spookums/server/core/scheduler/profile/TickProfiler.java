@@ -0,0 +1,231 @@
+package net.cg360.spookums.server.core.scheduler.profile;
+
+import net.cg360.spookums.server.core.scheduler.Scheduler;
+import net.cg360.spookums.server.core.scheduler.task.SchedulerTask;
+import net.cg360.spookums.server.util.clean.Check;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times each phase of the server tick, each scheduler's tick and every
+ * task the schedulers run (grouped by scheduler and by task class), so
+ * it's possible to see what's making ticks slow.
+ *
+ * Profiling is off unless a primary instance exists. Everything timed
+ * checks for one first, so the only cost when it's off is that check.
+ * The slowest task runs are kept over a rolling window and can be
+ * queried at any time with getSlowestTasks() or report().
+ */
+public class TickProfiler {
+
+    public static final long DEFAULT_WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static TickProfiler primaryInstance = null;
+
+    protected final int topCount;
+    protected final long windowNanos;
+
+    protected final ConcurrentHashMap<String, TimingHistogram> phases;
+    protected final ConcurrentHashMap<UUID, TimingHistogram> schedulers; // Every task run by each scheduler.
+    protected final ConcurrentHashMap<UUID, TimingHistogram> schedulerTicks; // Each whole tick of each scheduler.
+    protected final ConcurrentHashMap<Class<?>, TimingHistogram> taskClasses;
+
+    // The slowest runs of the current and last window. Min-heaps so the fastest is dropped first.
+    protected PriorityQueue<TaskSample> currentSlowest;
+    protected PriorityQueue<TaskSample> lastSlowest;
+    protected long windowStart;
+
+    /** @param topCount the number of slowest task runs kept. */
+    public TickProfiler(int topCount) {
+        this(topCount, DEFAULT_WINDOW_NANOS);
+    }
+
+    /** @param windowNanos slow runs are forgotten after between one and two windows. */
+    public TickProfiler(int topCount, long windowNanos) {
+        this.topCount = Check.inclusiveLowerBound(topCount, 1, "topCount");
+        this.windowNanos = windowNanos;
+
+        this.phases = new ConcurrentHashMap<>();
+        this.schedulers = new ConcurrentHashMap<>();
+        this.schedulerTicks = new ConcurrentHashMap<>();
+        this.taskClasses = new ConcurrentHashMap<>();
+
+        this.currentSlowest = new PriorityQueue<>(topCount + 1);
+        this.lastSlowest = new PriorityQueue<>(topCount + 1);
+        this.windowStart = System.nanoTime();
+    }
+
+    public boolean setAsPrimaryInstance() {
+        if(primaryInstance == null) {
+            primaryInstance = this;
+            return true;
+        }
+        return false;
+    }
+
+
+
+    // -- Recording --
+
+    /**
+     * Records a phase of the tick which started at phaseStart.
+     * @return the time it was recorded at, to be used as the start of the next phase.
+     */
+    public long endPhase(String phase, long phaseStart) {
+        long now = System.nanoTime();
+        phases.computeIfAbsent(phase, key -> new TimingHistogram()).record(now - phaseStart);
+        return now;
+    }
+
+    /** Records a single tick of a scheduler, all of its synchronous tasks included. */
+    public void recordSchedulerTick(Scheduler scheduler, long nanos) {
+        schedulerTicks.computeIfAbsent(scheduler.getSchedulerID(), key -> new TimingHistogram()).record(nanos);
+    }
+
+    /**
+     * Drops the timings of a scheduler which has been stopped, so schedulers
+     * coming and going don't grow the profiler for as long as the server runs.
+     */
+    public void forgetScheduler(UUID schedulerID) {
+        schedulers.remove(schedulerID);
+        schedulerTicks.remove(schedulerID);
+    }
+
+    /** Records a single run of a task. Safe to call from any thread. */
+    public void recordTask(Scheduler scheduler, SchedulerTask task, long nanos) {
+        Class<?> taskClass = task.getTaskClass();
+
+        schedulers.computeIfAbsent(scheduler.getSchedulerID(), key -> new TimingHistogram()).record(nanos);
+        taskClasses.computeIfAbsent(taskClass, key -> new TimingHistogram()).record(nanos);
+
+        synchronized (this) {
+            rollWindow(System.nanoTime());
+
+            // Most runs are nowhere near the slowest, so they're turned away without allocating.
+            if((currentSlowest.size() >= topCount) && (currentSlowest.peek().getNanos() >= nanos)) return;
+
+            currentSlowest.add(new TaskSample(describe(taskClass), scheduler.getSchedulerID(), nanos, System.currentTimeMillis()));
+            if(currentSlowest.size() > topCount) currentSlowest.poll();
+        }
+    }
+
+    protected void rollWindow(long now) {
+        if(now - windowStart < windowNanos) return;
+
+        PriorityQueue<TaskSample> reused = lastSlowest;
+        reused.clear();
+
+        this.lastSlowest = currentSlowest;
+        this.currentSlowest = reused;
+        this.windowStart = now;
+    }
+
+
+
+    // -- Reporting --
+
+    /** @return the slowest task runs of the last one to two minutes, slowest first. */
+    public synchronized List<TaskSample> getSlowestTasks() {
+        rollWindow(System.nanoTime());
+
+        ArrayList<TaskSample> samples = new ArrayList<>(currentSlowest);
+        samples.addAll(lastSlowest);
+        samples.sort(Collections.reverseOrder());
+        return samples.size() > topCount ? new ArrayList<>(samples.subList(0, topCount)) : samples;
+    }
+
+    /** @return a readable summary of every phase, running scheduler and task class, plus the slowest runs. */
+    public String report() {
+        StringBuilder builder = new StringBuilder("Tick profile:\n");
+
+        builder.append("  Phases:\n");
+        for(Map.Entry<String, TimingHistogram> phase: new TreeMap<>(phases).entrySet())
+            appendLine(builder, phase.getKey(), phase.getValue());
+
+        builder.append("  Scheduler ticks:\n");
+        for(Map.Entry<UUID, TimingHistogram> scheduler: schedulerTicks.entrySet())
+            appendLine(builder, scheduler.getKey().toString(), scheduler.getValue());
+
+        builder.append("  Scheduler tasks:\n");
+        for(Map.Entry<UUID, TimingHistogram> scheduler: schedulers.entrySet())
+            appendLine(builder, scheduler.getKey().toString(), scheduler.getValue());
+
+        // Most time spent first.
+        ArrayList<Map.Entry<Class<?>, TimingHistogram>> classes = new ArrayList<>(taskClasses.entrySet());
+        classes.sort((a, b) -> Long.compare(b.getValue().getTotalNanos(), a.getValue().getTotalNanos()));
+
+        builder.append("  Task classes:\n");
+        for(Map.Entry<Class<?>, TimingHistogram> taskClass: classes)
+            appendLine(builder, describe(taskClass.getKey()), taskClass.getValue());
+
+        builder.append("  Slowest tasks:\n");
+        for(TaskSample sample: getSlowestTasks())
+            builder.append("    ").append(sample.toString()).append("\n");
+
+        return builder.toString();
+    }
+
+    protected static void appendLine(StringBuilder builder, String name, TimingHistogram histogram) {
+        builder.append(String.format("    %-48s runs=%-8s mean=%.3fms p99=%.3fms max=%.3fms total=%.1fms%n",
+                name, histogram.getCount(), toMillis(histogram.getMeanNanos()), toMillis(histogram.getPercentile(99)),
+                toMillis(histogram.getMaxNanos()), toMillis(histogram.getTotalNanos())));
+    }
+
+    protected static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    // Lambdas keep the class they were written in and their number, but not the address the JVM adds.
+    protected static String describe(Class<?> taskClass) {
+        String name = taskClass.getName();
+        int hiddenSuffix = name.indexOf('/');
+        return hiddenSuffix == -1 ? name : name.substring(0, hiddenSuffix);
+    }
+
+
+
+    public TimingHistogram getPhase(String phase) { return phases.get(phase); }
+    public TimingHistogram getScheduler(UUID schedulerID) { return schedulers.get(schedulerID); }
+    public TimingHistogram getSchedulerTicks(UUID schedulerID) { return schedulerTicks.get(schedulerID); }
+    public TimingHistogram getTaskClass(Class<?> taskClass) { return taskClasses.get(taskClass); }
+    public int getTopCount() { return topCount; }
+
+    public static TickProfiler get() {
+        return primaryInstance;
+    }
+
+
+
+    /** A single slow run of a task. */
+    public static class TaskSample implements Comparable<TaskSample> {
+
+        protected final String taskName;
+        protected final UUID schedulerID;
+        protected final long nanos;
+        protected final long time; // Epoch millis.
+
+        public TaskSample(String taskName, UUID schedulerID, long nanos, long time) {
+            this.taskName = taskName;
+            this.schedulerID = schedulerID;
+            this.nanos = nanos;
+            this.time = time;
+        }
+
+        @Override
+        public int compareTo(TaskSample other) {
+            return Long.compare(nanos, other.nanos);
+        }
+
+        public String getTaskName() { return taskName; }
+        public UUID getSchedulerID() { return schedulerID; }
+        public long getNanos() { return nanos; }
+        public long getTime() { return time; }
+
+        @Override
+        public String toString() {
+            return String.format("%.3fms | %s (scheduler %s) at %s", toMillis(nanos), taskName, schedulerID, new Date(time));
+        }
+    }
+}
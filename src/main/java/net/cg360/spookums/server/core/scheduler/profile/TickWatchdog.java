@@ -0,0 +1,77 @@
+package net.cg360.spookums.server.core.scheduler.profile;
+
+import net.cg360.spookums.server.Server;
+import net.cg360.spookums.server.core.scheduler.TickLoop;
+import net.cg360.spookums.server.util.clean.Check;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the ticks of a TickLoop from a thread of its own and logs the
+ * ticking thread's stack whenever a tick runs for longer than the
+ * threshold, showing exactly what it was stuck on. Each tick is only
+ * dumped once, however long it runs for.
+ */
+public class TickWatchdog extends Thread {
+
+    protected final TickLoop tickLoop;
+    protected final long thresholdNanos;
+    protected final long checkIntervalMillis;
+
+    protected long lastDumpedTick;
+    protected volatile boolean isRunning;
+
+    /** @param thresholdMillis how long a tick can run before its stack is dumped. */
+    public TickWatchdog(TickLoop tickLoop, int thresholdMillis) {
+        super("Tick-Watchdog");
+        this.tickLoop = Check.nullParam(tickLoop, "tickLoop");
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(Check.inclusiveLowerBound(thresholdMillis, 1, "thresholdMillis"));
+        this.checkIntervalMillis = Math.max(10, thresholdMillis / 4);
+
+        this.lastDumpedTick = -1;
+        this.isRunning = true;
+        this.setDaemon(true);
+    }
+
+
+    @Override
+    public void run() {
+        try {
+            while (isRunning) {
+                Thread.sleep(checkIntervalMillis);
+                check();
+            }
+
+        } catch (InterruptedException ignored) { }
+    }
+
+    protected void check() {
+        long tick = tickLoop.getTickNumber();
+        long start = tickLoop.getTickStart();
+        Thread tickThread = tickLoop.getTickThread();
+
+        // Read again so the start time definitely belongs to the tick.
+        if((!tickLoop.isTicking()) || (tick != tickLoop.getTickNumber()) || (tick == lastDumpedTick) || (tickThread == null)) return;
+
+        long elapsed = System.nanoTime() - start;
+        if(elapsed < thresholdNanos) return;
+
+        this.lastDumpedTick = tick;
+        StringBuilder dump = new StringBuilder(String.format(
+                "Tick %s has been running for %sms (threshold: %sms). Stack of %s:",
+                tick, TimeUnit.NANOSECONDS.toMillis(elapsed), TimeUnit.NANOSECONDS.toMillis(thresholdNanos), tickThread.getName()
+        ));
+
+        for(StackTraceElement element: tickThread.getStackTrace()) dump.append("\n\tat ").append(element);
+        Server.getLogger(Server.BASE_LOG).warn(dump.toString());
+    }
+
+    public void shutdown() {
+        this.isRunning = false;
+        this.interrupt();
+    }
+
+
+
+    public long getThresholdNanos() { return thresholdNanos; }
+}
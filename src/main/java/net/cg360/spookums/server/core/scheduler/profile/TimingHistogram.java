@@ -0,0 +1,91 @@
+package net.cg360.spookums.server.core.scheduler.profile;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in log-linear buckets, each power of two being split
+ * into 16 so any recorded value is off by at most ~6%. That's plenty to
+ * tell a slow task from a fast one and keeps each histogram under 8KB.
+ * Recording is a few atomic updates, so any thread can record at once.
+ */
+public class TimingHistogram {
+
+    protected static final int SUB_BUCKET_BITS = 4;
+    protected static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    protected static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    protected final AtomicLongArray counts;
+    protected final AtomicLong count;
+    protected final AtomicLong totalNanos;
+    protected final AtomicLong maxNanos;
+
+    public TimingHistogram() {
+        this.counts = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new AtomicLong(0);
+        this.totalNanos = new AtomicLong(0);
+        this.maxNanos = new AtomicLong(0);
+    }
+
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        totalNanos.addAndGet(value);
+        maxNanos.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * @param percentile from 0 to 100.
+     * @return the highest value in the bucket holding the percentile, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+
+        if(total == 0) return 0;
+
+        long target = Math.max(1, (long) Math.ceil((percentile / 100d) * total));
+        long seen = 0;
+
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if(seen >= target) return Math.min(upperBoundOf(i), maxNanos.get());
+        }
+
+        return maxNanos.get();
+    }
+
+    public long getCount() { return count.get(); }
+    public long getTotalNanos() { return totalNanos.get(); }
+    public long getMaxNanos() { return maxNanos.get(); }
+
+    public long getMeanNanos() {
+        long recorded = count.get();
+        return recorded == 0 ? 0 : totalNanos.get() / recorded;
+    }
+
+
+    protected static int indexOf(long value) {
+        if(value < SUB_BUCKETS) return (int) value;
+
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        int mantissa = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return ((shift + 1) << SUB_BUCKET_BITS) + mantissa;
+    }
+
+    protected static long upperBoundOf(int index) {
+        if(index < SUB_BUCKETS) return index;
+
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long mantissa = index & (SUB_BUCKETS - 1);
+        return ((SUB_BUCKETS + mantissa + 1) << shift) - 1;
+    }
+}
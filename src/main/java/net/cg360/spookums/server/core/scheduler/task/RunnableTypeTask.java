@@ -16,4 +16,9 @@ public final class RunnableTypeTask extends SchedulerTask {
     public void run() {
         taskRunnable.run();
     }
+
+    @Override
+    public Class<?> getTaskClass() {
+        return taskRunnable.getClass();
+    }
 }
@@ -20,6 +20,9 @@ public abstract class SchedulerTask {
     /** Sets the task as cancelled. */
     public final void cancel() { this.isCancelled = true; }
 
+    /** @return the class doing the work of the task, used to group its timings when profiling. */
+    public Class<?> getTaskClass() { return getClass(); }
+
     /** @return the unique id of the task. */
     public UUID getTaskID() { return taskID; }
     /** @return true if the task has been cancelled. */
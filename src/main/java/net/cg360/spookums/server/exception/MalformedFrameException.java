@@ -0,0 +1,12 @@
+package net.cg360.spookums.server.exception;
+
+/**
+ * For use when a frame read from a connection can't be a
+ * valid packet (e.g. it declares a size over the limit)
+ */
+public class MalformedFrameException extends RuntimeException {
+
+    public MalformedFrameException() { super(); }
+    public MalformedFrameException(String str) { super(str); }
+
+}
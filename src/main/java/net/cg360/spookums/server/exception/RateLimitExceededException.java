@@ -0,0 +1,12 @@
+package net.cg360.spookums.server.exception;
+
+/**
+ * For use when a client has gone over its inbound rate
+ * limits so many times that it should be disconnected.
+ */
+public class RateLimitExceededException extends RuntimeException {
+
+    public RateLimitExceededException() { super(); }
+    public RateLimitExceededException(String str) { super(str); }
+
+}
@@ -2,19 +2,28 @@ package net.cg360.spookums.server.network;
 
 import net.cg360.spookums.server.network.packet.NetworkPacket;
 
-import java.util.HashMap;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 // While it's not essential register a packet here, only packets
 // found here are processed when recieved by the server.
+// Each protocol version has its own table. Anything without a version
+// goes to the default table (the protocol the server speaks)
 public class PacketRegistry {
 
     private static PacketRegistry primaryInstance = null;
 
-    protected HashMap<Byte, Class<? extends NetworkPacket>> packetTypes;
+    protected final ConcurrentHashMap<Integer, PacketTable> protocolTables; // Read for every inbound packet on another version, so never locked.
+    protected final PacketTable defaultTable;
 
     public PacketRegistry() {
-        this.packetTypes = new HashMap<>();
+        this(VanillaProtocol.PROTOCOL_ID);
+    }
+
+    public PacketRegistry(int defaultProtocolVersion) {
+        this.protocolTables = new ConcurrentHashMap<>();
+        this.defaultTable = table(defaultProtocolVersion);
     }
 
     public boolean setAsPrimaryInstance() {
@@ -27,24 +36,54 @@ public class PacketRegistry {
 
 
 
+    /** @return the table for a protocol version, creating an empty one if it doesn't exist yet. */
+    public PacketTable table(int protocolVersion) {
+        return this.protocolTables.computeIfAbsent(protocolVersion, PacketTable::new);
+    }
+
+    public Optional<PacketTable> getTable(int protocolVersion) {
+        return Optional.ofNullable(this.protocolTables.get(protocolVersion));
+    }
+
+    /** @return the table for a protocol version, or the default table if there isn't one (or no version was agreed.) */
+    public PacketTable getTableOrDefault(int protocolVersion) {
+        if(protocolVersion == defaultTable.getProtocolVersion()) return defaultTable; // Skips the map for most clients.
+
+        PacketTable table = this.protocolTables.get(protocolVersion);
+        return table == null ? defaultTable : table;
+    }
+
+    public PacketTable getDefaultTable() {
+        return defaultTable;
+    }
+
+
+    /** @return a new, empty packet of the type registered to the ID in the default table, or null. */
+    public NetworkPacket createPacket(byte id) {
+        return this.defaultTable.create(id);
+    }
+
+    /** @return a new, empty packet of the type registered to the ID for the protocol version (see getTableOrDefault), or null. */
+    public NetworkPacket createPacket(int protocolVersion, byte id) {
+        return getTableOrDefault(protocolVersion).create(id);
+    }
+
     public Optional<Class<? extends NetworkPacket>> getPacketTypeForID(byte id) {
-        return Optional.ofNullable(this.packetTypes.get(id));
+        return this.defaultTable.getPacketTypeForID(id);
     }
 
     // Chaining
-    public PacketRegistry r(byte id, Class<? extends NetworkPacket> type) {
-        registerPacketType(id, type);
+    public PacketRegistry r(byte id, Supplier<? extends NetworkPacket> factory) {
+        this.defaultTable.register(id, factory);
         return this;
     }
 
-    public boolean registerPacketType(byte id, Class<? extends NetworkPacket> type) {
-        if(type == null) return false;
+    public boolean registerPacketType(byte id, Supplier<? extends NetworkPacket> factory) {
+        return this.defaultTable.register(id, factory);
+    }
 
-        if(!this.packetTypes.containsKey(id)) {
-            this.packetTypes.put(id, type);
-            return true;
-        }
-        return false;
+    public boolean registerPacketType(byte id, Class<? extends NetworkPacket> type) {
+        return this.defaultTable.register(id, type);
     }
 
 
@@ -0,0 +1,103 @@
+package net.cg360.spookums.server.network;
+
+import net.cg360.spookums.server.network.packet.NetworkPacket;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * The packet types of a single protocol version, indexed by packet ID.
+ * Looking up a type is a single array load and packets are created by
+ * calling a factory, rather than going through reflection for every
+ * inbound packet.
+ */
+public class PacketTable {
+
+    public static final int SIZE = 256; // Every possible packet ID.
+
+    protected final int protocolVersion;
+    protected final Supplier<? extends NetworkPacket>[] factories;
+    protected final Class<? extends NetworkPacket>[] types;
+
+    @SuppressWarnings("unchecked")
+    public PacketTable(int protocolVersion) {
+        this.protocolVersion = protocolVersion;
+        this.factories = (Supplier<? extends NetworkPacket>[]) new Supplier<?>[SIZE];
+        this.types = (Class<? extends NetworkPacket>[]) new Class<?>[SIZE];
+    }
+
+
+
+    /** @return a new, empty packet of the type registered to the ID, or null if nothing is registered. */
+    public NetworkPacket create(byte id) {
+        Supplier<? extends NetworkPacket> factory = factories[id & 0xFF];
+        return factory == null ? null : factory.get();
+    }
+
+    public Optional<Class<? extends NetworkPacket>> getPacketTypeForID(byte id) {
+        return Optional.ofNullable(types[id & 0xFF]);
+    }
+
+    public boolean isRegistered(byte id) {
+        return factories[id & 0xFF] != null;
+    }
+
+
+    // Chaining
+    public PacketTable r(byte id, Supplier<? extends NetworkPacket> factory) {
+        register(id, factory);
+        return this;
+    }
+
+    /**
+     * Registers a factory (usually a constructor reference) for an ID.
+     * @return false if the factory is null or the ID is already taken.
+     */
+    public boolean register(byte id, Supplier<? extends NetworkPacket> factory) {
+        if(factory == null) return false;
+        int index = id & 0xFF;
+
+        if(factories[index] == null) {
+            this.types[index] = factory.get().getClass();
+            this.factories[index] = factory;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Registers a type by its public no-argument constructor. The
+     * constructor is looked up once here, rather than on every packet.
+     * @return false if the type is null or the ID is already taken.
+     */
+    public boolean register(byte id, Class<? extends NetworkPacket> type) {
+        if(type == null) return false;
+        MethodHandle constructor;
+
+        try {
+            constructor = MethodHandles.publicLookup().findConstructor(type, MethodType.methodType(void.class));
+
+        } catch (NoSuchMethodException | IllegalAccessException err) {
+            throw new IllegalArgumentException("Packet type " + type.getSimpleName() + " must have a public no-argument constructor.", err);
+        }
+
+        return register(id, () -> {
+            try {
+                return (NetworkPacket) constructor.invoke();
+
+            } catch (RuntimeException | Error err) {
+                throw err;
+
+            } catch (Throwable err) {
+                throw new IllegalStateException("Unable to create a " + type.getSimpleName(), err);
+            }
+        });
+    }
+
+
+
+    public int getProtocolVersion() { return protocolVersion; }
+}
@@ -19,6 +19,10 @@ public class VanillaProtocol {
     public static final int MAX_PACKET_SIZE = 4096;
     //public static final int TIMEOUT = 10000;  -- Use ServerConfig value.
 
+    // Optional features. The client sends the ones it supports with its protocol
+    // check and the server's success packet returns the ones that were agreed on.
+    public static final int CAPABILITY_COMPRESSION = 0x01; // Large frames can be deflate compressed, flagged by the top bit of their size.
+
 
     // -- Packet Identifiers --
 
@@ -30,7 +34,7 @@ public class VanillaProtocol {
     public static final byte PACKET_PROTOCOL_CHECK = 0x01; // in - Can be appened with new data. Includes vital protocol info. Nothing should be removed/reordered to accommodate for older clients.
     public static final byte PACKET_PROTOCOL_SUCCESS = 0x02; // out - confirms the client is compatible.
     public static final byte PACKET_PROTOCOL_ERROR = 0x03; // out - rejects the client for using an incompatible protocol. Returns the protocol version and the supported client version
-    public static final byte PACKET_PROTOCOL_BATCH = 0x04; // Unused currently. Probably a good idea though.
+    public static final byte PACKET_PROTOCOL_BATCH = 0x04; // in/out - Several whole frames sent as one. Cannot be nested.
 
 
     // Information Packets
@@ -72,27 +76,27 @@ public class VanillaProtocol {
 
 
     public static void applyToRegistry(PacketRegistry packetRegistry) {
-        packetRegistry
+        packetRegistry.table(PROTOCOL_ID)
                 .r(PACKET_PROTOCOL_INVALID_PACKET, null)
-                .r(PACKET_PROTOCOL_CHECK, PacketInProtocolCheck.class)
-                .r(PACKET_PROTOCOL_SUCCESS, PacketOutProtocolSuccess.class)
-                .r(PACKET_PROTOCOL_ERROR, PacketOutProtocolError.class)
-                .r(PACKET_PROTOCOL_BATCH, null)
-
-                .r(PACKET_SERVER_PING_REQUEST, PacketInServerPingRequest.class)
-                .r(PACKET_SERVER_DETAIL, PacketOutServerDetail.class)
-                .r(PACKET_CLIENT_DETAIL, PacketInClientDetail.class)
-                .r(PACKET_SERVER_NOTICE, PacketOutServerNotice.class)
-                .r(PACKET_DISCONNECT_REASON, PacketInOutDisconnect.class)
-
-                .r(PACKET_RESPONSE_WARNING, PacketInOutWarn.class)
+                .r(PACKET_PROTOCOL_CHECK, PacketInProtocolCheck::new)
+                .r(PACKET_PROTOCOL_SUCCESS, PacketOutProtocolSuccess::new)
+                .r(PACKET_PROTOCOL_ERROR, PacketOutProtocolError::new)
+                .r(PACKET_PROTOCOL_BATCH, PacketInOutBatch::new)
+
+                .r(PACKET_SERVER_PING_REQUEST, PacketInServerPingRequest::new)
+                .r(PACKET_SERVER_DETAIL, PacketOutServerDetail::new)
+                .r(PACKET_CLIENT_DETAIL, PacketInClientDetail::new)
+                .r(PACKET_SERVER_NOTICE, PacketOutServerNotice::new)
+                .r(PACKET_DISCONNECT_REASON, PacketInOutDisconnect::new)
+
+                .r(PACKET_RESPONSE_WARNING, PacketInOutWarn::new)
                 .r(PACKET_RESPONSE_SUCCESS, null)
-                .r(PACKET_RESPONSE_ERROR, PacketInOutError.class)
-                .r(PACKET_CHAT_MESSAGE, PacketInOutChatMessage.class)
+                .r(PACKET_RESPONSE_ERROR, PacketInOutError::new)
+                .r(PACKET_CHAT_MESSAGE, PacketInOutChatMessage::new)
 
-                .r(PACKET_LOGIN, PacketInLogin.class)
-                .r(PACKET_UPDATE_ACCOUNT, PacketInUpdateAccount.class)
-                .r(PACKET_LOGIN_RESPONSE, PacketOutLoginResponse.class)
+                .r(PACKET_LOGIN, PacketInLogin::new)
+                .r(PACKET_UPDATE_ACCOUNT, PacketInUpdateAccount::new)
+                .r(PACKET_LOGIN_RESPONSE, PacketOutLoginResponse::new)
 
                 .r(PACKET_GAME_JOIN_REQUEST, null)
                 .r(PACKET_GAME_SEARCH_REQUEST, null)
@@ -0,0 +1,189 @@
+package net.cg360.spookums.server.network.netimpl;
+
+import net.cg360.spookums.server.Server;
+import net.cg360.spookums.server.core.event.type.network.PacketEvent;
+import net.cg360.spookums.server.network.packet.NetworkPacket;
+import net.cg360.spookums.server.network.user.NetworkClient;
+import net.cg360.spookums.server.util.clean.Check;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Collects decoded packets from the I/O threads so their events can be
+ * called on the main thread instead. Any number of I/O threads can add
+ * packets without locking, while only the main thread takes them.
+ *
+ * Each client has its own inbox. Inboxes with packets waiting take turns,
+ * one packet at a time, so a single busy client can't use up a tick's
+ * whole budget while everyone else waits.
+ *
+ * Inboxes are kept in an array indexed by the slot of the client's session
+ * ID (see SessionTable), so adding a packet never hashes anything. An inbox
+ * left in a slot by an earlier session has a different ID and is replaced.
+ */
+public class InboundPacketQueue {
+
+    private static InboundPacketQueue primaryInstance = null;
+
+    protected volatile AtomicReferenceArray<Inbox> inboxes; // Indexed by session slot. Grown as needed.
+    protected final ConcurrentLinkedQueue<Inbox> ready; // Inboxes with packets waiting, in turn order.
+
+    public InboundPacketQueue() {
+        this.inboxes = new AtomicReferenceArray<>(64);
+        this.ready = new ConcurrentLinkedQueue<>();
+    }
+
+    public boolean setAsPrimaryInstance() {
+        if(primaryInstance == null) {
+            primaryInstance = this;
+            return true;
+        }
+        return false;
+    }
+
+
+
+    /** Adds a decoded packet to its client's inbox. Safe to call from any thread. */
+    public void add(NetworkClient client, NetworkPacket packet) {
+        Inbox inbox = getInbox(client.getSessionID());
+        if(inbox == null) inbox = createInbox(client);
+
+        inbox.packets.add(packet);
+        inbox.schedule(ready);
+    }
+
+    /**
+     * Calls a PacketEvent.In for the waiting packets, taking one from each
+     * client in turn. Anything left over waits for the next call. Should
+     * only ever be called by one thread (the main thread.)
+     * @param budget the most packets to dispatch.
+     * @return the amount of packets dispatched.
+     */
+    public int dispatch(int budget) {
+        Check.inclusiveLowerBound(budget, 1, "budget");
+        int dispatched = 0;
+
+        while (dispatched < budget) {
+            Inbox inbox = ready.poll();
+            if(inbox == null) break;
+
+            NetworkPacket packet = inbox.packets.poll();
+
+            if(packet != null) {
+                Server.get().getEventManager().call(new PacketEvent.In<>(inbox.clientNetID, packet));
+                dispatched++;
+            }
+
+            // Back of the line if it has more, otherwise it's rescheduled by the next add().
+            if(!inbox.packets.isEmpty()) ready.add(inbox);
+            else {
+                inbox.unschedule(ready);
+
+                // A packet decoded just after removeClient() creates a new inbox. It's dropped once drained.
+                if(!Server.get().getNetworkInterface().getClient(inbox.clientNetID).isPresent())
+                    removeInbox(inbox.sessionID, inbox);
+            }
+        }
+
+        return dispatched;
+    }
+
+    /**
+     * Stops tracking a client. Anything already in its inbox is still dispatched.
+     * Packets added after this are dispatched too, then their inbox is dropped.
+     */
+    public void removeClient(int sessionID) {
+        Inbox inbox = getInbox(sessionID);
+        if(inbox != null) removeInbox(sessionID, inbox);
+    }
+
+
+    /** @return the amount of packets waiting across every client. Not exact while packets are being added. */
+    public int getWaitingCount() {
+        AtomicReferenceArray<Inbox> current = inboxes;
+        int count = 0;
+
+        for(int i = 0; i < current.length(); i++) {
+            Inbox inbox = current.get(i);
+            if(inbox != null) count += inbox.packets.size();
+        }
+
+        return count;
+    }
+
+
+    // @return the inbox of the session, or null if its slot is empty or holds an earlier session's inbox.
+    protected Inbox getInbox(int sessionID) {
+        AtomicReferenceArray<Inbox> current = inboxes;
+        int slot = sessionID & SessionTable.SLOT_MASK;
+        if(slot >= current.length()) return null;
+
+        Inbox inbox = current.get(slot);
+        return ((inbox != null) && (inbox.sessionID == sessionID)) ? inbox : null;
+    }
+
+    // Only the first packet of each session gets here, so it's fine to lock.
+    protected synchronized Inbox createInbox(NetworkClient client) {
+        int sessionID = Check.inclusiveLowerBound(client.getSessionID(), 0, "client.sessionID");
+        Inbox inbox = getInbox(sessionID);
+        if(inbox != null) return inbox;
+
+        int slot = sessionID & SessionTable.SLOT_MASK;
+        AtomicReferenceArray<Inbox> current = inboxes;
+
+        if(slot >= current.length()) {
+            int capacity = current.length();
+            while (capacity <= slot) capacity *= 2;
+
+            AtomicReferenceArray<Inbox> grown = new AtomicReferenceArray<>(Math.min(capacity, SessionTable.MAX_SLOTS));
+            for(int i = 0; i < current.length(); i++) grown.set(i, current.get(i));
+            this.inboxes = current = grown;
+        }
+
+        // An earlier session's inbox is replaced. If it has packets left, the ready queue still holds it.
+        inbox = new Inbox(sessionID, client.getID());
+        current.set(slot, inbox);
+        return inbox;
+    }
+
+    // Synchronized with createInbox() so a removal can't be lost to the array being grown.
+    protected synchronized void removeInbox(int sessionID, Inbox inbox) {
+        inboxes.compareAndSet(sessionID & SessionTable.SLOT_MASK, inbox, null);
+    }
+
+
+
+    public static InboundPacketQueue get() {
+        return primaryInstance;
+    }
+
+
+    protected static class Inbox {
+
+        protected final int sessionID;
+        protected final UUID clientNetID;
+        protected final ConcurrentLinkedQueue<NetworkPacket> packets;
+        protected final AtomicBoolean isScheduled; // Is it in the ready queue?
+
+        protected Inbox(int sessionID, UUID clientNetID) {
+            this.sessionID = sessionID;
+            this.clientNetID = clientNetID;
+            this.packets = new ConcurrentLinkedQueue<>();
+            this.isScheduled = new AtomicBoolean(false);
+        }
+
+        protected void schedule(ConcurrentLinkedQueue<Inbox> ready) {
+            if(isScheduled.compareAndSet(false, true)) ready.add(this);
+        }
+
+        // A packet could've been added between the empty check and clearing
+        // the flag, in which case add() saw it set and didn't schedule it.
+        protected void unschedule(ConcurrentLinkedQueue<Inbox> ready) {
+            isScheduled.set(false);
+            if(!packets.isEmpty()) schedule(ready);
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package net.cg360.spookums.server.network.netimpl;
 
+import net.cg360.spookums.server.network.netimpl.accept.AcceptStats;
+import net.cg360.spookums.server.network.netimpl.frame.BackpressureStats;
+import net.cg360.spookums.server.network.netimpl.frame.EncodedFrame;
 import net.cg360.spookums.server.network.packet.NetworkPacket;
 import net.cg360.spookums.server.network.packet.generic.PacketInOutDisconnect;
 import net.cg360.spookums.server.network.user.NetworkClient;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -14,13 +17,32 @@ import java.util.UUID;
  */
 public interface NetworkInterface {
 
+    // Sent to clients disconnected for staying over their outbound high watermark.
+    String SLOW_CLIENT_REASON = "Your connection couldn't keep up with the server.";
+
     void openServerBlocking(String hostname, int port);
     void closeServer();
 
     ArrayList<NetworkPacket> checkForInboundPackets(UUID clientNetID);
 
     void sendDataPacket(UUID clientNetID, NetworkPacket packet, boolean isUrgent);
-    void broadcastDataPacket(NetworkPacket packet, boolean isUrgent); // Bulk method
+    // Bulk methods - the packet is only encoded once, whatever the recipient count.
+    void broadcastDataPacket(NetworkPacket packet, boolean isUrgent);
+    void broadcastDataPacket(Collection<UUID> clientNetIDs, NetworkPacket packet, boolean isUrgent);
+    // Queues an already encoded frame, skipping the PacketEvent.Out. The caller keeps its own reference.
+    void sendFrame(UUID clientNetID, EncodedFrame frame, boolean isUrgent);
+
+    // Called at the end of every server tick. Sends anything held back to be batched.
+    default void flushOutbound() { }
+
+    // Checked when a client asks to use compression during the protocol check.
+    // Returns false if the interface (or the config) doesn't allow it.
+    default boolean canCompress(UUID clientNetID) { return false; }
+
+    // Called once the protocol success telling the client about compression has
+    // been sent. Anything already queued before it goes out uncompressed.
+    // Returns false if the interface (or the config) doesn't allow it.
+    default boolean enableCompression(UUID clientNetID) { return false; }
 
     default void disconnectClient(UUID clientNetID) { disconnectClient(clientNetID, new PacketInOutDisconnect( null)); }
     void disconnectClient(UUID clientNetID, PacketInOutDisconnect disconnectPacket); // Closes the socked
@@ -28,6 +50,11 @@ public interface NetworkInterface {
     boolean isClientConnected(UUID clientNetId);
     boolean isRunning();
 
+    // How often outbound packets were dropped or slow clients were kicked.
+    BackpressureStats getBackpressureStats();
+    // How many connections have been accepted, how quickly and how many are still being set up.
+    AcceptStats getAcceptStats();
+
     ArrayList<UUID> getClientNetIDs();
     Optional<NetworkClient> getClient(UUID id);
 
@@ -0,0 +1,182 @@
+package net.cg360.spookums.server.network.netimpl;
+
+import net.cg360.spookums.server.Server;
+import net.cg360.spookums.server.core.event.type.network.PacketEvent;
+import net.cg360.spookums.server.exception.MalformedFrameException;
+import net.cg360.spookums.server.exception.RateLimitExceededException;
+import net.cg360.spookums.server.network.PacketRegistry;
+import net.cg360.spookums.server.network.VanillaProtocol;
+import net.cg360.spookums.server.network.netimpl.capture.CaptureRecord;
+import net.cg360.spookums.server.network.netimpl.capture.PacketCapture;
+import net.cg360.spookums.server.network.netimpl.frame.EncodedFrame;
+import net.cg360.spookums.server.network.netimpl.frame.FrameDecoder;
+import net.cg360.spookums.server.network.netimpl.limit.InboundRateLimiter;
+import net.cg360.spookums.server.network.packet.NetworkPacket;
+import net.cg360.spookums.server.network.packet.info.PacketInOutBatch;
+import net.cg360.spookums.server.network.user.NetworkClient;
+import net.cg360.spookums.server.util.NetworkBuffer;
+
+import java.util.Collection;
+
+/**
+ * Turns complete inbound frames into packets and calls their events.
+ * Shared by the NetworkInterface implementations so they only have to
+ * worry about getting the bytes off the wire.
+ *
+ * If there's a primary InboundPacketQueue, packets are handed to it
+ * rather than having their events called on the I/O thread.
+ *
+ * If there's a primary ServerDetailCache, pings are answered with its
+ * frame right away, without being decoded or calling any events.
+ */
+public class PacketDispatcher {
+
+    protected final NetworkInterface networkInterface;
+
+    public PacketDispatcher(NetworkInterface networkInterface) {
+        this.networkInterface = networkInterface;
+    }
+
+    /**
+     * Decodes a full frame (size bytes included) into its registered packet type.
+     * @return the decoded packet, or null if the type is unregistered or the frame is malformed.
+     */
+    public NetworkPacket decodeFrame(NetworkBuffer frame) {
+        return decodeFrame(NetworkClient.NO_PROTOCOL, frame);
+    }
+
+    /**
+     * Decodes a full frame using the packet table of a protocol version,
+     * or the default table if there isn't one for it.
+     * @return the decoded packet, or null if the type is unregistered or the frame is malformed.
+     */
+    public NetworkPacket decodeFrame(int protocolVersion, NetworkBuffer frame) {
+        frame.reset();
+        frame.getUnsignedShort();
+        byte packetID = frame.get();
+
+        NetworkPacket packet;
+
+        try {
+            packet = PacketRegistry.get().createPacket(protocolVersion, packetID);
+
+        } catch (RuntimeException err) {
+            err.printStackTrace();
+            Server.getLogger(Server.NET_LOG).error("A packet type is broken in this case! Submit a bug report. :)");
+            return null;
+        }
+
+        if(packet == null) {
+            Server.getLogger(Server.NET_LOG).warn(String.format("Invalid packet received (Unrecognized type id: %s)", packetID));
+            return null;
+        }
+
+        try {
+            return packet.decode(frame);
+
+        } catch (RuntimeException err) {
+            Server.getLogger(Server.NET_LOG).warn(String.format("Malformed packet received (type id: %s) | %s", packetID, err.toString()));
+        }
+
+        return null;
+    }
+
+    public void dispatchFrame(NetworkClient client, NetworkBuffer frame, Collection<NetworkPacket> dispatched) {
+        dispatchFrame(client, frame, null, dispatched);
+    }
+
+    /**
+     * Decodes a full frame and calls a PacketEvent.In for it. Batches
+     * are unpacked and each frame inside is dispatched in order.
+     * @param client the sender. Its session ID picks its inbox if packets are queued for the tick.
+     * @param limiter checked before each packet is decoded, dropping it if over the limit. Can be null.
+     * @param dispatched collects every packet dispatched. Can be null.
+     * @throws RateLimitExceededException if the client has gone over its limits enough to be disconnected.
+     */
+    public void dispatchFrame(NetworkClient client, NetworkBuffer frame, InboundRateLimiter limiter, Collection<NetworkPacket> dispatched) {
+        PacketCapture capture = PacketCapture.get();
+        if(capture != null) capture.recordFrame(client.getID(), CaptureRecord.INBOUND, frame);
+
+        if(peekPacketID(frame) == VanillaProtocol.PACKET_PROTOCOL_BATCH) {
+            dispatchBatch(client, frame, limiter, dispatched);
+
+        } else {
+            dispatchPacket(client, frame, limiter, dispatched);
+        }
+    }
+
+    protected void dispatchPacket(NetworkClient client, NetworkBuffer frame, InboundRateLimiter limiter, Collection<NetworkPacket> dispatched) {
+
+        if((limiter != null) && !limiter.tryAcquire(peekPacketID(frame))) {
+            if(limiter.isOverStrikeLimit())
+                throw new RateLimitExceededException("Too many packets were sent too quickly.");
+
+            return; // Dropped without being decoded.
+        }
+
+        if(peekPacketID(frame) == VanillaProtocol.PACKET_SERVER_PING_REQUEST) {
+            ServerDetailCache detailCache = ServerDetailCache.get();
+
+            if(detailCache != null) {
+                EncodedFrame response = detailCache.getFrame();
+                networkInterface.sendFrame(client.getID(), response, true);
+                response.release();
+                return;
+            }
+        }
+
+        NetworkPacket packet = decodeFrame(client.getProtocolVersion(), frame);
+
+        if(packet != null) {
+            InboundPacketQueue tickQueue = InboundPacketQueue.get();
+
+            if(tickQueue != null) {
+                tickQueue.add(client, packet);
+
+            } else {
+                PacketEvent.In<?> packetEvent = new PacketEvent.In<>(client.getID(), packet);
+                Server.get().getEventManager().call(packetEvent);
+            }
+
+            if(dispatched != null) dispatched.add(packet);
+        }
+    }
+
+    // Unpacked as views of the batch frame rather than through PacketInOutBatch, which copies each frame.
+    protected void dispatchBatch(NetworkClient client, NetworkBuffer batch, InboundRateLimiter limiter, Collection<NetworkPacket> dispatched) {
+        batch.reset();
+        int contentSize = batch.getUnsignedShort() - 1;
+        batch.get();
+
+        NetworkBuffer content = batch.slice(contentSize);
+
+        try {
+            while (content.countBytesRemaining() > 0) {
+                NetworkBuffer frame = PacketInOutBatch.nextFrame(content);
+
+                if(peekPacketID(frame) == VanillaProtocol.PACKET_PROTOCOL_BATCH)
+                    throw new MalformedFrameException("Batches cannot contain other batches");
+
+                dispatchPacket(client, frame, limiter, dispatched);
+            }
+
+        } catch (MalformedFrameException err) {
+            Server.getLogger(Server.NET_LOG).warn(String.format("Malformed batch received. Dropped the rest of it | %s", err.getMessage()));
+        }
+    }
+
+
+    /** Called once a client has disconnected. */
+    public void removeClient(NetworkClient client) {
+        InboundPacketQueue tickQueue = InboundPacketQueue.get();
+        if(tickQueue != null) tickQueue.removeClient(client.getSessionID());
+
+        PacketCapture capture = PacketCapture.get();
+        if(capture != null) capture.recordClosed(client.getID());
+    }
+
+
+    protected static byte peekPacketID(NetworkBuffer frame) {
+        return frame.peek(FrameDecoder.SIZE_BYTES);
+    }
+}
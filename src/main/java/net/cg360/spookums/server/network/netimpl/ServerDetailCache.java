@@ -0,0 +1,67 @@
+package net.cg360.spookums.server.network.netimpl;
+
+import net.cg360.spookums.server.ServerConfig;
+import net.cg360.spookums.server.core.data.Settings;
+import net.cg360.spookums.server.network.netimpl.frame.EncodedFrame;
+import net.cg360.spookums.server.network.packet.info.PacketOutServerDetail;
+
+/**
+ * Keeps the server detail response to pings encoded and ready to send.
+ * Pings are the most common packet from clients that never log in, and
+ * the response only changes with the config, so it's encoded once and
+ * the same frame is sent to everyone until it's invalidated.
+ *
+ * While there's a primary instance, pings are answered straight from the
+ * network layer without calling any events.
+ */
+public class ServerDetailCache {
+
+    private static ServerDetailCache primaryInstance = null;
+
+    protected final Settings settings;
+    protected EncodedFrame frame; // Null until the next ping.
+
+    public ServerDetailCache(Settings settings) {
+        this.settings = settings;
+        this.frame = null;
+    }
+
+    public boolean setAsPrimaryInstance() {
+        if(primaryInstance == null) {
+            primaryInstance = this;
+            return true;
+        }
+        return false;
+    }
+
+
+
+    /**
+     * Gets the encoded response, encoding it first if it was invalidated.
+     * The caller gets its own reference and must release it.
+     */
+    public synchronized EncodedFrame getFrame() {
+        if(frame == null) frame = EncodedFrame.encode(createPacket());
+        return frame.retain();
+    }
+
+    /** Drops the encoded response so the next ping gets a fresh one. Call whenever the details change. */
+    public synchronized void invalidate() {
+        if(frame != null) frame.release();
+        this.frame = null;
+    }
+
+    protected PacketOutServerDetail createPacket() {
+        String name = settings.getOrDefault(ServerConfig.SERVER_NAME);
+        String region = settings.getOrDefault(ServerConfig.REGION);
+        String description = settings.getOrDefault(ServerConfig.DESCRIPTION);
+
+        return new PacketOutServerDetail(name, region, description);
+    }
+
+
+
+    public static ServerDetailCache get() {
+        return primaryInstance;
+    }
+}
@@ -0,0 +1,219 @@
+package net.cg360.spookums.server.network.netimpl;
+
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * Gives each connection a compact int session ID which indexes straight
+ * into an array of slots, so looking a connection up never hashes anything.
+ *
+ * Freed slots are reused (keeping IDs dense), oldest first, so each slot
+ * also has a generation which is part of the ID. An ID from a connection
+ * that has since closed doesn't match the slot's new generation and finds
+ * nothing.
+ *
+ * The ID only has room for the low bits of the generation, so it repeats
+ * eventually. A session's UUID holds the slot and the full generation
+ * instead, under a salt picked when the table is created, so it never
+ * repeats. It can still be turned back into an ID without a map and only
+ * one random number is ever generated. Lookups are lock-free, adding and
+ * removing sessions is synchronized.
+ */
+public class SessionTable<T> {
+
+    public static final int SLOT_BITS = 20; // Up to ~1 million connections at once.
+    public static final int MAX_SLOTS = 1 << SLOT_BITS;
+    public static final int SLOT_MASK = MAX_SLOTS - 1;
+    public static final int GENERATION_MASK = (1 << (31 - SLOT_BITS)) - 1; // Keeps IDs positive. UUIDs keep every bit.
+    public static final int INVALID_ID = -1;
+
+    protected final long salt; // The most significant bits of every session UUID.
+
+    protected volatile AtomicReferenceArray<Entry<T>> slots;
+    protected long[] generations; // The generation the next session in each slot gets.
+    protected final ArrayDeque<Integer> freeSlots; // Oldest first, so a slot's generation climbs as slowly as possible.
+    protected int usedSlots; // Slots that have ever been handed out.
+    protected int size;
+
+    public SessionTable() {
+        this(64);
+    }
+
+    public SessionTable(int initialCapacity) {
+        int capacity = Math.max(1, Math.min(initialCapacity, MAX_SLOTS));
+
+        this.salt = new SecureRandom().nextLong();
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.generations = new long[capacity];
+        this.freeSlots = new ArrayDeque<>();
+        this.usedSlots = 0;
+        this.size = 0;
+    }
+
+
+    /**
+     * Adds a session, reusing a freed slot if there is one. The session is
+     * created by the factory, given its ID, and can be looked up once it returns.
+     * @return the new session's ID.
+     * @throws IllegalStateException if every slot is in use.
+     */
+    public synchronized int add(IntFunction<? extends T> factory) {
+        int slot;
+
+        if(!freeSlots.isEmpty()) {
+            slot = freeSlots.pollFirst();
+
+        } else {
+            if(usedSlots == MAX_SLOTS) throw new IllegalStateException("Every session slot is in use.");
+            if(usedSlots == slots.length()) grow();
+            slot = usedSlots++;
+        }
+
+        int sessionID = toSessionID(generations[slot], slot);
+        T value;
+
+        try {
+            value = factory.apply(sessionID);
+
+        } catch (RuntimeException err) {
+            freeSlots.addFirst(slot); // Never handed out, so it can go straight back.
+            throw err;
+        }
+
+        slots.set(slot, new Entry<>(sessionID, toUUID(generations[slot], slot), value));
+        size++;
+        return sessionID;
+    }
+
+    /** @return the session with the ID, or null if it has been removed (or never existed.) */
+    public T get(int sessionID) {
+        if(sessionID < 0) return null;
+
+        AtomicReferenceArray<Entry<T>> current = slots;
+        int slot = sessionID & SLOT_MASK;
+        if(slot >= current.length()) return null;
+
+        Entry<T> entry = current.get(slot);
+        return ((entry != null) && (entry.sessionID == sessionID)) ? entry.value : null;
+    }
+
+    /** @return the session with the UUID, or null if it isn't from this table or has been removed. */
+    public T get(UUID uuid) {
+        return get(toSessionID(uuid));
+    }
+
+    /**
+     * Removes a session, freeing its slot for reuse.
+     * @return the removed session, or null if it had already been removed.
+     */
+    public synchronized T remove(int sessionID) {
+        T value = get(sessionID);
+        if(value == null) return null;
+
+        int slot = sessionID & SLOT_MASK;
+        slots.set(slot, null);
+        generations[slot]++;
+        freeSlots.addLast(slot);
+        size--;
+        return value;
+    }
+
+    /** @return a snapshot of every session currently in the table. */
+    public ArrayList<T> values() {
+        AtomicReferenceArray<Entry<T>> current = slots;
+        ArrayList<T> values = new ArrayList<>();
+
+        for(int i = 0; i < current.length(); i++) {
+            Entry<T> entry = current.get(i);
+            if(entry != null) values.add(entry.value);
+        }
+
+        return values;
+    }
+
+    /** @return the UUID of every session currently in the table. */
+    public ArrayList<UUID> uuids() {
+        AtomicReferenceArray<Entry<T>> current = slots;
+        ArrayList<UUID> uuids = new ArrayList<>();
+
+        for(int i = 0; i < current.length(); i++) {
+            Entry<T> entry = current.get(i);
+            if(entry != null) uuids.add(entry.uuid);
+        }
+
+        return uuids;
+    }
+
+
+    /**
+     * Can be called by the factory passed to add(), as the slot's generation is already set.
+     * @return the UUID used to identify a session outside of the network layer, or null if the ID is out of date.
+     */
+    public synchronized UUID toUUID(int sessionID) {
+        int slot = sessionID & SLOT_MASK;
+        if((sessionID < 0) || (slot >= usedSlots)) return null;
+
+        long generation = generations[slot];
+        return toSessionID(generation, slot) == sessionID ? toUUID(generation, slot) : null;
+    }
+
+    /** @return the session ID of the UUID, or INVALID_ID if it wasn't made by this table or its session has been removed. */
+    public int toSessionID(UUID uuid) {
+        if((uuid == null) || (uuid.getMostSignificantBits() != salt)) return INVALID_ID;
+
+        AtomicReferenceArray<Entry<T>> current = slots;
+        long bits = uuid.getLeastSignificantBits();
+        long slot = bits & SLOT_MASK;
+        if((bits < 0) || (slot >= current.length())) return INVALID_ID;
+
+        Entry<T> entry = current.get((int) slot);
+        return ((entry != null) && (entry.uuid.getLeastSignificantBits() == bits)) ? entry.sessionID : INVALID_ID;
+    }
+
+    protected UUID toUUID(long generation, int slot) {
+        return new UUID(salt, (generation << SLOT_BITS) | slot);
+    }
+
+    protected static int toSessionID(long generation, int slot) {
+        return ((int) (generation & GENERATION_MASK) << SLOT_BITS) | slot;
+    }
+
+
+    // Only called while synchronized.
+    protected void grow() {
+        AtomicReferenceArray<Entry<T>> current = slots;
+        int capacity = Math.min(current.length() * 2, MAX_SLOTS);
+        AtomicReferenceArray<Entry<T>> grown = new AtomicReferenceArray<>(capacity);
+
+        for(int i = 0; i < current.length(); i++) grown.set(i, current.get(i));
+
+        long[] grownGenerations = new long[capacity];
+        System.arraycopy(generations, 0, grownGenerations, 0, generations.length);
+
+        this.generations = grownGenerations;
+        this.slots = grown;
+    }
+
+
+
+    public synchronized int size() { return size; }
+    public int getCapacity() { return slots.length(); }
+
+
+    protected static final class Entry<T> {
+
+        protected final int sessionID;
+        protected final UUID uuid;
+        protected final T value;
+
+        protected Entry(int sessionID, UUID uuid, T value) {
+            this.sessionID = sessionID;
+            this.uuid = uuid;
+            this.value = value;
+        }
+    }
+}
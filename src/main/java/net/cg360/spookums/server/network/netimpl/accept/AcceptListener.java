@@ -0,0 +1,30 @@
+package net.cg360.spookums.server.network.netimpl.accept;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * A bound listening socket an AcceptorPool accepts connections from.
+ * NISelector accepts SocketChannels (see ChannelAcceptListener) while
+ * NISocket accepts plain Sockets (see SocketAcceptListener), as blocking
+ * reads and writes on a channel's socket adaptor can't run at the same
+ * time on older JDKs.
+ */
+public interface AcceptListener<C extends Closeable> extends Closeable {
+
+    /** Blocks until a connection arrives. Throws an IOException once closed. */
+    C accept() throws IOException;
+
+
+    /** Opens and binds a listener. */
+    @FunctionalInterface
+    interface Binder<C extends Closeable> {
+
+        /**
+         * @param isReusingPort if SO_REUSEPORT should be set before binding.
+         * @throws UnsupportedOperationException if SO_REUSEPORT was asked for but isn't supported.
+         */
+        AcceptListener<C> bind(InetSocketAddress address, int backlog, boolean isReusingPort) throws IOException;
+    }
+}
@@ -0,0 +1,85 @@
+package net.cg360.spookums.server.network.netimpl.accept;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the connections a NetworkInterface has accepted, how many are
+ * still waiting to be set up and how quickly they're arriving.
+ */
+public class AcceptStats {
+
+    protected static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    protected final AtomicLong accepted;
+    protected final AtomicLong setupFailures; // Accepted connections closed as they couldn't be set up.
+    protected final AtomicInteger pendingSetup; // Accepted, but not yet handed to the interface.
+    protected final AtomicInteger peakPendingSetup;
+
+    // The accept rate is the count from the last full second.
+    protected long currentSecond;
+    protected int currentSecondCount;
+    protected int lastSecondCount;
+
+    public AcceptStats() {
+        this.accepted = new AtomicLong(0);
+        this.setupFailures = new AtomicLong(0);
+        this.pendingSetup = new AtomicInteger(0);
+        this.peakPendingSetup = new AtomicInteger(0);
+
+        this.currentSecond = System.nanoTime() / SECOND_NANOS;
+        this.currentSecondCount = 0;
+        this.lastSecondCount = 0;
+    }
+
+
+    public void recordAccepted() {
+        accepted.incrementAndGet();
+        int pending = pendingSetup.incrementAndGet();
+        peakPendingSetup.accumulateAndGet(pending, Math::max);
+
+        synchronized (this) {
+            rollSecond(System.nanoTime() / SECOND_NANOS);
+            currentSecondCount++;
+        }
+    }
+
+    public void recordSetup(boolean isSuccessful) {
+        pendingSetup.decrementAndGet();
+        if(!isSuccessful) setupFailures.incrementAndGet();
+    }
+
+    protected void rollSecond(long second) {
+        if(second == currentSecond) return;
+
+        this.lastSecondCount = (second == currentSecond + 1) ? currentSecondCount : 0;
+        this.currentSecond = second;
+        this.currentSecondCount = 0;
+    }
+
+
+    public long getAcceptedCount() { return accepted.get(); }
+    public long getSetupFailures() { return setupFailures.get(); }
+    public int getPendingSetup() { return pendingSetup.get(); }
+    public int getPeakPendingSetup() { return peakPendingSetup.get(); }
+
+    /** @return the connections accepted during the last full second. */
+    public synchronized int getAcceptRate() {
+        rollSecond(System.nanoTime() / SECOND_NANOS);
+        return lastSecondCount;
+    }
+
+
+
+    @Override
+    public String toString() {
+        return "Accept: {" +
+                "accepted=" + accepted.get() +
+                ", acceptRate=" + getAcceptRate() +
+                ", pendingSetup=" + pendingSetup.get() +
+                ", peakPendingSetup=" + peakPendingSetup.get() +
+                ", setupFailures=" + setupFailures.get() +
+                "}";
+    }
+}
@@ -0,0 +1,232 @@
+package net.cg360.spookums.server.network.netimpl.accept;
+
+import net.cg360.spookums.server.Server;
+import net.cg360.spookums.server.ServerConfig;
+import net.cg360.spookums.server.core.data.Settings;
+import net.cg360.spookums.server.util.clean.Check;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accepts connections on several threads at once so a burst of clients
+ * (like everyone reconnecting after a restart) doesn't overflow the
+ * listen backlog.
+ *
+ * Where SO_REUSEPORT is available, each acceptor gets a listener of its
+ * own bound to the same address and the OS spreads connections between
+ * them. Otherwise the acceptors share a single listener. Listeners can
+ * accept SocketChannels or plain Sockets, depending on the AcceptListener
+ * binder the pool is given.
+ *
+ * Acceptors do nothing but accept. Setting up the socket and registering
+ * the client happens on a separate setup thread, in the order connections
+ * were accepted, so slow setup never holds up the accept queue.
+ */
+public class AcceptorPool<C extends Closeable> {
+
+    static final SocketOption<Boolean> SO_REUSEPORT = findReusePortOption(); // Null before Java 9.
+
+    protected final String name;
+    protected final int acceptorCount;
+    protected final int backlog;
+    protected final boolean isReusePortAllowed;
+    protected final AcceptStats stats;
+    protected final AcceptListener.Binder<C> binder;
+    protected final ConnectionSetup<C> setup;
+
+    protected final ArrayList<AcceptListener<C>> listeners;
+    protected final ArrayList<Thread> acceptors;
+    protected ExecutorService setupExecutor;
+    protected boolean isReusingPort;
+
+    protected volatile boolean isRunning;
+
+    /**
+     * @param name used to name the threads of the pool.
+     * @param acceptorCount the number of threads accepting connections.
+     * @param backlog the listen backlog of each listener.
+     * @param isReusePortAllowed if each acceptor can have its own listener when SO_REUSEPORT is available.
+     * @param binder opens the listeners, such as ChannelAcceptListener::bind.
+     * @param setup called on the setup thread for every accepted connection.
+     */
+    public AcceptorPool(String name, int acceptorCount, int backlog, boolean isReusePortAllowed, AcceptStats stats, AcceptListener.Binder<C> binder, ConnectionSetup<C> setup) {
+        this.name = Check.nullParam(name, "name");
+        this.acceptorCount = Check.inclusiveLowerBound(acceptorCount, 1, "acceptorCount");
+        this.backlog = Check.inclusiveLowerBound(backlog, 1, "backlog");
+        this.isReusePortAllowed = isReusePortAllowed;
+        this.stats = Check.nullParam(stats, "stats");
+        this.binder = Check.nullParam(binder, "binder");
+        this.setup = Check.nullParam(setup, "setup");
+
+        this.listeners = new ArrayList<>();
+        this.acceptors = new ArrayList<>();
+        this.setupExecutor = null;
+        this.isReusingPort = false;
+        this.isRunning = false;
+    }
+
+    /** Creates a pool from the network_accept* properties of the server config. */
+    public static <C extends Closeable> AcceptorPool<C> fromSettings(String name, Settings settings, AcceptStats stats, AcceptListener.Binder<C> binder, ConnectionSetup<C> setup) {
+        int acceptorCount = settings.getOrDefault(ServerConfig.NETWORK_ACCEPTOR_THREADS);
+        int backlog = settings.getOrDefault(ServerConfig.NETWORK_ACCEPT_BACKLOG);
+        Check.inclusiveLowerBound(acceptorCount, 1, "config.network_acceptor_threads");
+        Check.inclusiveLowerBound(backlog, 1, "config.network_accept_backlog");
+
+        return new AcceptorPool<>(name, acceptorCount, backlog, settings.getOrDefault(ServerConfig.NETWORK_REUSE_PORT), stats, binder, setup);
+    }
+
+
+    /** Binds the listener(s) and starts accepting. */
+    public synchronized void open(InetSocketAddress address) throws IOException {
+        if(isRunning) return;
+
+        try {
+            this.isReusingPort = (acceptorCount > 1) && isReusePortAllowed && (SO_REUSEPORT != null);
+
+            if(isReusingPort) {
+                try {
+                    listeners.add(binder.bind(address, backlog, true));
+
+                } catch (UnsupportedOperationException unsupported) {
+                    this.isReusingPort = false; // Falls back to sharing one listener.
+                }
+            }
+
+            if(!isReusingPort) listeners.add(binder.bind(address, backlog, false));
+            else for(int i = 1; i < acceptorCount; i++) listeners.add(binder.bind(address, backlog, true));
+
+        } catch (IOException | RuntimeException err) {
+            closeListeners();
+            listeners.clear();
+            throw err;
+        }
+
+        this.isRunning = true;
+        this.setupExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, name + "-Setup");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for(int i = 0; i < acceptorCount; i++) {
+            AcceptListener<C> listener = listeners.get(i % listeners.size());
+            Thread acceptor = new Thread(() -> runAcceptor(listener), String.format("%s-Acceptor-%s", name, i));
+            acceptor.setDaemon(true);
+            acceptors.add(acceptor);
+            acceptor.start();
+        }
+
+        Server.getLogger(Server.NET_LOG).info(String.format("Accepting connections on %s thread(s) with %s listener(s) (backlog: %s%s)",
+                acceptorCount, listeners.size(), backlog, isReusingPort ? ", SO_REUSEPORT" : ""));
+    }
+
+    /** Blocks until the pool is closed and every acceptor has stopped. */
+    public void awaitClose() throws InterruptedException {
+        for(Thread acceptor: new ArrayList<>(acceptors)) acceptor.join();
+    }
+
+    /** Stops accepting. Connections waiting to be set up are closed. */
+    public synchronized void close() {
+        if(!isRunning) return;
+        this.isRunning = false;
+
+        closeListeners();
+        if(setupExecutor != null) setupExecutor.shutdown();
+    }
+
+    protected void closeListeners() {
+        for(AcceptListener<C> listener: listeners) {
+            try { listener.close(); }
+            catch (IOException err) { err.printStackTrace(); }
+        }
+    }
+
+
+    protected void runAcceptor(AcceptListener<C> listener) {
+        while (isRunning) {
+
+            try {
+                C connection = listener.accept();
+                stats.recordAccepted();
+                handOff(connection);
+
+            } catch (IOException err) {
+                if(!isRunning) break; // Closed by close()
+
+                // Usually the client giving up before it was accepted. Carry on.
+                Server.getLogger(Server.NET_LOG).warn("Failed to accept a connection | " + err.getMessage());
+            }
+        }
+    }
+
+    protected void handOff(C connection) {
+        Runnable task = () -> {
+            boolean isSuccessful = false;
+
+            try {
+                if(isRunning) {
+                    setup.setup(connection);
+                    isSuccessful = true;
+                }
+
+            } catch (Exception err) {
+                Server.getLogger(Server.NET_LOG).warn("Failed to set up an accepted connection | " + err.toString());
+
+            } finally {
+                stats.recordSetup(isSuccessful);
+                if(!isSuccessful) closeQuietly(connection);
+            }
+        };
+
+        try {
+            setupExecutor.execute(task);
+
+        } catch (RuntimeException rejected) { // Closing down.
+            stats.recordSetup(false);
+            closeQuietly(connection);
+        }
+    }
+
+    protected static void closeQuietly(Closeable connection) {
+        try { connection.close(); }
+        catch (IOException ignored) { }
+    }
+
+
+    // Only in StandardSocketOptions from Java 9, so it's looked up rather than referenced.
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> findReusePortOption() {
+        try {
+            Field field = StandardSocketOptions.class.getField("SO_REUSEPORT");
+            return (SocketOption<Boolean>) field.get(null);
+
+        } catch (ReflectiveOperationException | ClassCastException err) {
+            return null;
+        }
+    }
+
+
+
+    public int getAcceptorCount() { return acceptorCount; }
+    public int getBacklog() { return backlog; }
+    public AcceptStats getStats() { return stats; }
+    public boolean isReusingPort() { return isReusingPort; }
+    public boolean isRunning() { return isRunning; }
+
+
+    /** Registers an accepted connection with a NetworkInterface. */
+    @FunctionalInterface
+    public interface ConnectionSetup<C> {
+        void setup(C connection) throws IOException;
+    }
+}
@@ -0,0 +1,49 @@
+package net.cg360.spookums.server.network.netimpl.accept;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/** Accepts blocking-mode SocketChannels, left to the caller to reconfigure. */
+public class ChannelAcceptListener implements AcceptListener<SocketChannel> {
+
+    protected final ServerSocketChannel channel;
+
+    protected ChannelAcceptListener(ServerSocketChannel channel) {
+        this.channel = channel;
+    }
+
+    public static ChannelAcceptListener bind(InetSocketAddress address, int backlog, boolean isReusingPort) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+
+        try {
+            if(isReusingPort) {
+                if(!channel.supportedOptions().contains(AcceptorPool.SO_REUSEPORT)) throw new UnsupportedOperationException("SO_REUSEPORT isn't supported");
+                channel.setOption(AcceptorPool.SO_REUSEPORT, true);
+            }
+
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.configureBlocking(true); // Accepting is the only job of each acceptor.
+            channel.bind(address, backlog);
+
+        } catch (IOException | RuntimeException err) {
+            channel.close();
+            throw err;
+        }
+
+        return new ChannelAcceptListener(channel);
+    }
+
+
+    @Override
+    public SocketChannel accept() throws IOException {
+        return channel.accept();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
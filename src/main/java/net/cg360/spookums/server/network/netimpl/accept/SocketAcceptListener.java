@@ -0,0 +1,80 @@
+package net.cg360.spookums.server.network.netimpl.accept;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketOption;
+
+/**
+ * Accepts plain java.net Sockets. Their streams don't share a lock, so
+ * one thread can block reading while another writes.
+ */
+public class SocketAcceptListener implements AcceptListener<Socket> {
+
+    private static final Method SET_OPTION = findSetOptionMethod();
+
+    protected final ServerSocket serverSocket;
+
+    protected SocketAcceptListener(ServerSocket serverSocket) {
+        this.serverSocket = serverSocket;
+    }
+
+    public static SocketAcceptListener bind(InetSocketAddress address, int backlog, boolean isReusingPort) throws IOException {
+        ServerSocket serverSocket = new ServerSocket();
+
+        try {
+            if(isReusingPort) setOption(serverSocket, AcceptorPool.SO_REUSEPORT, true);
+
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(address, backlog);
+
+        } catch (IOException | RuntimeException err) {
+            serverSocket.close();
+            throw err;
+        }
+
+        return new SocketAcceptListener(serverSocket);
+    }
+
+
+    @Override
+    public Socket accept() throws IOException {
+        return serverSocket.accept();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+
+    // ServerSocket#setOption is only in Java 9+, as is SO_REUSEPORT, so it's called by reflection.
+    protected static <T> void setOption(ServerSocket serverSocket, SocketOption<T> option, T value) throws IOException {
+        if((SET_OPTION == null) || (option == null)) throw new UnsupportedOperationException("Socket options can't be set on this JDK");
+
+        try {
+            SET_OPTION.invoke(serverSocket, option, value);
+
+        } catch (InvocationTargetException err) {
+            Throwable cause = err.getCause();
+            if(cause instanceof IOException) throw (IOException) cause;
+            if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IllegalStateException(cause);
+
+        } catch (IllegalAccessException err) {
+            throw new UnsupportedOperationException("Unable to set " + option.name(), err);
+        }
+    }
+
+    private static Method findSetOptionMethod() {
+        try {
+            return ServerSocket.class.getMethod("setOption", SocketOption.class, Object.class);
+
+        } catch (NoSuchMethodException err) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package net.cg360.spookums.server.network.netimpl.capture;
+
+import net.cg360.spookums.server.exception.MalformedFrameException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * Reads the records of a capture back in the order they were written,
+ * mapping one segment at a time.
+ */
+public class CaptureReader {
+
+    protected final File[] segments;
+    protected int nextSegment;
+    protected MappedByteBuffer segment;
+    protected CaptureRecord next; // Read ahead so hasNext() is accurate.
+
+    /** @param folder a folder written to by a PacketCapture. */
+    public CaptureReader(File folder) throws IOException {
+        File[] files = folder.listFiles((dir, name) -> name.startsWith("capture-") && name.endsWith(".bin"));
+        if(files == null) throw new IOException("Couldn't list the capture folder " + folder.getPath());
+
+        Arrays.sort(files);
+        this.segments = files;
+        this.nextSegment = 0;
+        this.segment = null;
+        this.next = readNext();
+    }
+
+
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    /**
+     * @return the next record.
+     * @throws MalformedFrameException if a segment is corrupt.
+     */
+    public CaptureRecord next() throws IOException {
+        if(next == null) throw new NoSuchElementException("The capture has no more records");
+
+        CaptureRecord record = next;
+        this.next = readNext();
+        return record;
+    }
+
+
+    protected CaptureRecord readNext() throws IOException {
+        while (true) {
+
+            if(segment == null) {
+                if(nextSegment >= segments.length) return null;
+                openSegment(segments[nextSegment++]);
+            }
+
+            int length = segment.remaining() >= 4 ? segment.getInt() : 0;
+
+            if(length == 0) {
+                this.segment = null; // End of this segment.
+                continue;
+            }
+
+            if((length < PacketCapture.RECORD_HEADER_SIZE - 4) || (length > segment.remaining()))
+                throw new MalformedFrameException("Capture record has an invalid length of " + length + " bytes");
+
+            long timestamp = segment.getLong();
+            UUID clientNetID = new UUID(segment.getLong(), segment.getLong());
+            byte direction = segment.get();
+            byte[] frame = new byte[length - (PacketCapture.RECORD_HEADER_SIZE - 4)];
+            segment.get(frame);
+
+            return new CaptureRecord(timestamp, clientNetID, direction, frame);
+        }
+    }
+
+    protected void openSegment(File file) throws IOException {
+        try (RandomAccessFile access = new RandomAccessFile(file, "r")) {
+            this.segment = access.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, access.length());
+        }
+
+        if((segment.remaining() < PacketCapture.SEGMENT_HEADER_SIZE) || (segment.getInt() != PacketCapture.MAGIC))
+            throw new MalformedFrameException("File isn't a capture segment: " + file.getName());
+
+        short version = segment.getShort();
+        if(version != PacketCapture.VERSION)
+            throw new MalformedFrameException("Capture segment " + file.getName() + " is version " + version + ", expected " + PacketCapture.VERSION);
+
+        segment.getShort(); // Reserved
+        segment.getLong(); // Start time
+    }
+}
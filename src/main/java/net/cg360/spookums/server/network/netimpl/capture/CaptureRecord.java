@@ -0,0 +1,32 @@
+package net.cg360.spookums.server.network.netimpl.capture;
+
+import java.util.UUID;
+
+/** A single entry of a capture: a frame, or a connection closing. */
+public class CaptureRecord {
+
+    public static final byte INBOUND = 0;
+    public static final byte OUTBOUND = 1;
+    public static final byte CLOSED = 2; // No frame, the connection was closed.
+
+    protected final long timestamp; // Nanos since the capture started.
+    protected final UUID clientNetID;
+    protected final byte direction;
+    protected final byte[] frame; // Full frame, size bytes included. Empty for CLOSED.
+
+    public CaptureRecord(long timestamp, UUID clientNetID, byte direction, byte[] frame) {
+        this.timestamp = timestamp;
+        this.clientNetID = clientNetID;
+        this.direction = direction;
+        this.frame = frame;
+    }
+
+
+    public long getTimestamp() { return timestamp; }
+    public UUID getClientNetID() { return clientNetID; }
+    public byte getDirection() { return direction; }
+    public byte[] getFrame() { return frame; }
+    public boolean isInbound() { return direction == INBOUND; }
+    public boolean isOutbound() { return direction == OUTBOUND; }
+    public boolean isClosed() { return direction == CLOSED; }
+}
@@ -0,0 +1,114 @@
+package net.cg360.spookums.server.network.netimpl.capture;
+
+import net.cg360.spookums.server.Server;
+import net.cg360.spookums.server.network.netimpl.loopback.LoopbackClient;
+import net.cg360.spookums.server.network.netimpl.loopback.NILoopback;
+import net.cg360.spookums.server.util.clean.Check;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a capture back into a running server through an NILoopback.
+ * Each captured connection gets a loopback client of its own, and its
+ * inbound frames are sent through the same decode and dispatch pipeline
+ * as they originally went through. Outbound frames in the capture are
+ * only counted. Whatever the server sends back is read and thrown away.
+ */
+public class CaptureReplayer {
+
+    protected final NILoopback networkInterface;
+    protected final File folder;
+
+    protected long replayedFrames;
+    protected long replayedBytes;
+    protected long capturedOutbound;
+    protected long receivedFrames;
+    protected int connections;
+
+    public CaptureReplayer(NILoopback networkInterface, File folder) {
+        this.networkInterface = Check.nullParam(networkInterface, "networkInterface");
+        this.folder = Check.nullParam(folder, "folder");
+    }
+
+
+    /**
+     * Replays the whole capture on the calling thread.
+     * @param isPaced waits between frames as long as they were apart originally, rather than going flat out.
+     * @return how long the replay took in nanos.
+     */
+    public long replay(boolean isPaced) throws IOException {
+        CaptureReader reader = new CaptureReader(folder);
+        HashMap<UUID, LoopbackClient> clients = new HashMap<>(); // Captured ID -> replaying client.
+
+        long start = System.nanoTime();
+
+        while (reader.hasNext()) {
+            CaptureRecord record = reader.next();
+
+            if(isPaced) {
+                long wait = (start + record.getTimestamp()) - System.nanoTime();
+                if(wait > 0) LockSupport.parkNanos(wait);
+            }
+
+            switch (record.getDirection()) {
+                case CaptureRecord.INBOUND:
+                    LoopbackClient client = clients.get(record.getClientNetID());
+
+                    if(client == null) {
+                        client = networkInterface.connect();
+                        clients.put(record.getClientNetID(), client);
+                        connections++;
+                    }
+
+                    client.sendBytes(record.getFrame(), 0, record.getFrame().length);
+                    receivedFrames += client.drainFrames().size();
+                    replayedFrames++;
+                    replayedBytes += record.getFrame().length;
+                    break;
+
+                case CaptureRecord.OUTBOUND:
+                    capturedOutbound++;
+                    break;
+
+                case CaptureRecord.CLOSED:
+                    LoopbackClient closed = clients.remove(record.getClientNetID());
+                    if(closed != null) closed.disconnect();
+                    break;
+            }
+        }
+
+        for(LoopbackClient client: clients.values()) client.disconnect();
+        return System.nanoTime() - start;
+    }
+
+    /** Replays the capture and logs how it went. Errors are logged rather than thrown. */
+    public void replayAndLog(boolean isPaced) {
+        Server.getLogger(Server.NET_LOG).info(String.format("Replaying the capture in %s%s...", folder.getPath(), isPaced ? " at its original pace" : ""));
+
+        try {
+            long nanos = replay(isPaced);
+            double seconds = nanos / (double) TimeUnit.SECONDS.toNanos(1);
+
+            Server.getLogger(Server.NET_LOG).info(String.format(
+                    "Replayed %s inbound frame(s) (%s bytes) over %s connection(s) in %.3fs (%.0f frames/s). The server sent %s frame(s) back, the capture had %s.",
+                    replayedFrames, replayedBytes, connections, seconds, replayedFrames / Math.max(seconds, 1e-9), receivedFrames, capturedOutbound
+            ));
+
+        } catch (IOException | RuntimeException err) {
+            Server.getLogger(Server.NET_LOG).error("Failed to replay the capture: " + err.getMessage());
+        }
+    }
+
+
+
+    public long getReplayedFrames() { return replayedFrames; }
+    public long getReplayedBytes() { return replayedBytes; }
+    public long getCapturedOutbound() { return capturedOutbound; }
+    public long getReceivedFrames() { return receivedFrames; }
+    public int getConnections() { return connections; }
+}
@@ -0,0 +1,235 @@
+package net.cg360.spookums.server.network.netimpl.capture;
+
+import net.cg360.spookums.server.Server;
+import net.cg360.spookums.server.util.NetworkBuffer;
+import net.cg360.spookums.server.util.clean.Check;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Logs every inbound and outbound frame to a folder of memory-mapped
+ * segment files, to be replayed later by a CaptureReplayer.
+ *
+ * The I/O threads only copy the frame and add it to a lock-free queue.
+ * A writer thread of its own moves them into the current segment, so
+ * a slow disk never holds up the network. If the writer falls too far
+ * behind, frames are dropped and counted rather than queued forever.
+ *
+ * Segment format (big-endian):
+ * int magic, short version, short reserved, long epoch millis at start of capture
+ * then records of: int length (of the rest of the record, 0 = end of segment),
+ * long nanos since start, long uuid most sig bits, long uuid least sig bits,
+ * byte direction, frame bytes.
+ */
+public class PacketCapture {
+
+    public static final int MAGIC = 0x47474350; // GGCP
+    public static final short VERSION = 1;
+    public static final int SEGMENT_HEADER_SIZE = 16;
+    public static final int RECORD_HEADER_SIZE = 4 + 8 + 16 + 1;
+    public static final int DEFAULT_QUEUE_LIMIT = 65536; // Frames waiting for the writer.
+
+    private static PacketCapture primaryInstance = null;
+
+    protected final File folder;
+    protected final int segmentSize;
+    protected final int queueLimit;
+    protected final long startNanos;
+    protected final long startMillis;
+
+    protected final ConcurrentLinkedQueue<CaptureRecord> queue;
+    protected final AtomicInteger queued;
+    protected final AtomicLong written;
+    protected final AtomicLong dropped;
+
+    protected final Thread writer;
+    protected volatile boolean isRunning;
+
+    // Only touched by the writer thread.
+    protected MappedByteBuffer segment;
+    protected int segmentIndex;
+
+    /**
+     * @param folder where segments are written. Created if it doesn't exist.
+     * @param segmentSize the size of each segment file in bytes.
+     */
+    public PacketCapture(File folder, int segmentSize) {
+        this(folder, segmentSize, DEFAULT_QUEUE_LIMIT);
+    }
+
+    public PacketCapture(File folder, int segmentSize, int queueLimit) {
+        this.folder = Check.nullParam(folder, "folder");
+        this.segmentSize = Check.inclusiveLowerBound(segmentSize, SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE + 4 + NetworkBuffer.MAX_UNSIGNED_SHORT_VALUE, "segmentSize");
+        this.queueLimit = Check.inclusiveLowerBound(queueLimit, 1, "queueLimit");
+        this.startNanos = System.nanoTime();
+        this.startMillis = System.currentTimeMillis();
+
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.queued = new AtomicInteger(0);
+        this.written = new AtomicLong(0);
+        this.dropped = new AtomicLong(0);
+
+        this.writer = new Thread(this::runWriter, "Network-Capture");
+        this.writer.setDaemon(true);
+        this.isRunning = false;
+
+        this.segment = null;
+        this.segmentIndex = 0;
+    }
+
+    public boolean setAsPrimaryInstance() {
+        if(primaryInstance == null) {
+            primaryInstance = this;
+            return true;
+        }
+        return false;
+    }
+
+
+
+    /** Creates the first segment and starts the writer thread. */
+    public synchronized void start() throws IOException {
+        if(isRunning) return;
+        if(!folder.isDirectory() && !folder.mkdirs()) throw new IOException("Couldn't create the capture folder " + folder.getPath());
+
+        openSegment();
+        this.isRunning = true;
+        this.writer.start();
+    }
+
+    /** Writes everything still queued and closes the current segment. */
+    public void close() {
+        if(!isRunning) return;
+        this.isRunning = false;
+        LockSupport.unpark(writer);
+
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /** Queues a copy of a frame. Safe to call from any thread, it never blocks. */
+    public void recordFrame(UUID clientNetID, byte direction, NetworkBuffer frame) {
+        if(!isRunning) return;
+
+        byte[] bytes = new byte[frame.capacity()];
+        System.arraycopy(frame.array(), frame.arrayOffset(), bytes, 0, bytes.length);
+        enqueue(new CaptureRecord(System.nanoTime() - startNanos, clientNetID, direction, bytes));
+    }
+
+    /** Marks a connection as closed so a replay can close it too. */
+    public void recordClosed(UUID clientNetID) {
+        if(!isRunning) return;
+        enqueue(new CaptureRecord(System.nanoTime() - startNanos, clientNetID, CaptureRecord.CLOSED, new byte[0]));
+    }
+
+    protected void enqueue(CaptureRecord record) {
+        if(queued.incrementAndGet() > queueLimit) {
+            queued.decrementAndGet();
+            long count = dropped.incrementAndGet();
+
+            // Logged less and less often so it can't flood the log.
+            if(Long.bitCount(count) == 1)
+                Server.getLogger(Server.NET_LOG).warn(String.format("The packet capture can't keep up. Dropped %s frame(s) so far.", count));
+            return;
+        }
+
+        queue.add(record);
+        LockSupport.unpark(writer);
+    }
+
+
+    protected void runWriter() {
+        try {
+            while (isRunning || !queue.isEmpty()) {
+                CaptureRecord record = queue.poll();
+
+                if(record == null) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+                    continue;
+                }
+
+                queued.decrementAndGet();
+                write(record);
+            }
+
+        } catch (IOException err) {
+            Server.getLogger(Server.NET_LOG).error("The packet capture failed to write. Stopping the capture: " + err.getMessage());
+            this.isRunning = false;
+
+        } finally {
+            closeSegment();
+        }
+    }
+
+    protected void write(CaptureRecord record) throws IOException {
+        int length = RECORD_HEADER_SIZE - 4 + record.frame.length;
+
+        // Always leaves room for the end marker.
+        if(segment.remaining() < 4 + length + 4) {
+            closeSegment();
+            openSegment();
+        }
+
+        segment.putInt(length);
+        segment.putLong(record.timestamp);
+        segment.putLong(record.clientNetID.getMostSignificantBits());
+        segment.putLong(record.clientNetID.getLeastSignificantBits());
+        segment.put(record.direction);
+        segment.put(record.frame);
+        written.incrementAndGet();
+    }
+
+    protected void openSegment() throws IOException {
+        File file = new File(folder, segmentName(segmentIndex++));
+
+        try (RandomAccessFile access = new RandomAccessFile(file, "rw")) {
+            access.setLength(segmentSize);
+            this.segment = access.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize); // Stays valid once the file is closed.
+        }
+
+        segment.putInt(MAGIC);
+        segment.putShort(VERSION);
+        segment.putShort((short) 0);
+        segment.putLong(startMillis);
+    }
+
+    protected void closeSegment() {
+        if(segment == null) return;
+
+        if(segment.remaining() >= 4) segment.putInt(0);
+        segment.force();
+        this.segment = null;
+    }
+
+
+    /** @return the name of a segment. Segments sort in the order they were written. */
+    public static String segmentName(int index) {
+        return String.format("capture-%06d.bin", index);
+    }
+
+
+
+    public File getFolder() { return folder; }
+    public long getWrittenCount() { return written.get(); }
+    public long getDroppedCount() { return dropped.get(); }
+    public boolean isRunning() { return isRunning; }
+
+    public static PacketCapture get() {
+        return primaryInstance;
+    }
+}
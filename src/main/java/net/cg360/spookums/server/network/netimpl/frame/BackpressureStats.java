@@ -0,0 +1,47 @@
+package net.cg360.spookums.server.network.netimpl.frame;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how often each outbound backpressure policy has kicked in.
+ * Shared by every queue of a NetworkInterface so the totals cover all
+ * of its connections.
+ */
+public class BackpressureStats {
+
+    protected final AtomicLong capacityDrops; // Frames dropped as the queue was full.
+    protected final AtomicLong watermarkDrops; // Non-urgent frames dropped over the high watermark.
+    protected final AtomicLong highWatermarkHits; // Times a queue went over its high watermark.
+    protected final AtomicLong evictions; // Clients disconnected for staying over the high watermark.
+
+    public BackpressureStats() {
+        this.capacityDrops = new AtomicLong(0);
+        this.watermarkDrops = new AtomicLong(0);
+        this.highWatermarkHits = new AtomicLong(0);
+        this.evictions = new AtomicLong(0);
+    }
+
+
+    public void recordCapacityDrop() { capacityDrops.incrementAndGet(); }
+    public void recordWatermarkDrop() { watermarkDrops.incrementAndGet(); }
+    public void recordHighWatermarkHit() { highWatermarkHits.incrementAndGet(); }
+    public void recordEviction() { evictions.incrementAndGet(); }
+
+
+    public long getCapacityDrops() { return capacityDrops.get(); }
+    public long getWatermarkDrops() { return watermarkDrops.get(); }
+    public long getHighWatermarkHits() { return highWatermarkHits.get(); }
+    public long getEvictions() { return evictions.get(); }
+
+
+
+    @Override
+    public String toString() {
+        return "Backpressure: {" +
+                "capacityDrops=" + capacityDrops.get() +
+                ", watermarkDrops=" + watermarkDrops.get() +
+                ", highWatermarkHits=" + highWatermarkHits.get() +
+                ", evictions=" + evictions.get() +
+                "}";
+    }
+}
@@ -0,0 +1,166 @@
+package net.cg360.spookums.server.network.netimpl.frame;
+
+import net.cg360.spookums.server.network.packet.NetworkPacket;
+import net.cg360.spookums.server.util.NetworkBuffer;
+import net.cg360.spookums.server.util.NetworkBufferPool;
+import net.cg360.spookums.server.util.clean.Check;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A packet that has already been encoded into a full frame (size bytes
+ * included), ready to be written to any number of connections. The bytes
+ * are never modified once created, so the same frame can sit in several
+ * outbound queues at once. Each queue holds a reference to it, taken with
+ * retain() and given back with release().
+ *
+ * Frames encoded from packets are written into a buffer leased from the
+ * primary NetworkBufferPool, which is returned once the last reference
+ * is released.
+ *
+ * Once a connection has agreed to use compression, a compressed copy of
+ * the frame is made the first time one asks for it and kept alongside
+ * the frame, so a broadcast is only compressed once.
+ */
+public final class EncodedFrame {
+
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+    private final byte packetID;
+
+    private final NetworkBufferPool pool; // Null if the bytes weren't leased.
+    private final NetworkBuffer leased;
+    private final AtomicInteger references;
+    private EncodedFrame compressed; // Null until compressed. Set to this frame if it isn't worth compressing.
+
+    private EncodedFrame(byte[] bytes, int offset, int length) {
+        this(bytes, offset, length, null, null);
+    }
+
+    private EncodedFrame(byte[] bytes, int offset, int length, NetworkBufferPool pool, NetworkBuffer leased) {
+        Check.nullParam(bytes, "bytes");
+        Check.inclusiveLowerBound(length, FrameDecoder.SIZE_BYTES + 1, "length");
+
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+        this.packetID = bytes[offset + FrameDecoder.SIZE_BYTES];
+
+        this.pool = pool;
+        this.leased = leased;
+
+        this.references = new AtomicInteger(1); // Held by whoever created it.
+        this.compressed = null;
+    }
+
+    /** Encodes a packet once into a frame which can be sent to many clients. */
+    public static EncodedFrame encode(NetworkPacket packet) {
+        NetworkBufferPool pool = NetworkBufferPool.get();
+
+        // Not part of a running server. The primary pool is always on the heap, as writers need an array.
+        if(pool == null) {
+            NetworkBuffer data = packet.encode();
+            return new EncodedFrame(data.array(), data.arrayOffset(), data.capacity());
+        }
+
+        NetworkBuffer buffer = pool.lease();
+
+        try {
+            int length = packet.encode(buffer);
+            return new EncodedFrame(buffer.array(), buffer.arrayOffset(), length, pool, buffer);
+
+        } catch (RuntimeException err) {
+            pool.release(buffer);
+            throw err;
+        }
+    }
+
+    /** Wraps an already encoded frame. The array must not be changed afterwards. */
+    public static EncodedFrame wrap(byte[] frame, int offset, int length) {
+        return new EncodedFrame(frame, offset, length);
+    }
+
+    // For frames written straight into a leased buffer. The buffer is returned with the last reference.
+    static EncodedFrame leased(byte[] frame, int offset, int length, NetworkBufferPool pool, NetworkBuffer leased) {
+        return new EncodedFrame(frame, offset, length, pool, leased);
+    }
+
+
+
+    /** Takes a reference to the frame, e.g. when it's added to a queue. */
+    public EncodedFrame retain() {
+        if(references.getAndIncrement() <= 0) {
+            references.getAndDecrement();
+            throw new IllegalStateException("Cannot retain a frame which has already been released.");
+        }
+        return this;
+    }
+
+    /**
+     * Gives back a reference to the frame.
+     * @return true if that was the last reference.
+     */
+    public boolean release() {
+        int remaining = references.decrementAndGet();
+        if(remaining < 0) throw new IllegalStateException("Frame was released more times than it was retained.");
+
+        if(remaining == 0) {
+            if(pool != null) pool.release(leased);
+            synchronized (this) {
+                if((compressed != null) && (compressed != this)) compressed.release();
+                this.compressed = null;
+            }
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Gets the compressed copy of this frame, compressing it with the
+     * given compressor if it hasn't been already. The copy belongs to this
+     * frame so the caller must retain() it if they hold onto it.
+     * @return the compressed copy, or this frame if it isn't worth compressing.
+     */
+    public synchronized EncodedFrame getCompressed(FrameCompressor compressor) {
+        if(compressor.isClosed()) return this; // Don't let a closed compressor decide for everyone else.
+        if(compressed == null) compressed = compressor.deflate(this);
+        return compressed;
+    }
+
+
+    /** Writes the whole frame to a stream. */
+    public void writeTo(OutputStream stream) throws IOException {
+        stream.write(bytes, offset, length);
+    }
+
+    /**
+     * Copies part of the frame into a buffer.
+     * @param from the position within the frame to start from.
+     * @param count the amount of bytes to copy.
+     */
+    public void copyTo(ByteBuffer target, int from, int count) {
+        target.put(bytes, offset + from, count);
+    }
+
+    /** Copies the whole frame into a buffer at its current position. */
+    public boolean copyTo(NetworkBuffer target) {
+        return target.put(bytes, offset, length);
+    }
+
+    /** @return a view of the frame for reading. It must not be written to or used once the frame is released. */
+    public NetworkBuffer view() {
+        return NetworkBuffer.wrap(bytes, offset, length);
+    }
+
+
+
+    public int getLength() { return length; }
+    public byte getPacketID() { return packetID; }
+    public boolean isCompressed() { return (bytes[offset] & (FrameCompressor.COMPRESSED_FLAG >> 8)) != 0; }
+    public int getReferenceCount() { return references.get(); }
+}
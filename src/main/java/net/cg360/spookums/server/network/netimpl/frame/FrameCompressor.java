@@ -0,0 +1,166 @@
+package net.cg360.spookums.server.network.netimpl.frame;
+
+import net.cg360.spookums.server.exception.MalformedFrameException;
+import net.cg360.spookums.server.network.VanillaProtocol;
+import net.cg360.spookums.server.util.NetworkBuffer;
+import net.cg360.spookums.server.util.NetworkBufferPool;
+import net.cg360.spookums.server.util.clean.Check;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses and decompresses the frames of a single connection once
+ * it has agreed to use compression. The Deflater and Inflater are kept
+ * for the life of the connection and reset between frames, as creating
+ * them for every frame is far from cheap.
+ *
+ * A compressed frame keeps its packet ID as-is, only the body is deflated
+ * (raw deflate, no zlib header.) It's marked with the top bit of the size
+ * bytes, which is never otherwise set as the size limit is far lower:
+ * 2 bytes - size of the compressed frame | COMPRESSED_FLAG
+ * 1 byte - packet ID
+ * x bytes - deflated body
+ *
+ * Frames with a body under the threshold are left alone, as are any which
+ * wouldn't end up any smaller.
+ */
+public class FrameCompressor {
+
+    public static final int COMPRESSED_FLAG = 0x8000;
+    public static final int SIZE_MASK = 0x7FFF;
+    public static final int HEADER_SIZE = FrameDecoder.SIZE_BYTES + 1; // Size + packet ID
+    public static final int MAX_BODY_SIZE = VanillaProtocol.MAX_PACKET_SIZE - 1;
+
+    protected final int threshold;
+    protected final Deflater deflater; // Only used by the thread writing to the connection.
+    protected final Inflater inflater; // Only used by the thread reading from the connection.
+
+    protected volatile boolean isClosed;
+
+    /** @param threshold the smallest body size in bytes that gets compressed. */
+    public FrameCompressor(int threshold) {
+        this.threshold = Check.inclusiveLowerBound(threshold, 0, "threshold");
+        this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        this.inflater = new Inflater(true);
+        this.isClosed = false;
+    }
+
+
+    /**
+     * Gets the frame to send in place of an outbound frame. Frames are only
+     * ever compressed once, so a broadcast is compressed by whichever
+     * connection gets to it first.
+     * @return the compressed frame, or the same frame if it isn't worth compressing.
+     */
+    public EncodedFrame compress(EncodedFrame frame) {
+        if(frame.isCompressed() || (frame.getLength() - HEADER_SIZE < threshold)) return frame;
+        return frame.getCompressed(this);
+    }
+
+    /**
+     * Deflates the body of a frame into a new frame.
+     * @return the compressed frame, or the same frame if it wouldn't be any smaller.
+     */
+    protected EncodedFrame deflate(EncodedFrame frame) {
+        NetworkBuffer source = frame.view();
+        int bodySize = frame.getLength() - HEADER_SIZE;
+
+        NetworkBufferPool pool = NetworkBufferPool.get();
+        boolean isLeased = (pool != null) && (!pool.isDirect()) && (pool.getBufferSize() >= frame.getLength());
+        NetworkBuffer target = isLeased ? pool.lease() : NetworkBuffer.allocate(frame.getLength());
+
+        // Only worth it if it saves at least a byte.
+        int limit = Math.min(bodySize - 1, target.capacity() - HEADER_SIZE);
+        int compressedSize = -1;
+
+        synchronized (deflater) {
+
+            if(!isClosed && (limit > 0)) {
+                deflater.setInput(source.array(), source.arrayOffset() + HEADER_SIZE, bodySize);
+                deflater.finish();
+
+                int written = 0;
+                while (!deflater.finished() && (written < limit)) {
+                    written += deflater.deflate(target.array(), target.arrayOffset() + HEADER_SIZE + written, limit - written);
+                }
+
+                if(deflater.finished()) compressedSize = written;
+                deflater.reset();
+            }
+        }
+
+        if(compressedSize < 0) {
+            if(isLeased) pool.release(target);
+            return frame;
+        }
+
+        int length = HEADER_SIZE + compressedSize;
+        byte[] bytes = target.array();
+        int offset = target.arrayOffset();
+
+        bytes[offset] = (byte) (((length - FrameDecoder.SIZE_BYTES) | COMPRESSED_FLAG) >> 8);
+        bytes[offset + 1] = (byte) (length - FrameDecoder.SIZE_BYTES);
+        bytes[offset + 2] = frame.getPacketID();
+
+        return isLeased
+                ? EncodedFrame.leased(bytes, offset, length, pool, target)
+                : EncodedFrame.wrap(bytes, offset, length);
+    }
+
+    /**
+     * Inflates a compressed frame into an array as a regular frame.
+     * @param frame the array holding the compressed frame, size bytes included.
+     * @param target where the inflated frame is written, starting at index 0.
+     * Should have room for a frame one byte over the size limit so oversized frames can be caught.
+     * @return the length of the inflated frame.
+     */
+    public int inflate(byte[] frame, int offset, int length, byte[] target) {
+        int limit = Math.min(MAX_BODY_SIZE + 1, target.length - HEADER_SIZE);
+        int bodySize = 0;
+
+        synchronized (inflater) {
+            if(isClosed) throw new MalformedFrameException("Compressed frame received after the connection's compression was closed");
+
+            try {
+                inflater.setInput(frame, offset + HEADER_SIZE, length - HEADER_SIZE);
+
+                while (!inflater.finished() && (bodySize < limit)) {
+                    int count = inflater.inflate(target, HEADER_SIZE + bodySize, limit - bodySize);
+                    if(count == 0) break; // Needs more input (or a dictionary) that isn't coming.
+                    bodySize += count;
+                }
+
+                if(!inflater.finished()) throw new MalformedFrameException("Compressed frame was incomplete or inflated past the size limit");
+
+            } catch (DataFormatException err) {
+                throw new MalformedFrameException("Compressed frame couldn't be inflated | " + err.getMessage());
+
+            } finally {
+                inflater.reset();
+            }
+        }
+
+        if(bodySize > MAX_BODY_SIZE) throw new MalformedFrameException("Compressed frame inflated past the size limit");
+
+        target[0] = (byte) ((bodySize + 1) >> 8);
+        target[1] = (byte) (bodySize + 1);
+        target[2] = frame[offset + FrameDecoder.SIZE_BYTES];
+
+        return HEADER_SIZE + bodySize;
+    }
+
+    /** Frees the native memory held by the Deflater and Inflater. Frames are sent uncompressed afterwards. */
+    public void close() {
+        this.isClosed = true;
+
+        synchronized (deflater) { deflater.end(); }
+        synchronized (inflater) { inflater.end(); }
+    }
+
+
+
+    public int getThreshold() { return threshold; }
+    public boolean isClosed() { return isClosed; }
+}
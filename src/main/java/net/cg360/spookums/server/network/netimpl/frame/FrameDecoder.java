@@ -0,0 +1,201 @@
+package net.cg360.spookums.server.network.netimpl.frame;
+
+import net.cg360.spookums.server.exception.MalformedFrameException;
+import net.cg360.spookums.server.network.VanillaProtocol;
+import net.cg360.spookums.server.util.NetworkBuffer;
+import net.cg360.spookums.server.util.clean.Check;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Collects the inbound bytes of a single connection and splits them
+ * into frames (2 byte unsigned-short size, then packet ID + body).
+ *
+ * Frames can be split over several reads or several frames can arrive
+ * in one read, it makes no difference. Each complete frame is passed
+ * to the listener as a view of the decoder's own array, so nothing is
+ * copied or allocated once the decoder has been created.
+ *
+ * If the connection has agreed to use compression, compressed frames
+ * are inflated into a second array first and passed on as regular frames.
+ */
+public class FrameDecoder {
+
+    public static final int SIZE_BYTES = 2;
+
+    protected final byte[] buffer;
+    protected final ByteBuffer channelView; // Same array, used for channel reads.
+    protected final NetworkBuffer frameView; // Reframed over every frame handed to the listener.
+    protected final FrameListener listener;
+
+    protected volatile FrameCompressor compressor; // Null until compression is agreed on.
+    protected byte[] inflated; // Only allocated once a compressed frame arrives.
+    protected NetworkBuffer inflatedView;
+
+    protected int readIndex; // Start of the first unprocessed byte.
+    protected int writeIndex; // End of the received bytes.
+
+    public FrameDecoder(FrameListener listener) {
+        this(VanillaProtocol.MAX_BUFFER_SIZE, listener);
+    }
+
+    public FrameDecoder(int capacity, FrameListener listener) {
+        Check.inclusiveLowerBound(capacity, SIZE_BYTES + VanillaProtocol.MAX_PACKET_SIZE, "capacity");
+
+        this.buffer = new byte[capacity];
+        this.channelView = ByteBuffer.wrap(buffer);
+        this.frameView = NetworkBuffer.wrap(buffer, 0, 0);
+        this.listener = Check.nullParam(listener, "listener");
+        this.compressor = null;
+        this.inflated = null;
+        this.inflatedView = null;
+
+        this.readIndex = 0;
+        this.writeIndex = 0;
+    }
+
+
+    /**
+     * Reads whatever is available from a channel and processes any frames completed by it.
+     * @return the amount of bytes read, or -1 if the channel has reached its end.
+     */
+    public int readFrom(ReadableByteChannel channel) throws IOException {
+        compact();
+        channelView.limit(buffer.length);
+        channelView.position(writeIndex);
+
+        int read = channel.read(channelView);
+        if(read > 0) {
+            writeIndex += read;
+            processFrames();
+        }
+        return read;
+    }
+
+    /**
+     * Reads from a stream (blocking if the stream does) and processes any frames completed by it.
+     * @return the amount of bytes read, or -1 if the stream has reached its end.
+     */
+    public int readFrom(InputStream stream) throws IOException {
+        compact();
+
+        int read = stream.read(buffer, writeIndex, buffer.length - writeIndex);
+        if(read > 0) {
+            writeIndex += read;
+            processFrames();
+        }
+        return read;
+    }
+
+    /** Feeds bytes from an array into the decoder, processing frames as they complete. */
+    public void feed(byte[] bytes, int offset, int length) {
+        int fed = 0;
+
+        while (fed < length) {
+            compact();
+            int chunk = Math.min(length - fed, buffer.length - writeIndex);
+
+            System.arraycopy(bytes, offset + fed, buffer, writeIndex, chunk);
+            writeIndex += chunk;
+            fed += chunk;
+
+            processFrames();
+        }
+    }
+
+
+    /**
+     * Passes every complete frame in the buffer to the listener.
+     * @return the number of frames processed.
+     */
+    protected int processFrames() {
+        int frames = 0;
+
+        while (writeIndex - readIndex >= SIZE_BYTES) {
+            int header = ((buffer[readIndex] & 0xFF) << 8) | (buffer[readIndex + 1] & 0xFF);
+            int packetSize = header & FrameCompressor.SIZE_MASK;
+
+            if(packetSize > VanillaProtocol.MAX_PACKET_SIZE) {
+                discard();
+                throw new MalformedFrameException("Frame declared a size of " + packetSize + " bytes, over the limit of " + VanillaProtocol.MAX_PACKET_SIZE);
+            }
+
+            int frameSize = SIZE_BYTES + packetSize;
+            if(writeIndex - readIndex < frameSize) break; // Rest of the frame hasn't arrived yet.
+
+            if(packetSize > 0) {
+                boolean isCompressed = (header & FrameCompressor.COMPRESSED_FLAG) != 0;
+                listener.onFrame(isCompressed ? inflate(readIndex, frameSize) : frameView.reframe(readIndex, frameSize));
+                frames++;
+            }
+
+            readIndex += frameSize;
+        }
+
+        return frames;
+    }
+
+    // Inflates into the second array, which is reused for every compressed frame.
+    protected NetworkBuffer inflate(int start, int frameSize) {
+        FrameCompressor compressor = this.compressor;
+
+        try {
+            if(compressor == null) throw new MalformedFrameException("Received a compressed frame before compression was agreed on");
+            if(frameSize <= FrameCompressor.HEADER_SIZE) throw new MalformedFrameException("Received a compressed frame with no body");
+
+            if(inflated == null) {
+                this.inflated = new byte[SIZE_BYTES + VanillaProtocol.MAX_PACKET_SIZE + 1]; // +1 to catch oversized frames.
+                this.inflatedView = NetworkBuffer.wrap(inflated, 0, 0);
+            }
+
+            int length = compressor.inflate(buffer, start, frameSize, inflated);
+            return inflatedView.reframe(0, length);
+
+        } catch (MalformedFrameException err) {
+            discard();
+            throw err;
+        }
+    }
+
+    /** Moves any partial frame to the start of the buffer to make room for more. */
+    protected void compact() {
+        if(readIndex == 0) return;
+        int remaining = writeIndex - readIndex;
+
+        if(remaining > 0) System.arraycopy(buffer, readIndex, buffer, 0, remaining);
+        readIndex = 0;
+        writeIndex = remaining;
+    }
+
+    /** Drops everything currently held by the decoder. */
+    public void discard() {
+        readIndex = 0;
+        writeIndex = 0;
+    }
+
+
+    /** Starts accepting compressed frames, inflating them with the compressor. */
+    public void setCompressor(FrameCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    public FrameCompressor getCompressor() { return compressor; }
+
+    /** @return the amount of bytes held that don't yet form a complete frame. */
+    public int getBufferedByteCount() { return writeIndex - readIndex; }
+
+
+
+    public interface FrameListener {
+
+        /**
+         * Called for each complete frame. The buffer is only valid until this
+         * method returns as it's reused for the next frame.
+         * @param frame the full frame, including the size bytes.
+         */
+        void onFrame(NetworkBuffer frame);
+    }
+}
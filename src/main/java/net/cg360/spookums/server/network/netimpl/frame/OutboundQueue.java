@@ -0,0 +1,417 @@
+package net.cg360.spookums.server.network.netimpl.frame;
+
+import net.cg360.spookums.server.network.packet.info.PacketInOutBatch;
+import net.cg360.spookums.server.util.clean.Check;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded queue of encoded frames waiting to be written to a single
+ * connection. Any thread can queue frames without touching the socket,
+ * leaving the actual writing to whichever thread drains the queue, so
+ * a slow client only ever holds up its own queue.
+ *
+ * Frames are either urgent or bulk. Urgent frames are ready to drain
+ * straight away. Bulk frames can be held back so several go out in
+ * one write, until either:
+ * - the oldest has been held for the coalesce interval
+ * - the held frames reach the coalesce threshold in bytes
+ * - releaseHeld() is called (at the end of every tick)
+ * - an urgent frame is queued, which takes them along with it
+ *
+ * Queue order is always kept. When batching, released frames are packed
+ * into as few batch frames as possible.
+ *
+ * If the connection uses compression, each frame is compressed as it
+ * reaches the head of the queue, so batches are compressed whole. Frames
+ * which were already ready to drain when compression was agreed are sent
+ * as they are, as the client can't decode compressed frames until it's
+ * been told.
+ *
+ * Queued bytes can be kept in check with a pair of watermarks. Once
+ * they pass the high watermark, bulk frames are dropped (urgent ones
+ * still go through) until the queue drains back down to the low
+ * watermark. The capacity works the same way for the amount of frames:
+ * bulk frames are dropped once it's reached, while urgent ones (such as
+ * a disconnect) are always queued. A connection that stays full or over
+ * the high watermark is reported as stalled so the NetworkInterface
+ * can evict it.
+ */
+public class OutboundQueue {
+
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    protected final ArrayDeque<EncodedFrame> frames;
+    protected final ArrayDeque<EncodedFrame> held; // Bulk frames not yet available to drain.
+    protected final int capacity;
+
+    protected final boolean isBatching;
+    protected final long coalesceNanos; // 0 if bulk frames are only held for batching.
+    protected final int coalesceThreshold;
+
+    protected FrameCompressor compressor; // Null if the connection doesn't use compression.
+    protected int uncompressedCount; // Frames at the front of the queue from before the compressor was set.
+
+    protected int lowWatermark;
+    protected int highWatermark; // 0 if queued bytes aren't limited.
+    protected BackpressureStats stats;
+    protected boolean isOverHighWatermark;
+    protected long overHighWatermarkSince;
+    protected boolean isFull;
+    protected long fullSince;
+    protected long droppedCount; // Frames this queue has turned away.
+
+    protected int queuedBytes;
+    protected int heldBytes;
+    protected long heldSince; // When the oldest held frame was queued.
+    protected int headOffset; // Bytes of the head frame already drained.
+    protected boolean isClosed;
+
+    public OutboundQueue(int capacity) {
+        this(capacity, false, 0, 0);
+    }
+
+    /**
+     * @param isBatching should held frames be packed into batches when released?
+     * @param coalesceInterval the longest time in milliseconds a bulk frame can be held for. 0 to only hold them when batching.
+     * @param coalesceThreshold the amount of held bytes which releases them early. 0 for no threshold.
+     */
+    public OutboundQueue(int capacity, boolean isBatching, int coalesceInterval, int coalesceThreshold) {
+        this.capacity = Check.inclusiveLowerBound(capacity, 1, "capacity");
+        this.isBatching = isBatching;
+        this.coalesceNanos = TimeUnit.MILLISECONDS.toNanos(Check.inclusiveLowerBound(coalesceInterval, 0, "coalesceInterval"));
+        this.coalesceThreshold = Check.inclusiveLowerBound(coalesceThreshold, 0, "coalesceThreshold");
+        this.frames = new ArrayDeque<>();
+        this.held = new ArrayDeque<>();
+        this.compressor = null;
+        this.uncompressedCount = 0;
+
+        this.lowWatermark = 0;
+        this.highWatermark = 0;
+        this.stats = new BackpressureStats();
+        this.isOverHighWatermark = false;
+        this.overHighWatermarkSince = 0;
+        this.isFull = false;
+        this.fullSince = 0;
+        this.droppedCount = 0;
+
+        this.queuedBytes = 0;
+        this.heldBytes = 0;
+        this.heldSince = 0;
+        this.headOffset = 0;
+        this.isClosed = false;
+    }
+
+
+    /**
+     * Adds a frame to the end of the queue, taking a reference to it
+     * which is released once the frame has been drained.
+     * @param isUrgent should the frame (and anything held before it) be ready to drain straight away?
+     * @return false if the queue is full or over its high watermark (bulk frames only) or closed, in which case the frame is dropped.
+     */
+    public synchronized boolean offer(EncodedFrame frame, boolean isUrgent) {
+        if(isClosed) return false;
+
+        if(checkFull() && !isUrgent) {
+            stats.recordCapacityDrop();
+            droppedCount++;
+            return false;
+        }
+
+        if(isOverHighWatermark && !isUrgent) {
+            stats.recordWatermarkDrop();
+            droppedCount++;
+            return false;
+        }
+
+        frame.retain();
+        queuedBytes += frame.getLength();
+
+        if(!isHoldingBulk()) {
+            frames.add(frame);
+            checkHighWatermark();
+            this.notifyAll();
+            return true;
+        }
+
+        if(held.isEmpty()) heldSince = System.nanoTime();
+        held.add(frame);
+        heldBytes += frame.getLength();
+
+        if(isUrgent || ((coalesceThreshold > 0) && (heldBytes >= coalesceThreshold))) packHeld();
+        checkHighWatermark();
+        this.notifyAll(); // Also wakes take() to start waiting on the new deadline.
+        return true;
+    }
+
+    /**
+     * Releases every held frame so it's ready to drain.
+     * @return true if there were any held frames.
+     */
+    public synchronized boolean releaseHeld() {
+        if(held.isEmpty()) return false;
+
+        packHeld();
+        this.notifyAll();
+        return true;
+    }
+
+    /**
+     * Releases the held frames if the oldest has been held for the coalesce interval.
+     * @return true if any frames were released.
+     */
+    public synchronized boolean releaseIfDue(long nanoTime) {
+        long deadline = getHeldDeadline();
+        if((deadline == NO_DEADLINE) || (nanoTime - deadline < 0)) return false;
+
+        return releaseHeld();
+    }
+
+    /** @return the System#nanoTime() the held frames are due to be released at, or NO_DEADLINE. */
+    public synchronized long getHeldDeadline() {
+        if(held.isEmpty() || (coalesceNanos == 0)) return NO_DEADLINE;
+        return heldSince + coalesceNanos;
+    }
+
+    /** @return the milliseconds until the held frames are due (at least 1), or 0 if there's no deadline. */
+    public synchronized long getMillisUntilDue(long nanoTime) {
+        long deadline = getHeldDeadline();
+        if(deadline == NO_DEADLINE) return 0;
+
+        long nanos = deadline - nanoTime;
+        return Math.max(1, (nanos + 999_999) / 1_000_000); // Rounded up so it isn't checked too early.
+    }
+
+    /**
+     * Takes the next whole frame, waiting for one to be queued if needed.
+     * The caller takes over the queue's reference and must release it.
+     * @param timeout the longest time to wait in milliseconds. 0 waits indefinitely.
+     * @return the next frame, or null if the wait timed out or the queue was closed while empty.
+     */
+    public synchronized EncodedFrame take(long timeout) throws InterruptedException {
+
+        if(frames.isEmpty() && !isClosed) {
+            long untilDue = getMillisUntilDue(System.nanoTime());
+
+            if(untilDue == 0) this.wait(timeout);
+            else this.wait(timeout == 0 ? untilDue : Math.min(timeout, untilDue));
+
+            releaseIfDue(System.nanoTime());
+        }
+
+        return poll();
+    }
+
+    /**
+     * The caller takes over the queue's reference and must release it.
+     * @return the next whole frame, or null if the queue is empty.
+     */
+    public synchronized EncodedFrame poll() {
+        EncodedFrame frame = compressHead();
+        if(frame == null) return null;
+
+        frames.poll();
+        queuedBytes -= frame.getLength() - headOffset;
+        headOffset = 0;
+        if(uncompressedCount > 0) uncompressedCount--;
+        checkLowWatermark();
+        checkFull();
+        return frame;
+    }
+
+    /**
+     * Copies as many queued bytes into the target as will fit, splitting
+     * the final frame if it doesn't fit whole. The rest of a split frame
+     * is copied first on the next drain.
+     * @return the amount of bytes copied.
+     */
+    public synchronized int drainTo(ByteBuffer target) {
+        int copied = 0;
+
+        while (target.hasRemaining() && !frames.isEmpty()) {
+            EncodedFrame frame = compressHead();
+            int count = Math.min(target.remaining(), frame.getLength() - headOffset);
+
+            frame.copyTo(target, headOffset, count);
+            headOffset += count;
+            copied += count;
+
+            if(headOffset == frame.getLength()) {
+                frames.poll().release();
+                headOffset = 0;
+                if(uncompressedCount > 0) uncompressedCount--;
+            }
+        }
+
+        queuedBytes -= copied;
+        checkLowWatermark();
+        checkFull();
+        return copied;
+    }
+
+    /** Stops any more frames being queued and wakes up anything waiting in take(). Held frames are released. */
+    public synchronized void close() {
+        if(!held.isEmpty()) packHeld();
+        this.isClosed = true;
+        this.notifyAll();
+    }
+
+    /** Releases every queued frame without writing them. */
+    public synchronized void clear() {
+        EncodedFrame frame;
+        while ((frame = frames.poll()) != null) frame.release();
+        while ((frame = held.poll()) != null) frame.release();
+
+        this.queuedBytes = 0;
+        this.heldBytes = 0;
+        this.headOffset = 0;
+        this.uncompressedCount = 0;
+        this.isOverHighWatermark = false;
+        this.isFull = false;
+    }
+
+    /**
+     * @param maxNanos how long the queue can stay full or over its high watermark for.
+     * @return true if the queue has been full or over its high watermark for at least that long.
+     */
+    public synchronized boolean isStalled(long nanoTime, long maxNanos) {
+        return (isOverHighWatermark && (nanoTime - overHighWatermarkSince >= maxNanos))
+                || (isFull && (nanoTime - fullSince >= maxNanos));
+    }
+
+
+    // A stalled client sending small frames fills the capacity long before the
+    // high watermark, so being full has to count as stalling too.
+    // @return true if the queue is at its capacity.
+    protected boolean checkFull() {
+        boolean isAtCapacity = frames.size() + held.size() >= capacity;
+
+        if(isAtCapacity && !isFull) this.fullSince = System.nanoTime();
+        this.isFull = isAtCapacity;
+        return isAtCapacity;
+    }
+
+
+    protected void checkHighWatermark() {
+        if(isOverHighWatermark || (highWatermark == 0) || (queuedBytes < highWatermark)) return;
+
+        this.isOverHighWatermark = true;
+        this.overHighWatermarkSince = System.nanoTime();
+        stats.recordHighWatermarkHit();
+    }
+
+    protected void checkLowWatermark() {
+        if(isOverHighWatermark && (queuedBytes <= lowWatermark)) this.isOverHighWatermark = false;
+    }
+
+    // Swaps the head for its compressed copy. Never done part way through writing it.
+    protected EncodedFrame compressHead() {
+        EncodedFrame frame = frames.peek();
+        if((frame == null) || (compressor == null) || (headOffset > 0) || (uncompressedCount > 0)) return frame;
+
+        EncodedFrame compressed = compressor.compress(frame);
+        if(compressed == frame) return frame;
+
+        frames.poll();
+        frames.addFirst(compressed.retain());
+        queuedBytes -= frame.getLength() - compressed.getLength();
+        frame.release();
+        return compressed;
+    }
+
+    // Keeps the order of the held frames. Any too large to batch are sent as they are.
+    protected void packHeld() {
+        this.heldBytes = 0;
+
+        if(!isBatching || (held.size() == 1)) {
+            frames.addAll(held); // Nothing to gain from wrapping a single frame.
+            held.clear();
+            return;
+        }
+
+        PacketInOutBatch batch = new PacketInOutBatch();
+        EncodedFrame frame;
+
+        while ((frame = held.poll()) != null) {
+
+            if(!batch.addFrame(frame)) {
+                queueBatch(batch);
+
+                if(!batch.addFrame(frame)) {
+                    frames.add(frame);
+                    continue;
+                }
+            }
+
+            frame.release(); // The batch has its own reference.
+        }
+
+        queueBatch(batch);
+    }
+
+    // Adds the batch as a single frame, leaving it empty to be reused.
+    protected void queueBatch(PacketInOutBatch batch) {
+        if(batch.getFrameCount() == 0) return;
+
+        if(batch.getFrameCount() == 1) {
+            frames.add(batch.getFrames().get(0).retain());
+
+        } else {
+            EncodedFrame encoded = EncodedFrame.encode(batch);
+            frames.add(encoded);
+            queuedBytes += encoded.getLength() - batch.getContentSize();
+        }
+
+        batch.releaseFrames();
+    }
+
+
+
+    /**
+     * Compresses frames from now on. Frames already ready to drain are
+     * left alone, so this should be set once the frame telling the client
+     * about compression has been queued. Held frames are compressed, as
+     * they can only have been queued after it (it's urgent, so it takes
+     * any held frames along with it.)
+     */
+    public synchronized void setCompressor(FrameCompressor compressor) {
+        this.compressor = compressor;
+        this.uncompressedCount = frames.size();
+    }
+
+    public synchronized FrameCompressor getCompressor() { return compressor; }
+
+    /**
+     * Limits the amount of queued bytes.
+     * @param lowWatermark the queued bytes at which bulk frames are accepted again.
+     * @param highWatermark the queued bytes at which bulk frames start being dropped. 0 for no limit.
+     * @param stats where drops are counted. Usually shared by every queue of a NetworkInterface.
+     */
+    public synchronized void setWatermarks(int lowWatermark, int highWatermark, BackpressureStats stats) {
+        this.highWatermark = Check.inclusiveLowerBound(highWatermark, 0, "highWatermark");
+        this.lowWatermark = Math.min(Check.inclusiveLowerBound(lowWatermark, 0, "lowWatermark"), highWatermark);
+        this.stats = Check.nullParam(stats, "stats");
+        this.isOverHighWatermark = false;
+        checkHighWatermark();
+    }
+
+    /** @return true if there are no frames ready to drain. Held frames are not counted. */
+    public synchronized boolean isEmpty() { return frames.isEmpty(); }
+    public synchronized boolean isClosed() { return isClosed; }
+    public boolean isBatching() { return isBatching; }
+    /** @return true if bulk frames can be held back rather than being ready straight away. */
+    public boolean isHoldingBulk() { return isBatching || (coalesceNanos > 0); }
+    /** @return the amount of frames queued, including a partially drained one and any held ones. */
+    public synchronized int size() { return frames.size() + held.size(); }
+    /** @return the amount of bytes waiting to be drained. */
+    public synchronized int getQueuedBytes() { return queuedBytes; }
+    public synchronized boolean isOverHighWatermark() { return isOverHighWatermark; }
+    public synchronized boolean isFull() { return isFull; }
+    /** @return the amount of frames turned away, either as the queue was full or over its high watermark. */
+    public synchronized long getDroppedCount() { return droppedCount; }
+    public synchronized int getLowWatermark() { return lowWatermark; }
+    public synchronized int getHighWatermark() { return highWatermark; }
+    public int getCapacity() { return capacity; }
+}
@@ -0,0 +1,69 @@
+package net.cg360.spookums.server.network.netimpl.limit;
+
+import java.util.IdentityHashMap;
+
+/**
+ * Applies a RateLimitPolicy to the inbound packets of a single connection.
+ * Checked against the packet ID before a packet is decoded, so a flood of
+ * packets costs little more than reading them.
+ *
+ * Only to be used by the thread reading from the connection.
+ */
+public class InboundRateLimiter {
+
+    protected final RateLimitPolicy policy;
+    protected final TokenBucket[] buckets; // Indexed by packet ID. Null if unlimited.
+    protected final TokenBucket strikes; // Null if the client is never disconnected.
+
+    protected long droppedCount;
+    protected boolean isOverStrikeLimit;
+
+    public InboundRateLimiter(RateLimitPolicy policy) {
+        this.policy = policy;
+        this.buckets = new TokenBucket[policy.limits.length];
+
+        // IDs sharing a limit share a bucket.
+        IdentityHashMap<RateLimit, TokenBucket> categories = new IdentityHashMap<>();
+
+        for(int i = 0; i < buckets.length; i++) {
+            RateLimit limit = policy.limits[i];
+            if(!limit.isUnlimited()) buckets[i] = categories.computeIfAbsent(limit, RateLimit::createBucket);
+        }
+
+        this.strikes = policy.strikeLimit == 0
+                ? null
+                : new TokenBucket(policy.strikeLimit, policy.strikeLimit / RateLimitPolicy.STRIKE_PERIOD_SECONDS);
+
+        this.droppedCount = 0;
+        this.isOverStrikeLimit = false;
+    }
+
+
+    /**
+     * Takes a token for an inbound packet.
+     * @return true if the packet should be processed, false if it's over the limit and should be dropped.
+     */
+    public boolean tryAcquire(byte packetID) {
+        TokenBucket bucket = buckets[packetID & 0xFF];
+        if(bucket == null) return true;
+
+        long now = System.nanoTime();
+        if(bucket.tryTake(now)) return true;
+
+        droppedCount++;
+        policy.recordDrop();
+
+        if((strikes != null) && !isOverStrikeLimit && !strikes.tryTake(now)) {
+            this.isOverStrikeLimit = true;
+            policy.recordDisconnect();
+        }
+
+        return false;
+    }
+
+
+    /** @return true once the client has had too many packets dropped and should be disconnected. */
+    public boolean isOverStrikeLimit() { return isOverStrikeLimit; }
+    public long getDroppedCount() { return droppedCount; }
+    public RateLimitPolicy getPolicy() { return policy; }
+}
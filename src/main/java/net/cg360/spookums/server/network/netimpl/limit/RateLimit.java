@@ -0,0 +1,60 @@
+package net.cg360.spookums.server.network.netimpl.limit;
+
+import net.cg360.spookums.server.core.data.json.io.error.ConfigFormatException;
+
+/**
+ * How many packets are allowed over a period of time, written in the
+ * config as "count/seconds" (e.g. "5/10" is 5 packets every 10 seconds.)
+ * The full count can be used in one burst.
+ */
+public final class RateLimit {
+
+    public static final RateLimit UNLIMITED = new RateLimit(0, 0);
+
+    private final int count;
+    private final double seconds;
+
+    public RateLimit(int count, double seconds) {
+        this.count = count;
+        this.seconds = seconds;
+    }
+
+    /**
+     * Parses a limit from the config. "0", "none" or an empty string is unlimited.
+     * @throws ConfigFormatException if the limit isn't in the format "count/seconds".
+     */
+    public static RateLimit parse(String limit) {
+        String trimmed = limit == null ? "" : limit.trim().toLowerCase();
+        if(trimmed.isEmpty() || trimmed.equals("0") || trimmed.equals("none")) return UNLIMITED;
+
+        String[] parts = trimmed.split("/");
+
+        try {
+            if(parts.length == 2) {
+                int count = Integer.parseInt(parts[0].trim());
+                double seconds = Double.parseDouble(parts[1].trim());
+
+                if((count >= 1) && (seconds > 0)) return new RateLimit(count, seconds);
+            }
+
+        } catch (NumberFormatException ignored) { }
+
+        throw new ConfigFormatException("Rate limits must be in the format 'count/seconds' (e.g. 5/10). Got: " + limit);
+    }
+
+
+    /** @return a new, full bucket enforcing this limit, or null if it's unlimited. */
+    public TokenBucket createBucket() {
+        return isUnlimited() ? null : new TokenBucket(count, count / seconds);
+    }
+
+
+    public int getCount() { return count; }
+    public double getSeconds() { return seconds; }
+    public boolean isUnlimited() { return count == 0; }
+
+    @Override
+    public String toString() {
+        return isUnlimited() ? "none" : count + "/" + seconds;
+    }
+}
@@ -0,0 +1,81 @@
+package net.cg360.spookums.server.network.netimpl.limit;
+
+import net.cg360.spookums.server.ServerConfig;
+import net.cg360.spookums.server.core.data.Settings;
+import net.cg360.spookums.server.network.VanillaProtocol;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The inbound rate limits for every packet ID, shared by every connection
+ * of a NetworkInterface. Packet IDs given the same RateLimit instance are
+ * a category and share a single bucket on each connection.
+ *
+ * A client that keeps going over its limits is disconnected once it's
+ * had more packets dropped in a minute than the strike limit allows.
+ */
+public class RateLimitPolicy {
+
+    public static final double STRIKE_PERIOD_SECONDS = 60;
+
+    protected final RateLimit[] limits;
+    protected final int strikeLimit; // Drops allowed per minute. 0 to never disconnect.
+
+    protected final AtomicLong droppedPackets;
+    protected final AtomicLong disconnectedClients;
+
+    public RateLimitPolicy(RateLimit defaultLimit, int strikeLimit) {
+        this.limits = new RateLimit[256];
+        this.strikeLimit = Math.max(0, strikeLimit);
+
+        this.droppedPackets = new AtomicLong(0);
+        this.disconnectedClients = new AtomicLong(0);
+
+        Arrays.fill(this.limits, defaultLimit == null ? RateLimit.UNLIMITED : defaultLimit);
+    }
+
+    /** Creates the policy from the rate_limit_* properties of the server config. */
+    public static RateLimitPolicy fromSettings(Settings settings) {
+        RateLimit ping = RateLimit.parse(settings.getOrDefault(ServerConfig.RATE_LIMIT_PING));
+        RateLimit login = RateLimit.parse(settings.getOrDefault(ServerConfig.RATE_LIMIT_LOGIN));
+        RateLimit chat = RateLimit.parse(settings.getOrDefault(ServerConfig.RATE_LIMIT_CHAT));
+        RateLimit other = RateLimit.parse(settings.getOrDefault(ServerConfig.RATE_LIMIT_DEFAULT));
+
+        return new RateLimitPolicy(other, settings.getOrDefault(ServerConfig.RATE_LIMIT_STRIKES))
+                .l(VanillaProtocol.PACKET_SERVER_PING_REQUEST, ping)
+                .l(VanillaProtocol.PACKET_LOGIN, login)
+                .l(VanillaProtocol.PACKET_UPDATE_ACCOUNT, login)
+                .l(VanillaProtocol.PACKET_CHAT_MESSAGE, chat);
+    }
+
+
+    // Chaining
+    public RateLimitPolicy l(byte packetID, RateLimit limit) {
+        setLimit(packetID, limit);
+        return this;
+    }
+
+    public void setLimit(byte packetID, RateLimit limit) {
+        this.limits[packetID & 0xFF] = limit == null ? RateLimit.UNLIMITED : limit;
+    }
+
+    public RateLimit getLimit(byte packetID) {
+        return limits[packetID & 0xFF];
+    }
+
+
+    /** @return a new limiter for a single connection, with full buckets. */
+    public InboundRateLimiter createLimiter() {
+        return new InboundRateLimiter(this);
+    }
+
+    protected void recordDrop() { droppedPackets.incrementAndGet(); }
+    protected void recordDisconnect() { disconnectedClients.incrementAndGet(); }
+
+
+
+    public int getStrikeLimit() { return strikeLimit; }
+    public long getDroppedPackets() { return droppedPackets.get(); }
+    public long getDisconnectedClients() { return disconnectedClients.get(); }
+}
@@ -0,0 +1,62 @@
+package net.cg360.spookums.server.network.netimpl.limit;
+
+/**
+ * A token bucket which is refilled lazily from System#nanoTime() whenever
+ * a token is taken, so it needs no timers or threads of its own.
+ *
+ * Not thread-safe. Each bucket should only be used by the thread reading
+ * from its connection.
+ */
+public class TokenBucket {
+
+    protected final double capacity;
+    protected final double tokensPerNano;
+
+    protected double tokens;
+    protected long lastRefill;
+
+    /**
+     * @param capacity the most tokens the bucket can hold, i.e. the largest burst allowed. Starts full.
+     * @param tokensPerSecond how quickly tokens are refilled.
+     */
+    public TokenBucket(double capacity, double tokensPerSecond) {
+        if(capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        if(tokensPerSecond <= 0) throw new IllegalArgumentException("tokensPerSecond must be above 0");
+
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / 1_000_000_000d;
+
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+
+    /** @return true if a token was taken, false if the bucket is empty. */
+    public boolean tryTake() {
+        return tryTake(System.nanoTime());
+    }
+
+    /** @return true if a token was taken, false if the bucket is empty. */
+    public boolean tryTake(long nanoTime) {
+        refill(nanoTime);
+        if(tokens < 1) return false;
+
+        tokens -= 1;
+        return true;
+    }
+
+    protected void refill(long nanoTime) {
+        long elapsed = nanoTime - lastRefill;
+        if(elapsed <= 0) return;
+
+        this.tokens = Math.min(capacity, tokens + (elapsed * tokensPerNano));
+        this.lastRefill = nanoTime;
+    }
+
+
+
+    /** @return the tokens in the bucket as of the last time it was used. */
+    public double getTokens() { return tokens; }
+    public double getCapacity() { return capacity; }
+    public double getTokensPerSecond() { return tokensPerNano * 1_000_000_000d; }
+}
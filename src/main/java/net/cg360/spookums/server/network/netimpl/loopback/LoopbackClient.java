@@ -0,0 +1,209 @@
+package net.cg360.spookums.server.network.netimpl.loopback;
+
+import net.cg360.spookums.server.Server;
+import net.cg360.spookums.server.exception.MalformedFrameException;
+import net.cg360.spookums.server.exception.RateLimitExceededException;
+import net.cg360.spookums.server.network.VanillaProtocol;
+import net.cg360.spookums.server.network.netimpl.frame.EncodedFrame;
+import net.cg360.spookums.server.network.netimpl.frame.FrameCompressor;
+import net.cg360.spookums.server.network.netimpl.frame.FrameDecoder;
+import net.cg360.spookums.server.network.netimpl.frame.OutboundQueue;
+import net.cg360.spookums.server.network.netimpl.limit.InboundRateLimiter;
+import net.cg360.spookums.server.network.packet.NetworkPacket;
+import net.cg360.spookums.server.network.packet.generic.PacketInOutDisconnect;
+import net.cg360.spookums.server.network.packet.info.PacketInOutBatch;
+import net.cg360.spookums.server.network.user.NetworkClient;
+import net.cg360.spookums.server.util.NetworkBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * A simulated client connected to an NILoopback, along with the server's
+ * side of the connection. Packets go through the same encoding, framing,
+ * batching and compression as they would over a socket, only the bytes
+ * are handed over in memory instead.
+ *
+ * Sending is safe from any thread. Frames sent by the server wait in the
+ * outbound queue until the client receives them, so a bot which never
+ * calls receive() backs up just like a client that stops reading.
+ */
+public class LoopbackClient {
+
+    protected final NILoopback networkInterface;
+    protected final NetworkClient client;
+
+    // Server side
+    protected final FrameDecoder serverDecoder;
+    protected final InboundRateLimiter limiter;
+    protected final OutboundQueue outbound;
+
+    // Client side
+    protected final FrameDecoder clientDecoder;
+    protected final byte[] readArray;
+    protected final ByteBuffer readBuffer;
+    protected final ArrayDeque<NetworkBuffer> received; // Copies of each frame, batches unpacked.
+    protected volatile FrameCompressor clientCompressor; // Null until compression is agreed on.
+
+    protected volatile boolean isClosed;
+
+    public LoopbackClient(NILoopback networkInterface, NetworkClient client, OutboundQueue outbound, InboundRateLimiter limiter) {
+        this.networkInterface = networkInterface;
+        this.client = client;
+
+        this.limiter = limiter;
+        this.serverDecoder = new FrameDecoder(frame -> networkInterface.dispatcher.dispatchFrame(client, frame, limiter, null));
+        this.outbound = outbound;
+
+        this.clientDecoder = new FrameDecoder(this::onClientFrame);
+        this.readArray = new byte[VanillaProtocol.MAX_BUFFER_SIZE];
+        this.readBuffer = ByteBuffer.wrap(readArray);
+        this.received = new ArrayDeque<>();
+        this.clientCompressor = null;
+
+        this.isClosed = false;
+    }
+
+
+    /**
+     * Encodes a packet and passes it to the server, as the client would.
+     * Its events are called on the calling thread unless the server
+     * dispatches packets on the tick.
+     * @return false if the connection has been closed.
+     */
+    public boolean send(NetworkPacket packet) {
+        EncodedFrame frame = EncodedFrame.encode(packet);
+
+        try {
+            FrameCompressor compressor = this.clientCompressor;
+            EncodedFrame toSend = compressor == null ? frame : compressor.compress(frame);
+            NetworkBuffer view = toSend.view();
+            return sendBytes(view.array(), view.arrayOffset(), view.capacity());
+
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * Passes raw bytes to the server. They don't have to line up with
+     * frames, which is useful for testing partial or malformed input.
+     * @return false if the connection has been closed.
+     */
+    public boolean sendBytes(byte[] bytes, int offset, int length) {
+        if(isClosed) return false;
+
+        // Only one thread can feed the decoder at a time, same as a socket's reader.
+        synchronized (serverDecoder) {
+
+            try {
+                serverDecoder.feed(bytes, offset, length);
+
+            } catch (MalformedFrameException frameErr) {
+                networkInterface.disconnectClient(client.getID(), new PacketInOutDisconnect("An error occurred | " + frameErr.getMessage()));
+
+            } catch (RateLimitExceededException limitErr) {
+                Server.getLogger(Server.NET_LOG).warn(String.format("Client %s went over its packet rate limits too often. Disconnecting.", client.getID().toString()));
+                networkInterface.disconnectClient(client.getID(), new PacketInOutDisconnect(limitErr.getMessage()));
+            }
+        }
+
+        return !isClosed;
+    }
+
+
+    /**
+     * Reads everything the server has sent so far, as if it had arrived
+     * from the socket. Frames sent after the connection closed (e.g. the
+     * disconnect packet) can still be received.
+     * @return the amount of frames received, batches counted by their contents.
+     */
+    public synchronized int receive() {
+        int before = received.size();
+
+        while (outbound.drainTo(readBuffer) > 0) {
+            clientDecoder.feed(readArray, 0, readBuffer.position());
+            readBuffer.clear();
+        }
+
+        closeDrainedCompressor();
+        return received.size() - before;
+    }
+
+    /** @return the next frame received, size bytes included, or null if there are none waiting. */
+    public synchronized NetworkBuffer pollFrame() {
+        if(received.isEmpty()) receive();
+        return received.poll();
+    }
+
+    /** @return every frame received, in order, size bytes included. */
+    public synchronized ArrayList<NetworkBuffer> drainFrames() {
+        receive();
+        ArrayList<NetworkBuffer> frames = new ArrayList<>(received);
+        received.clear();
+        return frames;
+    }
+
+    // Called by the client decoder with a view that's reused, so each frame is copied.
+    protected void onClientFrame(NetworkBuffer frame) {
+        if(frame.peek(FrameDecoder.SIZE_BYTES) != VanillaProtocol.PACKET_PROTOCOL_BATCH) {
+            received.add(copyFrame(frame));
+            return;
+        }
+
+        frame.reset();
+        int contentSize = frame.getUnsignedShort() - 1;
+        frame.get();
+
+        NetworkBuffer content = frame.slice(contentSize);
+        while (content.countBytesRemaining() > 0) received.add(copyFrame(PacketInOutBatch.nextFrame(content)));
+    }
+
+    protected static NetworkBuffer copyFrame(NetworkBuffer frame) {
+        int start = frame.arrayOffset();
+        return NetworkBuffer.wrap(Arrays.copyOfRange(frame.array(), start, start + frame.capacity()));
+    }
+
+
+    /** Closes the connection from the client's end. */
+    public void disconnect() {
+        networkInterface.disconnectClient(client.getID(), null);
+    }
+
+    // Called by the NILoopback once the connection has been removed.
+    protected void close() {
+        this.isClosed = true;
+        this.outbound.close();
+
+        if(outbound.getCompressor() != null) outbound.getCompressor().close();
+        closeDrainedCompressor();
+    }
+
+    // The client end still has to inflate anything queued before the close (such as
+    // a broadcast compressed by another connection), so it's only closed once drained.
+    protected synchronized void closeDrainedCompressor() {
+        if(isClosed && (clientCompressor != null) && outbound.isEmpty()) clientCompressor.close();
+    }
+
+    // Both ends get their own compressor as they would over a socket.
+    protected void enableCompression(int threshold) {
+        FrameCompressor serverCompressor = new FrameCompressor(threshold);
+        serverDecoder.setCompressor(serverCompressor);
+        outbound.setCompressor(serverCompressor);
+
+        FrameCompressor clientCompressor = new FrameCompressor(threshold);
+        clientDecoder.setCompressor(clientCompressor);
+        this.clientCompressor = clientCompressor;
+    }
+
+
+
+    public UUID getID() { return client.getID(); }
+    public NetworkClient getClient() { return client; }
+    public InboundRateLimiter getLimiter() { return limiter; }
+    public OutboundQueue getOutboundQueue() { return outbound; }
+    public boolean isClosed() { return isClosed; }
+}
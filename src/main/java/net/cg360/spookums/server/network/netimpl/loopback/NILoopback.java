@@ -0,0 +1,309 @@
+package net.cg360.spookums.server.network.netimpl.loopback;
+
+import net.cg360.spookums.server.Server;
+import net.cg360.spookums.server.ServerConfig;
+import net.cg360.spookums.server.core.event.EventManager;
+import net.cg360.spookums.server.core.event.type.network.ClientSocketStatusEvent;
+import net.cg360.spookums.server.core.event.type.network.PacketBroadcastEvent;
+import net.cg360.spookums.server.core.event.type.network.PacketEvent;
+import net.cg360.spookums.server.network.netimpl.NetworkInterface;
+import net.cg360.spookums.server.network.netimpl.PacketDispatcher;
+import net.cg360.spookums.server.network.netimpl.SessionTable;
+import net.cg360.spookums.server.network.netimpl.accept.AcceptStats;
+import net.cg360.spookums.server.network.netimpl.capture.CaptureRecord;
+import net.cg360.spookums.server.network.netimpl.capture.PacketCapture;
+import net.cg360.spookums.server.network.netimpl.frame.BackpressureStats;
+import net.cg360.spookums.server.network.netimpl.frame.EncodedFrame;
+import net.cg360.spookums.server.network.netimpl.frame.OutboundQueue;
+import net.cg360.spookums.server.network.netimpl.limit.RateLimitPolicy;
+import net.cg360.spookums.server.network.packet.NetworkPacket;
+import net.cg360.spookums.server.network.packet.generic.PacketInOutDisconnect;
+import net.cg360.spookums.server.network.user.ConnectionState;
+import net.cg360.spookums.server.network.user.NetworkClient;
+import net.cg360.spookums.server.util.clean.Check;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A NetworkInterface with no sockets at all. Clients are created in the
+ * same JVM with connect() and their bytes are passed straight to the
+ * server's decoder, so everything above the socket (framing, batching,
+ * compression, rate limits, events) runs exactly as it would for real.
+ *
+ * Useful for running lots of bot clients, or benchmarking the server
+ * without the kernel's networking getting in the way. The hostname and
+ * port are ignored.
+ */
+public class NILoopback implements NetworkInterface {
+
+    protected final SessionTable<LoopbackClient> clients;
+    protected final PacketDispatcher dispatcher;
+    protected final BackpressureStats backpressure;
+    protected final AcceptStats acceptStats;
+    protected final Object runLock; // openServerBlocking() waits on this until the server is closed.
+    protected RateLimitPolicy rateLimits;
+
+    protected final int queueCapacity;
+    protected boolean isBatching;
+    protected int coalesceInterval;
+    protected int coalesceThreshold;
+    protected int lowWatermark;
+    protected int highWatermark;
+    protected long slowClientNanos; // 0 if slow clients aren't evicted.
+
+    protected volatile boolean isRunning = false;
+
+    public NILoopback() {
+        this(ServerConfig.OUTBOUND_QUEUE_CAPACITY.getDefaultValue());
+    }
+
+    public NILoopback(int queueCapacity) {
+        this.queueCapacity = Check.inclusiveLowerBound(queueCapacity, 1, "queueCapacity");
+        this.clients = new SessionTable<>();
+        this.dispatcher = new PacketDispatcher(this);
+        this.backpressure = new BackpressureStats();
+        this.acceptStats = new AcceptStats();
+        this.runLock = new Object();
+        this.rateLimits = new RateLimitPolicy(null, 0);
+
+        this.isBatching = ServerConfig.BATCH_OUTBOUND_PACKETS.getDefaultValue();
+        this.coalesceInterval = ServerConfig.OUTBOUND_COALESCE_INTERVAL.getDefaultValue();
+        this.coalesceThreshold = ServerConfig.OUTBOUND_COALESCE_THRESHOLD.getDefaultValue();
+        this.lowWatermark = ServerConfig.OUTBOUND_LOW_WATERMARK.getDefaultValue();
+        this.highWatermark = ServerConfig.OUTBOUND_HIGH_WATERMARK.getDefaultValue();
+        this.slowClientNanos = 0;
+    }
+
+
+    /** Starts the interface and blocks until it's closed, as the socket based interfaces do. */
+    @Override
+    public void openServerBlocking(String hostname, int port) {
+        if(isRunning) return;
+
+        if(Server.get() != null) {
+            this.isBatching = Server.get().getSettings().getOrDefault(ServerConfig.BATCH_OUTBOUND_PACKETS);
+            this.coalesceInterval = Server.get().getSettings().getOrDefault(ServerConfig.OUTBOUND_COALESCE_INTERVAL);
+            this.coalesceThreshold = Server.get().getSettings().getOrDefault(ServerConfig.OUTBOUND_COALESCE_THRESHOLD);
+            this.lowWatermark = Server.get().getSettings().getOrDefault(ServerConfig.OUTBOUND_LOW_WATERMARK);
+            this.highWatermark = Server.get().getSettings().getOrDefault(ServerConfig.OUTBOUND_HIGH_WATERMARK);
+            this.rateLimits = RateLimitPolicy.fromSettings(Server.get().getSettings());
+            this.slowClientNanos = TimeUnit.MILLISECONDS.toNanos(Server.get().getSettings().getOrDefault(ServerConfig.SLOW_CLIENT_TIMEOUT));
+        }
+
+        synchronized (runLock) {
+            this.isRunning = true;
+
+            try {
+                while (isRunning) runLock.wait();
+
+            } catch (InterruptedException ignored) {
+                // Closed below.
+            }
+        }
+
+        this.closeServer();
+    }
+
+    @Override
+    public void closeServer() {
+        if(!isRunning) return;
+
+        for(UUID clientNetID: clients.uuids()) disconnectClient(clientNetID, null);
+
+        synchronized (runLock) {
+            this.isRunning = false;
+            runLock.notifyAll();
+        }
+    }
+
+
+    /**
+     * Connects a new simulated client.
+     * @return the client's end of the connection.
+     * @throws IllegalStateException if the interface isn't running.
+     */
+    public LoopbackClient connect() {
+        if(!isRunning) throw new IllegalStateException("The loopback interface isn't running");
+        acceptStats.recordAccepted();
+
+        int sessionID = clients.add(id -> {
+            NetworkClient client = new NetworkClient(id, clients.toUUID(id));
+            OutboundQueue outbound = new OutboundQueue(queueCapacity, isBatching, coalesceInterval, coalesceThreshold);
+            outbound.setWatermarks(lowWatermark, highWatermark, backpressure);
+            return new LoopbackClient(this, client, outbound, rateLimits.createLimiter());
+        });
+
+        LoopbackClient client = clients.get(sessionID);
+        acceptStats.recordSetup(true);
+        EventManager.get().call(new ClientSocketStatusEvent.Open(client.getClient()));
+        return client;
+    }
+
+
+    // Inbound packets are dispatched as soon as the client sends them
+    // so there's nothing to poll for.
+    @Override
+    public ArrayList<NetworkPacket> checkForInboundPackets(UUID clientNetID) {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public void sendDataPacket(UUID clientNetID, NetworkPacket packet, boolean isUrgent) {
+        if(!isRunning) return;
+        LoopbackClient client = clients.get(clientNetID);
+        if(client != null) sendToClient(client, packet, isUrgent);
+    }
+
+    protected void sendToClient(LoopbackClient client, NetworkPacket packet, boolean isUrgent) {
+        PacketEvent.Out<?> packetEvent = new PacketEvent.Out<>(client.getID(), packet);
+        Server.get().getEventManager().call(packetEvent);
+
+        if(!packetEvent.isCancelled()) {
+            EncodedFrame frame = EncodedFrame.encode(packet);
+            queueFrame(client, frame, isUrgent);
+            frame.release();
+        }
+    }
+
+    @Override
+    public void broadcastDataPacket(NetworkPacket packet, boolean isUrgent) {
+        broadcastDataPacket(clients.uuids(), packet, isUrgent);
+    }
+
+    @Override
+    public void broadcastDataPacket(Collection<UUID> clientNetIDs, NetworkPacket packet, boolean isUrgent) {
+        if(!isRunning) return;
+
+        PacketBroadcastEvent<?> broadcastEvent = new PacketBroadcastEvent<>(clientNetIDs, packet);
+        Server.get().getEventManager().call(broadcastEvent);
+        if(broadcastEvent.isCancelled()) return;
+
+        EncodedFrame frame = EncodedFrame.encode(packet);
+
+        for(UUID clientNetID: clientNetIDs) {
+            LoopbackClient client = clients.get(clientNetID);
+            if(client != null) queueFrame(client, frame, isUrgent);
+        }
+
+        frame.release();
+    }
+
+    @Override
+    public void sendFrame(UUID clientNetID, EncodedFrame frame, boolean isUrgent) {
+        if(!isRunning) return;
+        LoopbackClient client = clients.get(clientNetID);
+        if(client != null) queueFrame(client, frame, isUrgent);
+    }
+
+    protected void queueFrame(LoopbackClient client, EncodedFrame frame, boolean isUrgent) {
+        PacketCapture capture = PacketCapture.get();
+        if(capture != null) capture.recordFrame(client.getID(), CaptureRecord.OUTBOUND, frame.view());
+
+        if(!client.getOutboundQueue().offer(frame, isUrgent)) {
+            long dropped = client.getOutboundQueue().getDroppedCount();
+
+            // Logged less and less often so a backed up client can't flood the log.
+            if(Long.bitCount(dropped) == 1)
+                Server.getLogger(Server.NET_LOG).warn(String.format("Outbound queue for client %s is backed up. Dropped %s packet(s) so far.", client.getID().toString(), dropped));
+        }
+    }
+
+    @Override
+    public void flushOutbound() {
+        if(!isRunning) return;
+        long now = System.nanoTime();
+
+        for(LoopbackClient client: clients.values()) {
+            OutboundQueue queue = client.getOutboundQueue();
+            queue.releaseHeld();
+
+            if((slowClientNanos > 0) && queue.isStalled(now, slowClientNanos)) {
+                backpressure.recordEviction();
+                Server.getLogger(Server.NET_LOG).warn(String.format("Client %s couldn't keep up with its outbound packets. Disconnecting.", client.getID().toString()));
+                disconnectClient(client.getID(), new PacketInOutDisconnect(SLOW_CLIENT_REASON));
+            }
+        }
+    }
+
+    @Override
+    public boolean canCompress(UUID clientNetID) {
+        if(!isRunning) return false;
+        int threshold = Server.get().getSettings().getOrDefault(ServerConfig.COMPRESSION_THRESHOLD);
+        return (threshold >= 0) && (clients.get(clientNetID) != null);
+    }
+
+    @Override
+    public boolean enableCompression(UUID clientNetID) {
+        if(!isRunning) return false;
+        int threshold = Server.get().getSettings().getOrDefault(ServerConfig.COMPRESSION_THRESHOLD);
+        LoopbackClient client = clients.get(clientNetID);
+
+        if((threshold < 0) || (client == null)) return false;
+
+        client.enableCompression(threshold);
+        return true;
+    }
+
+    @Override
+    public void disconnectClient(UUID clientNetID, PacketInOutDisconnect disconnectPacket) {
+        if(!isRunning) return;
+        LoopbackClient client = clients.remove(clients.toSessionID(clientNetID));
+
+        // Removing the client is what claims the disconnect, so it only happens once.
+        if(client != null) {
+            if(disconnectPacket != null) sendToClient(client, disconnectPacket, true);
+            client.close(); // Anything queued can still be received by the client.
+
+            NetworkClient networkClient = client.getClient();
+            dispatcher.removeClient(networkClient);
+
+            networkClient.setState(ConnectionState.DISCONNECTED);
+            Server.get().getEventManager().call(new ClientSocketStatusEvent.Disconnect(networkClient));
+        }
+    }
+
+    @Override
+    public boolean isClientConnected(UUID clientNetId) {
+        return isRunning && (clients.get(clientNetId) != null);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return isRunning;
+    }
+
+    @Override
+    public BackpressureStats getBackpressureStats() {
+        return backpressure;
+    }
+
+    @Override
+    public AcceptStats getAcceptStats() {
+        return acceptStats;
+    }
+
+    public RateLimitPolicy getRateLimitPolicy() {
+        return rateLimits;
+    }
+
+    @Override
+    public ArrayList<UUID> getClientNetIDs() {
+        if(!isRunning) return new ArrayList<>();
+        return clients.uuids();
+    }
+
+    @Override
+    public Optional<NetworkClient> getClient(UUID id) {
+        LoopbackClient client = clients.get(id);
+        return client == null ? Optional.empty() : Optional.of(client.getClient());
+    }
+
+    /** @return the client's end of the connection, for sending and receiving as it. */
+    public Optional<LoopbackClient> getLoopbackClient(UUID id) {
+        return Optional.ofNullable(clients.get(id));
+    }
+}
@@ -0,0 +1,353 @@
+package net.cg360.spookums.server.network.netimpl.selector;
+
+import net.cg360.spookums.server.Server;
+import net.cg360.spookums.server.ServerConfig;
+import net.cg360.spookums.server.core.event.EventManager;
+import net.cg360.spookums.server.core.event.type.network.ClientSocketStatusEvent;
+import net.cg360.spookums.server.core.event.type.network.PacketBroadcastEvent;
+import net.cg360.spookums.server.core.event.type.network.PacketEvent;
+import net.cg360.spookums.server.network.VanillaProtocol;
+import net.cg360.spookums.server.network.netimpl.NetworkInterface;
+import net.cg360.spookums.server.network.netimpl.PacketDispatcher;
+import net.cg360.spookums.server.network.netimpl.SessionTable;
+import net.cg360.spookums.server.network.netimpl.accept.AcceptStats;
+import net.cg360.spookums.server.network.netimpl.accept.AcceptorPool;
+import net.cg360.spookums.server.network.netimpl.accept.ChannelAcceptListener;
+import net.cg360.spookums.server.network.netimpl.capture.CaptureRecord;
+import net.cg360.spookums.server.network.netimpl.capture.PacketCapture;
+import net.cg360.spookums.server.network.netimpl.frame.BackpressureStats;
+import net.cg360.spookums.server.network.netimpl.frame.EncodedFrame;
+import net.cg360.spookums.server.network.netimpl.frame.OutboundQueue;
+import net.cg360.spookums.server.network.netimpl.limit.RateLimitPolicy;
+import net.cg360.spookums.server.network.packet.NetworkPacket;
+import net.cg360.spookums.server.network.packet.generic.PacketInOutDisconnect;
+import net.cg360.spookums.server.network.user.ConnectionState;
+import net.cg360.spookums.server.network.user.NetworkClient;
+import net.cg360.spookums.server.util.NetworkBufferPool;
+import net.cg360.spookums.server.util.clean.Check;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A non-blocking NetworkInterface built on java.nio Selectors. A small,
+ * fixed set of I/O threads services every client instead of NISocket's
+ * thread-per-client approach. The wire format is identical, so the two
+ * can be swapped with the 'network_interface' config property.
+ */
+public class NISelector implements NetworkInterface {
+
+    protected AcceptorPool<SocketChannel> acceptorPool;
+    protected SelectorWorkerThread[] workers;
+    protected final SessionTable<SelectorConnection> connections;
+    protected final PacketDispatcher dispatcher;
+    protected final NetworkBufferPool writePool; // Direct buffers so channel writes aren't copied again.
+    protected final BackpressureStats backpressure;
+    protected final AcceptStats acceptStats;
+    protected RateLimitPolicy rateLimits;
+
+    protected final int workerCount;
+    protected final int queueCapacity;
+    protected int nextWorker;
+    protected long slowClientNanos; // 0 if slow clients aren't evicted.
+
+    protected volatile boolean isRunning = false;
+
+    public NISelector() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() / 2), ServerConfig.OUTBOUND_QUEUE_CAPACITY.getDefaultValue());
+    }
+
+    public NISelector(int workerCount, int queueCapacity) {
+        this.workerCount = Check.inclusiveLowerBound(workerCount, 1, "workerCount");
+        this.queueCapacity = Check.inclusiveLowerBound(queueCapacity, 1, "queueCapacity");
+        this.acceptorPool = null;
+        this.workers = new SelectorWorkerThread[0];
+        this.connections = new SessionTable<>();
+        this.dispatcher = new PacketDispatcher(this);
+        this.writePool = new NetworkBufferPool(VanillaProtocol.MAX_BUFFER_SIZE, 64, true);
+        this.backpressure = new BackpressureStats();
+        this.acceptStats = new AcceptStats();
+        this.rateLimits = new RateLimitPolicy(null, 0);
+        this.nextWorker = 0;
+        this.slowClientNanos = 0;
+    }
+
+    @Override
+    public void openServerBlocking(String hostname, int port) {
+        if(!isRunning) {
+
+            try {
+                InetAddress address = Inet4Address.getByName(hostname);
+
+                try {
+                    this.isRunning = true;
+                    boolean isBatching = Server.get().getSettings().getOrDefault(ServerConfig.BATCH_OUTBOUND_PACKETS);
+                    int coalesceInterval = Server.get().getSettings().getOrDefault(ServerConfig.OUTBOUND_COALESCE_INTERVAL);
+                    int coalesceThreshold = Server.get().getSettings().getOrDefault(ServerConfig.OUTBOUND_COALESCE_THRESHOLD);
+                    int lowWatermark = Server.get().getSettings().getOrDefault(ServerConfig.OUTBOUND_LOW_WATERMARK);
+                    int highWatermark = Server.get().getSettings().getOrDefault(ServerConfig.OUTBOUND_HIGH_WATERMARK);
+                    this.rateLimits = RateLimitPolicy.fromSettings(Server.get().getSettings());
+                    this.slowClientNanos = TimeUnit.MILLISECONDS.toNanos(Server.get().getSettings().getOrDefault(ServerConfig.SLOW_CLIENT_TIMEOUT));
+
+                    this.workers = new SelectorWorkerThread[workerCount];
+                    for(int i = 0; i < workerCount; i++) {
+                        this.workers[i] = new SelectorWorkerThread(this, i);
+                        this.workers[i].start();
+                    }
+
+                    // Runs on the pool's setup thread so the acceptors only ever accept.
+                    this.acceptorPool = AcceptorPool.fromSettings("Network-Selector", Server.get().getSettings(), acceptStats, ChannelAcceptListener::bind, channel -> {
+                        channel.configureBlocking(false);
+                        channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+                        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                        channel.setOption(StandardSocketOptions.SO_RCVBUF, VanillaProtocol.MAX_BUFFER_SIZE);
+                        channel.setOption(StandardSocketOptions.SO_SNDBUF, VanillaProtocol.MAX_BUFFER_SIZE);
+
+                        int sessionID = this.connections.add(id -> {
+                            NetworkClient client = new NetworkClient(id, connections.toUUID(id));
+                            OutboundQueue outbound = new OutboundQueue(queueCapacity, isBatching, coalesceInterval, coalesceThreshold);
+                            outbound.setWatermarks(lowWatermark, highWatermark, backpressure);
+                            return new SelectorConnection(channel, client, pickWorker(), outbound, writePool, rateLimits.createLimiter());
+                        });
+
+                        // Called before anything's read so the client is still in the OPEN state.
+                        SelectorConnection connection = connections.get(sessionID);
+                        EventManager.get().call(new ClientSocketStatusEvent.Open(connection.getClient()));
+
+                        connection.getWorker().register(connection);
+                    });
+
+                    this.acceptorPool.open(new InetSocketAddress(address, port));
+                    this.acceptorPool.awaitClose();
+
+                    this.closeServer();
+
+                } catch (Exception socketError) {
+                    if(this.acceptorPool != null) this.closeServer();
+                    socketError.printStackTrace();
+                }
+
+            } catch (Exception addressErr) {
+                addressErr.printStackTrace();
+            }
+
+            this.isRunning = false;
+        }
+    }
+
+    @Override
+    public synchronized void closeServer() {
+        if(!isRunning) return;
+
+        if(acceptorPool.isRunning())  {
+            PacketInOutDisconnect pkDisconnect = new PacketInOutDisconnect("The server you were connected to has closed.");
+
+            for(UUID uuid: getClientNetIDs()) {
+                disconnectClient(uuid, pkDisconnect);
+            }
+
+            acceptorPool.close();
+        }
+
+        this.isRunning = false;
+        for(SelectorWorkerThread worker: workers) worker.interrupt();
+    }
+
+
+    // Inbound packets are pushed by the I/O threads as soon as they're read
+    // so there's nothing to poll for.
+    @Override
+    public ArrayList<NetworkPacket> checkForInboundPackets(UUID clientNetID) {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public void sendDataPacket(UUID clientNetID, NetworkPacket packet, boolean isUrgent) {
+        if(!isRunning) return;
+        SelectorConnection connection = connections.get(clientNetID);
+        if(connection != null) sendToConnection(connection, packet, isUrgent);
+    }
+
+    protected void sendToConnection(SelectorConnection connection, NetworkPacket packet, boolean isUrgent) {
+        PacketEvent.Out<?> packetEvent = new PacketEvent.Out<>(connection.getClient().getID(), packet);
+        Server.get().getEventManager().call(packetEvent);
+
+        if(!packetEvent.isCancelled()) {
+            EncodedFrame frame = EncodedFrame.encode(packet);
+            queueFrame(connection, frame, isUrgent);
+            frame.release();
+        }
+    }
+
+    @Override
+    public void broadcastDataPacket(NetworkPacket packet, boolean isUrgent) {
+        broadcastDataPacket(connections.uuids(), packet, isUrgent);
+    }
+
+    @Override
+    public void broadcastDataPacket(Collection<UUID> clientNetIDs, NetworkPacket packet, boolean isUrgent) {
+        if(!isRunning) return;
+
+        PacketBroadcastEvent<?> broadcastEvent = new PacketBroadcastEvent<>(clientNetIDs, packet);
+        Server.get().getEventManager().call(broadcastEvent);
+        if(broadcastEvent.isCancelled()) return;
+
+        // Encoded once. Each recipient's queue just holds a reference to the same frame.
+        EncodedFrame frame = EncodedFrame.encode(packet);
+
+        for(UUID clientNetID: clientNetIDs) {
+            SelectorConnection connection = connections.get(clientNetID);
+            if(connection != null) queueFrame(connection, frame, isUrgent);
+        }
+
+        frame.release();
+    }
+
+    @Override
+    public void sendFrame(UUID clientNetID, EncodedFrame frame, boolean isUrgent) {
+        if(!isRunning) return;
+        SelectorConnection connection = connections.get(clientNetID);
+        if(connection != null) queueFrame(connection, frame, isUrgent);
+    }
+
+    protected void queueFrame(SelectorConnection connection, EncodedFrame frame, boolean isUrgent) {
+        PacketCapture capture = PacketCapture.get();
+        if(capture != null) capture.recordFrame(connection.getClient().getID(), CaptureRecord.OUTBOUND, frame.view());
+
+        if(!connection.queueFrame(frame, isUrgent)) {
+            long dropped = connection.getOutboundQueue().getDroppedCount();
+
+            // Logged less and less often so a backed up client can't flood the log.
+            if(Long.bitCount(dropped) == 1)
+                Server.getLogger(Server.NET_LOG).warn(String.format("Outbound queue for client %s is backed up. Dropped %s packet(s) so far.", connection.getClient().getID().toString(), dropped));
+        }
+    }
+
+    @Override
+    public void flushOutbound() {
+        if(!isRunning) return;
+        long now = System.nanoTime();
+
+        for(SelectorConnection connection: connections.values()) {
+            connection.releaseHeldFrames();
+
+            if((slowClientNanos > 0) && connection.getOutboundQueue().isStalled(now, slowClientNanos))
+                evictClient(connection.getClient().getID());
+        }
+    }
+
+    /** Disconnects a client which has stayed over its outbound high watermark for too long. */
+    protected void evictClient(UUID clientNetID) {
+        if(connections.get(clientNetID) == null) return;
+
+        backpressure.recordEviction();
+        Server.getLogger(Server.NET_LOG).warn(String.format("Client %s couldn't keep up with its outbound packets. Disconnecting.", clientNetID.toString()));
+
+        // The worker writes what it can without blocking, then closes the channel.
+        disconnectClient(clientNetID, new PacketInOutDisconnect(SLOW_CLIENT_REASON));
+    }
+
+    @Override
+    public boolean canCompress(UUID clientNetID) {
+        if(!isRunning) return false;
+        int threshold = Server.get().getSettings().getOrDefault(ServerConfig.COMPRESSION_THRESHOLD);
+        return (threshold >= 0) && (connections.get(clientNetID) != null);
+    }
+
+    @Override
+    public boolean enableCompression(UUID clientNetID) {
+        if(!isRunning) return false;
+        int threshold = Server.get().getSettings().getOrDefault(ServerConfig.COMPRESSION_THRESHOLD);
+        SelectorConnection connection = connections.get(clientNetID);
+
+        if((threshold < 0) || (connection == null)) return false;
+
+        connection.enableCompression(threshold);
+        return true;
+    }
+
+    @Override
+    public void disconnectClient(UUID clientNetID, PacketInOutDisconnect disconnectPacket) {
+        if(!isRunning) return;
+        SelectorConnection connection = connections.remove(connections.toSessionID(clientNetID));
+
+        // Only one thread should get to close the connection.
+        if(connection != null) {
+            SocketChannel channel = connection.getChannel();
+
+            if(channel.isOpen()) {
+                if(disconnectPacket != null) sendToConnection(connection, disconnectPacket, true);
+                connection.closeAfterFlush(); // The worker closes the channel once it's written what it can.
+            }
+
+            NetworkClient client = connection.getClient();
+            dispatcher.removeClient(client);
+
+            client.setState(ConnectionState.DISCONNECTED);
+            Server.get().getEventManager().call(new ClientSocketStatusEvent.Disconnect(client));
+        }
+    }
+
+    @Override
+    public boolean isClientConnected(UUID clientNetId) {
+        if(!isRunning) return false;
+        SelectorConnection connection = connections.get(clientNetId);
+
+        if(connection != null) {
+            if(connection.getChannel().isOpen()) return true;
+            disconnectClient(clientNetId); // Clean-up dead connection
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return isRunning;
+    }
+
+    @Override
+    public BackpressureStats getBackpressureStats() {
+        return backpressure;
+    }
+
+    @Override
+    public AcceptStats getAcceptStats() {
+        return acceptStats;
+    }
+
+    public RateLimitPolicy getRateLimitPolicy() {
+        return rateLimits;
+    }
+
+    @Override
+    public ArrayList<UUID> getClientNetIDs() {
+        if(!isRunning) return new ArrayList<>();
+        return connections.uuids();
+    }
+
+    @Override
+    public Optional<NetworkClient> getClient(UUID id) {
+        SelectorConnection connection = connections.get(id);
+        return connection == null ? Optional.empty() : Optional.of(connection.getClient());
+    }
+
+    /** @return the client with the session ID, looked up without hashing. */
+    public Optional<NetworkClient> getClient(int sessionID) {
+        SelectorConnection connection = connections.get(sessionID);
+        return connection == null ? Optional.empty() : Optional.of(connection.getClient());
+    }
+
+
+    protected synchronized SelectorWorkerThread pickWorker() {
+        SelectorWorkerThread worker = workers[nextWorker];
+        nextWorker = (nextWorker + 1) % workers.length;
+        return worker;
+    }
+
+    public int getWorkerCount() { return workerCount; }
+}
@@ -0,0 +1,141 @@
+package net.cg360.spookums.server.network.netimpl.selector;
+
+import net.cg360.spookums.server.network.netimpl.frame.EncodedFrame;
+import net.cg360.spookums.server.network.netimpl.frame.FrameCompressor;
+import net.cg360.spookums.server.network.netimpl.frame.FrameDecoder;
+import net.cg360.spookums.server.network.netimpl.frame.OutboundQueue;
+import net.cg360.spookums.server.network.netimpl.limit.InboundRateLimiter;
+import net.cg360.spookums.server.network.user.NetworkClient;
+import net.cg360.spookums.server.util.NetworkBuffer;
+import net.cg360.spookums.server.util.NetworkBufferPool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Holds the state of a single client connected through the
+ * NISelector. Reads and writes are only ever handled by the owning
+ * worker thread. Other threads just add frames to the outbound queue.
+ */
+public class SelectorConnection {
+
+    protected final SocketChannel channel;
+    protected final NetworkClient client;
+    protected final SelectorWorkerThread worker;
+
+    protected SelectionKey key;
+
+    protected final FrameDecoder decoder; // Inbound bytes collected across reads.
+    protected final InboundRateLimiter limiter;
+    protected final OutboundQueue outbound;
+    protected final NetworkBufferPool writePool;
+    protected final NetworkBuffer writeLease;
+    protected final ByteBuffer writeBuffer; // Bytes taken from the queue but not yet written. Always left in read mode.
+
+    protected final AtomicBoolean isWriteScheduled; // Stops the worker being woken for every single frame.
+    protected volatile boolean isClosing;
+
+    public SelectorConnection(SocketChannel channel, NetworkClient client, SelectorWorkerThread worker, OutboundQueue outbound, NetworkBufferPool writePool, InboundRateLimiter limiter) {
+        this.channel = channel;
+        this.client = client;
+        this.worker = worker;
+
+        this.key = null;
+
+        this.limiter = limiter;
+        this.decoder = new FrameDecoder(frame -> worker.networkInterface.dispatcher.dispatchFrame(client, frame, limiter, null));
+        this.outbound = outbound;
+        this.writePool = writePool;
+        this.writeLease = writePool.lease();
+        this.writeBuffer = writeLease.asByteBuffer();
+        this.writeBuffer.flip();
+
+        this.isWriteScheduled = new AtomicBoolean(false);
+        this.isClosing = false;
+    }
+
+
+    /**
+     * Queues a frame to be written by the worker. Bulk frames may be
+     * held back by the queue, in which case the worker keeps an eye on
+     * them until they're due.
+     * @return false if the outbound queue was full and the frame was dropped.
+     */
+    public boolean queueFrame(EncodedFrame frame, boolean isUrgent) {
+        if(!outbound.offer(frame, isUrgent)) return false;
+
+        if(!outbound.isEmpty()) scheduleWrite();
+        else if(outbound.getHeldDeadline() != OutboundQueue.NO_DEADLINE) worker.watchHeldFrames(this);
+        return true;
+    }
+
+    /** Batches up any held frames and has the worker write them. */
+    public void releaseHeldFrames() {
+        if(outbound.releaseHeld()) scheduleWrite();
+    }
+
+    /** Compresses large outbound frames and accepts compressed inbound frames from now on. */
+    public void enableCompression(int threshold) {
+        FrameCompressor compressor = new FrameCompressor(threshold);
+        decoder.setCompressor(compressor);
+        outbound.setCompressor(compressor);
+    }
+
+    /** Writes anything left in the queue (as far as the socket allows) then closes the channel. */
+    public void closeAfterFlush() {
+        this.isClosing = true;
+        this.outbound.close();
+        this.worker.requestWrite(this); // Skip the scheduled check, closing shouldn't wait on OP_WRITE.
+    }
+
+    /** Closes the channel, dropping anything left unwritten. Only to be called by the worker thread. */
+    protected void closeChannel() throws IOException {
+        try {
+            channel.close();
+
+        } finally {
+            outbound.clear();
+            writePool.release(writeLease);
+            if(outbound.getCompressor() != null) outbound.getCompressor().close();
+        }
+    }
+
+    protected void scheduleWrite() {
+        if(isWriteScheduled.compareAndSet(false, true)) worker.requestWrite(this);
+    }
+
+    /**
+     * Writes as much of the queue as the channel will accept. Only
+     * to be called by the worker thread.
+     * @return true if everything queued was written.
+     */
+    protected boolean flushWrites() throws IOException {
+        while (true) {
+
+            if(!writeBuffer.hasRemaining()) {
+                writeBuffer.clear();
+                outbound.drainTo(writeBuffer);
+                writeBuffer.flip();
+
+                if(!writeBuffer.hasRemaining()) return true; // Queue is empty.
+            }
+
+            channel.write(writeBuffer);
+            if(writeBuffer.hasRemaining()) return false; // Socket buffer is full, wait for OP_WRITE.
+        }
+    }
+
+
+
+    public SocketChannel getChannel() { return channel; }
+    public NetworkClient getClient() { return client; }
+    public SelectorWorkerThread getWorker() { return worker; }
+    public FrameDecoder getDecoder() { return decoder; }
+    public InboundRateLimiter getLimiter() { return limiter; }
+    public OutboundQueue getOutboundQueue() { return outbound; }
+    public SelectionKey getKey() { return key; }
+    public boolean isClosing() { return isClosing; }
+}
@@ -0,0 +1,232 @@
+package net.cg360.spookums.server.network.netimpl.selector;
+
+import net.cg360.spookums.server.Server;
+import net.cg360.spookums.server.exception.MalformedFrameException;
+import net.cg360.spookums.server.exception.RateLimitExceededException;
+import net.cg360.spookums.server.network.netimpl.frame.OutboundQueue;
+import net.cg360.spookums.server.network.packet.generic.PacketInOutDisconnect;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One of the fixed I/O threads of an NISelector. Each worker
+ * owns a Selector and services every connection assigned to it,
+ * rather than a thread being created per client.
+ */
+public class SelectorWorkerThread extends Thread {
+
+    protected final NISelector networkInterface;
+    protected final Selector selector;
+
+    // Channels can only be registered/modified safely from the selecting thread.
+    protected final ConcurrentLinkedQueue<SelectorConnection> pendingRegistrations;
+    protected final ConcurrentLinkedQueue<SelectorConnection> pendingWrites;
+    protected final Set<SelectorConnection> holdingConnections; // Have bulk frames held until a deadline.
+
+    public SelectorWorkerThread(NISelector networkInterface, int index) throws IOException {
+        super("Network-IO-" + index);
+        this.networkInterface = networkInterface;
+        this.selector = Selector.open();
+
+        this.pendingRegistrations = new ConcurrentLinkedQueue<>();
+        this.pendingWrites = new ConcurrentLinkedQueue<>();
+        this.holdingConnections = ConcurrentHashMap.newKeySet();
+
+        this.setDaemon(true);
+    }
+
+
+    /** Queues a connection to be registered with this worker's selector. */
+    public void register(SelectorConnection connection) {
+        this.pendingRegistrations.add(connection);
+        this.selector.wakeup();
+    }
+
+    /** Asks the worker to write out the connection's queued frames. */
+    public void requestWrite(SelectorConnection connection) {
+        this.pendingWrites.add(connection);
+        this.selector.wakeup();
+    }
+
+    /** Has the worker release the connection's held frames once they're due. */
+    public void watchHeldFrames(SelectorConnection connection) {
+        if(this.holdingConnections.add(connection)) this.selector.wakeup(); // Select's timeout needs updating.
+    }
+
+
+    @Override
+    public void run() {
+
+        while (networkInterface.isRunning() && !this.isInterrupted()) {
+
+            try {
+                selector.select(releaseDueFrames());
+
+                processRegistrations();
+                processWrites();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    SelectorConnection connection = (SelectorConnection) key.attachment();
+                    if(!key.isValid()) continue;
+
+                    try {
+                        if(key.isReadable()) readFromConnection(connection);
+                        if(key.isValid() && key.isWritable()) writeToConnection(connection);
+
+                    } catch (CancelledKeyException ignored) {
+                        // Disconnected by another thread mid-operation.
+
+                    } catch (IOException socketErr) {
+                        networkInterface.disconnectClient(
+                                connection.getClient().getID(),
+                                new PacketInOutDisconnect("An error occurred | " + socketErr.getMessage())
+                        );
+                    }
+                }
+
+            } catch (IOException err) {
+                Server.getLogger(Server.NET_LOG).error("A network I/O thread's selector failed:");
+                err.printStackTrace();
+                break;
+            }
+        }
+
+        try { selector.close(); }
+        catch (IOException err) { err.printStackTrace(); }
+    }
+
+    @Override
+    public void interrupt() {
+        super.interrupt();
+        this.selector.wakeup();
+    }
+
+
+
+    /**
+     * Releases the held frames of any connection which are due.
+     * @return the milliseconds until the next are due, or 0 if nothing is waiting on a deadline.
+     */
+    protected long releaseDueFrames() {
+        long now = System.nanoTime();
+        long nextDue = 0;
+
+        Iterator<SelectorConnection> connections = holdingConnections.iterator();
+
+        while (connections.hasNext()) {
+            SelectorConnection connection = connections.next();
+            OutboundQueue outbound = connection.getOutboundQueue();
+
+            if(outbound.releaseIfDue(now)) connection.scheduleWrite();
+            long untilDue = outbound.getMillisUntilDue(now);
+
+            if(untilDue == 0) {
+                connections.remove();
+
+                // A frame could've been held since checking, which wouldn't have been watched.
+                untilDue = outbound.getMillisUntilDue(now);
+                if(untilDue == 0) continue;
+                holdingConnections.add(connection);
+            }
+
+            nextDue = (nextDue == 0) ? untilDue : Math.min(nextDue, untilDue);
+        }
+
+        return nextDue;
+    }
+
+    protected void processRegistrations() {
+        SelectorConnection connection;
+
+        while ((connection = pendingRegistrations.poll()) != null) {
+            try {
+                connection.key = connection.getChannel().register(selector, SelectionKey.OP_READ, connection);
+
+            } catch (ClosedChannelException ignored) {
+                // Closed before it was ever registered. Nothing to do.
+            }
+        }
+    }
+
+    protected void processWrites() {
+        SelectorConnection connection;
+
+        while ((connection = pendingWrites.poll()) != null) {
+
+            if((connection.getKey() == null) && connection.getChannel().isOpen()) {
+                // Not registered yet, the registration's wakeup will bring us back.
+                pendingWrites.add(connection);
+                break;
+            }
+
+            try {
+                writeToConnection(connection);
+
+            } catch (CancelledKeyException ignored) {
+                // Disconnected by another thread mid-operation.
+
+            } catch (IOException socketErr) {
+                networkInterface.disconnectClient(connection.getClient().getID(), null);
+            }
+        }
+    }
+
+
+    protected void readFromConnection(SelectorConnection connection) throws IOException {
+        try {
+            if(connection.getDecoder().readFrom(connection.getChannel()) == -1)
+                networkInterface.disconnectClient(connection.getClient().getID(), null);
+
+        } catch (MalformedFrameException frameErr) {
+            networkInterface.disconnectClient(
+                    connection.getClient().getID(),
+                    new PacketInOutDisconnect("An error occurred | " + frameErr.getMessage())
+            );
+
+        } catch (RateLimitExceededException limitErr) {
+            Server.getLogger(Server.NET_LOG).warn(String.format("Client %s went over its packet rate limits too often. Disconnecting.", connection.getClient().getID().toString()));
+            networkInterface.disconnectClient(connection.getClient().getID(), new PacketInOutDisconnect(limitErr.getMessage()));
+        }
+    }
+
+    protected void writeToConnection(SelectorConnection connection) throws IOException {
+        if(!connection.getChannel().isOpen()) return;
+
+        if(connection.isClosing()) {
+            // Best attempt only. Whatever the socket doesn't take is dropped.
+            try { connection.flushWrites(); }
+            finally { connection.closeChannel(); }
+            return;
+        }
+
+        boolean isFlushed = connection.flushWrites();
+        SelectionKey key = connection.getKey();
+
+        if(!isFlushed) {
+            if(key.isValid()) key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            return;
+        }
+
+        if(key.isValid()) key.interestOps(SelectionKey.OP_READ);
+        connection.isWriteScheduled.set(false);
+
+        // Something could've been queued between the flush and clearing the flag.
+        if(!connection.getOutboundQueue().isEmpty()) connection.scheduleWrite();
+    }
+
+
+    public Selector getSelector() { return selector; }
+}
@@ -4,34 +4,64 @@ import net.cg360.spookums.server.Server;
 import net.cg360.spookums.server.ServerConfig;
 import net.cg360.spookums.server.core.event.EventManager;
 import net.cg360.spookums.server.core.event.type.network.ClientSocketStatusEvent;
+import net.cg360.spookums.server.core.event.type.network.PacketBroadcastEvent;
 import net.cg360.spookums.server.core.event.type.network.PacketEvent;
-import net.cg360.spookums.server.network.PacketRegistry;
+import net.cg360.spookums.server.exception.MalformedFrameException;
+import net.cg360.spookums.server.exception.RateLimitExceededException;
 import net.cg360.spookums.server.network.VanillaProtocol;
 import net.cg360.spookums.server.network.netimpl.NetworkInterface;
+import net.cg360.spookums.server.network.netimpl.PacketDispatcher;
+import net.cg360.spookums.server.network.netimpl.SessionTable;
+import net.cg360.spookums.server.network.netimpl.accept.AcceptStats;
+import net.cg360.spookums.server.network.netimpl.accept.AcceptorPool;
+import net.cg360.spookums.server.network.netimpl.accept.SocketAcceptListener;
+import net.cg360.spookums.server.network.netimpl.capture.CaptureRecord;
+import net.cg360.spookums.server.network.netimpl.capture.PacketCapture;
+import net.cg360.spookums.server.network.netimpl.frame.BackpressureStats;
+import net.cg360.spookums.server.network.netimpl.frame.EncodedFrame;
+import net.cg360.spookums.server.network.netimpl.frame.FrameCompressor;
+import net.cg360.spookums.server.network.netimpl.frame.FrameDecoder;
+import net.cg360.spookums.server.network.netimpl.frame.OutboundQueue;
+import net.cg360.spookums.server.network.netimpl.limit.InboundRateLimiter;
+import net.cg360.spookums.server.network.netimpl.limit.RateLimitPolicy;
 import net.cg360.spookums.server.network.packet.NetworkPacket;
 import net.cg360.spookums.server.network.packet.generic.PacketInOutDisconnect;
 import net.cg360.spookums.server.network.user.ConnectionState;
 import net.cg360.spookums.server.network.user.NetworkClient;
-import net.cg360.spookums.server.util.NetworkBuffer;
 
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class NISocket implements NetworkInterface {
 
-    protected ServerSocket netSocket;
-    protected HashMap<UUID, Socket> clientSockets;
-    protected HashMap<UUID, SocketListenerThread> clientThreads;
-    protected HashMap<UUID, NetworkClient> clientProfiles;
+    public static final long DISCONNECT_GRACE_NANOS = 1_000_000_000L; // Time a disconnected client's writer gets to send what's left.
 
-    protected boolean isRunning = false;
+    protected AcceptorPool<Socket> acceptorPool;
+    protected SessionTable<SocketSession> sessions;
+
+    protected ConcurrentHashMap<SocketWriterThread, Long> closingWriters; // Writer -> deadline to finish by.
+
+    protected PacketDispatcher dispatcher;
+    protected BackpressureStats backpressure;
+    protected AcceptStats acceptStats;
+    protected RateLimitPolicy rateLimits;
+    protected long slowClientNanos; // 0 if slow clients aren't evicted.
+
+    protected volatile boolean isRunning = false;
 
     public NISocket() {
-        this.netSocket = null;
-        this.clientSockets = new HashMap<>();
-        this.clientThreads = new HashMap<>();
-        this.clientProfiles = new HashMap<>();
+        this.acceptorPool = null;
+        this.sessions = new SessionTable<>();
+        this.closingWriters = new ConcurrentHashMap<>();
+
+        this.dispatcher = new PacketDispatcher(this);
+        this.backpressure = new BackpressureStats();
+        this.acceptStats = new AcceptStats();
+        this.rateLimits = new RateLimitPolicy(null, 0);
+        this.slowClientNanos = 0;
     }
 
     @Override
@@ -43,33 +73,56 @@ public class NISocket implements NetworkInterface {
 
                 try {
                     this.isRunning = true;
-                    this.netSocket = new ServerSocket(port, 50, address);
-                    this.clientSockets = new HashMap<>();
-
-                    while (isRunning) {
-                        Socket clientSocket = this.netSocket.accept();
+                    this.sessions = new SessionTable<>();
+                    int queueCapacity = Server.get().getSettings().getOrDefault(ServerConfig.OUTBOUND_QUEUE_CAPACITY);
+                    boolean isBatching = Server.get().getSettings().getOrDefault(ServerConfig.BATCH_OUTBOUND_PACKETS);
+                    int coalesceInterval = Server.get().getSettings().getOrDefault(ServerConfig.OUTBOUND_COALESCE_INTERVAL);
+                    int coalesceThreshold = Server.get().getSettings().getOrDefault(ServerConfig.OUTBOUND_COALESCE_THRESHOLD);
+                    int lowWatermark = Server.get().getSettings().getOrDefault(ServerConfig.OUTBOUND_LOW_WATERMARK);
+                    int highWatermark = Server.get().getSettings().getOrDefault(ServerConfig.OUTBOUND_HIGH_WATERMARK);
+                    this.rateLimits = RateLimitPolicy.fromSettings(Server.get().getSettings());
+                    this.slowClientNanos = TimeUnit.MILLISECONDS.toNanos(Server.get().getSettings().getOrDefault(ServerConfig.SLOW_CLIENT_TIMEOUT));
+                    int connectionTimeout = Server.get().getSettings().getOrDefault(ServerConfig.CONNECTION_TIMEOUT);
+
+                    // Runs on the pool's setup thread so the acceptors only ever accept. Plain sockets rather
+                    // than channels, as a channel's socket adaptor can't read and write at once before Java 13.
+                    this.acceptorPool = AcceptorPool.fromSettings("Network-Socket", Server.get().getSettings(), acceptStats, SocketAcceptListener::bind, clientSocket -> {
                         clientSocket.setKeepAlive(true);
-                        clientSocket.setSoTimeout(Server.get().getSettings().getOrDefault(ServerConfig.CONNECTION_TIMEOUT));
+                        clientSocket.setSoTimeout(connectionTimeout);
                         clientSocket.setReceiveBufferSize(VanillaProtocol.MAX_BUFFER_SIZE);
                         clientSocket.setSendBufferSize(VanillaProtocol.MAX_BUFFER_SIZE);
 
-                        UUID clientUUID = UUID.randomUUID();
-                        SocketListenerThread socketListenerThread = new SocketListenerThread(clientUUID, this);
-                        NetworkClient client = new NetworkClient(clientUUID);
+                        // The session is only visible once it's been fully built, which marks the client as connected.
+                        int sessionID = sessions.add(id -> {
+                            UUID clientUUID = sessions.toUUID(id);
+                            SocketListenerThread socketListenerThread = new SocketListenerThread(clientUUID, this);
+                            OutboundQueue outbound = new OutboundQueue(queueCapacity, isBatching, coalesceInterval, coalesceThreshold);
+                            outbound.setWatermarks(lowWatermark, highWatermark, backpressure);
+                            SocketWriterThread socketWriterThread = new SocketWriterThread(clientUUID, clientSocket, outbound, this);
+                            NetworkClient client = new NetworkClient(id, clientUUID);
 
-                        this.clientSockets.put(clientUUID, clientSocket);
-                        this.clientThreads.put(clientUUID, socketListenerThread);
-                        this.clientProfiles.put(clientUUID, client);
+                            ArrayList<NetworkPacket> inbox = new ArrayList<>();
+                            InboundRateLimiter limiter = rateLimits.createLimiter();
+                            FrameDecoder decoder = new FrameDecoder(frame -> dispatcher.dispatchFrame(client, frame, limiter, inbox));
 
-                        socketListenerThread.start();
-                        EventManager.get().call(new ClientSocketStatusEvent.Open(client));
+                            return new SocketSession(clientSocket, client, socketListenerThread, socketWriterThread, decoder, inbox);
+                        });
 
-                    }
+                        // Called before anything's read so the client is still in the OPEN state.
+                        SocketSession session = sessions.get(sessionID);
+                        EventManager.get().call(new ClientSocketStatusEvent.Open(session.getClient()));
+
+                        session.getWriter().start();
+                        session.getListener().start();
+                    });
+
+                    this.acceptorPool.open(new InetSocketAddress(address, port));
+                    this.acceptorPool.awaitClose();
 
                     this.closeServer();
 
                 } catch (Exception socketError) {
-                    if(this.netSocket != null) this.closeServer();
+                    if(this.acceptorPool != null) this.closeServer();
                     socketError.printStackTrace();
                 }
 
@@ -84,16 +137,15 @@ public class NISocket implements NetworkInterface {
     @Override
     public synchronized void closeServer() {
         if(!isRunning) return;
-        if((!netSocket.isClosed()) && netSocket.isBound())  {
+        if(acceptorPool.isRunning())  {
             PacketInOutDisconnect pkDisconnect = new PacketInOutDisconnect("The server you were connected to has closed.");
 
             for(UUID uuid: getClientNetIDs()) {
                 disconnectClient(uuid, pkDisconnect);
             }
 
-            // How do I even counter that? Idk
-            try { netSocket.close(); }
-            catch (Exception err) { err.printStackTrace(); }
+            awaitClosingWriters();
+            acceptorPool.close();
             this.isRunning = false;
         }
     }
@@ -103,120 +155,218 @@ public class NISocket implements NetworkInterface {
         if(!isRunning()) return new ArrayList<>();
         ArrayList<NetworkPacket> collectedPackets = new ArrayList<>();
 
-        if(isClientConnected(clientNetID)) {
-
-            Socket client;
-            synchronized (clientSockets) { client = clientSockets.get(clientNetID); }
+        SocketSession session = sessions.get(clientNetID);
 
+        if((session != null) && isClientConnected(clientNetID)) {
+            Socket client = session.getSocket();
+            FrameDecoder decoder = session.getDecoder();
+            ArrayList<NetworkPacket> inbox = session.getInbox();
 
             try {
-                synchronized (client.getInputStream()) {
-                    DataInputStream in = new DataInputStream(client.getInputStream());
-                    byte[] sizeBytes = new byte[2];
+                // Blocks until something arrives (or the socket times out) rather
+                // than spinning on available(). Partial frames are kept by the decoder.
+                int read = decoder.readFrom(client.getInputStream());
 
-                    if(in.available() >= 2) {
-                        int sizeByteCount = in.read(sizeBytes);
-                        NetworkBuffer sizeBuf = NetworkBuffer.wrap(sizeBytes);
-                        int packetSize = sizeByteCount == 2 ? sizeBuf.getUnsignedShort() : -1;
+                if(read == -1) {
+                    disconnectClient(clientNetID, null);
 
-                        if (packetSize > 0) {
+                } else {
+                    collectedPackets.addAll(inbox);
+                    inbox.clear();
+                }
 
-                            byte[] bodyBytes = new byte[packetSize];
-                            in.readFully(bodyBytes);
-                            NetworkBuffer bodyBuffer = NetworkBuffer.wrap(bodyBytes);
+            } catch (SocketTimeoutException ignored) {
+                // Nothing received within the timeout. Check again.
 
-                            byte packetID = bodyBuffer.get();
+            } catch (MalformedFrameException frameErr) {
+                disconnectClient(clientNetID, new PacketInOutDisconnect("An error occurred | "+frameErr.getMessage()));
 
-                            Optional<Class<? extends NetworkPacket>> pk = PacketRegistry.get().getPacketTypeForID(packetID);
+            } catch (RateLimitExceededException limitErr) {
+                Server.getLogger(Server.NET_LOG).warn(String.format("Client %s went over its packet rate limits too often. Disconnecting.", clientNetID.toString()));
+                disconnectClient(clientNetID, new PacketInOutDisconnect(limitErr.getMessage()));
 
-                            if (pk.isPresent()) {
-                                NetworkBuffer buffer = NetworkBuffer.allocate(2 + bodyBuffer.capacity());
+            } catch (IOException socketErr) {
+                disconnectClient(clientNetID, new PacketInOutDisconnect("An error occurred | "+socketErr.getMessage()));
+            }
 
-                                buffer.putUnsignedShort(packetSize);
-                                buffer.put(bodyBytes);
+        }
 
-                                Class<? extends NetworkPacket> clz = pk.get();
-                                NetworkPacket packet = clz.newInstance().decode(buffer);
+        return collectedPackets;
+    }
 
-                                PacketEvent.In<?> packetEvent = new PacketEvent.In<>(clientNetID, packet);
-                                Server.get().getEventManager().call(packetEvent);
+    // Sending only queues the frame. The client's writer thread does the actual
+    // (blocking) write so a slow client can't hold up anyone else.
+    @Override
+    public void sendDataPacket(UUID clientNetID, NetworkPacket packet, boolean isUrgent) {
+        if(!isRunning) return;
+        SocketSession session = sessions.get(clientNetID);
 
-                                collectedPackets.add(packet);
+        if((session != null) && isClientConnected(clientNetID)) {
+            PacketEvent.Out<?> packetEvent = new PacketEvent.Out<>(clientNetID, packet);
+            Server.get().getEventManager().call(packetEvent);
 
-                            } else {
-                                Server.getLogger(Server.NET_LOG).warn(String.format("Invalid packet received (Unrecognized type id: %s)", packetID));
-                            }
-                        }
-                    }
-                }
+            if(!packetEvent.isCancelled()) {
+                EncodedFrame frame = EncodedFrame.encode(packet);
+                queueFrame(session, frame, isUrgent);
+                frame.release();
+            }
+        }
+    }
 
-            } catch (IOException socketErr) {
-                disconnectClient(clientNetID, new PacketInOutDisconnect("An error occurred | "+socketErr.getMessage()));
+    @Override
+    public void broadcastDataPacket(NetworkPacket packet, boolean isUrgent) {
+        broadcastDataPacket(sessions.uuids(), packet, isUrgent);
+    }
 
-            } catch (InstantiationException | IllegalAccessException err) {
-                err.printStackTrace();
-                Server.getLogger(Server.NET_LOG).error("A packet type is broken in this case! Submit a bug report. :)");
-            }
+    @Override
+    public void broadcastDataPacket(Collection<UUID> clientNetIDs, NetworkPacket packet, boolean isUrgent) {
+        if(!isRunning) return;
+
+        PacketBroadcastEvent<?> broadcastEvent = new PacketBroadcastEvent<>(clientNetIDs, packet);
+        Server.get().getEventManager().call(broadcastEvent);
+        if(broadcastEvent.isCancelled()) return;
 
+        // Encoded once. Each recipient's queue just holds a reference to the same frame.
+        EncodedFrame frame = EncodedFrame.encode(packet);
+
+        for(UUID clientNetID: clientNetIDs) {
+            SocketSession session = sessions.get(clientNetID);
+            if(session != null) queueFrame(session, frame, isUrgent);
         }
 
-        return collectedPackets;
+        frame.release();
     }
 
     @Override
-    public synchronized void sendDataPacket(UUID clientNetID, NetworkPacket packet, boolean isUrgent) {
+    public void sendFrame(UUID clientNetID, EncodedFrame frame, boolean isUrgent) {
         if(!isRunning) return;
-        if(isClientConnected(clientNetID)) {
+        SocketSession session = sessions.get(clientNetID);
+        if(session != null) queueFrame(session, frame, isUrgent);
+    }
 
-            Socket client = clientSockets.get(clientNetID);
-            NetworkBuffer content = packet.encode();
-            content.reset();
+    protected void queueFrame(SocketSession session, EncodedFrame frame, boolean isUrgent) {
+        PacketCapture capture = PacketCapture.get();
+        if(capture != null) capture.recordFrame(session.getClient().getID(), CaptureRecord.OUTBOUND, frame.view());
 
-            PacketEvent.Out<?> packetEvent = new PacketEvent.Out<>(clientNetID, packet);
-            Server.get().getEventManager().call(packetEvent);
+        OutboundQueue queue = session.getWriter().getQueue();
 
-            if(!packetEvent.isCancelled()) {
-                byte[] sizeBytes = new byte[2];
-                byte[] contents = new byte[content.capacity()-2];
-                content.get(sizeBytes); // Split it into two, send the size first.
-                content.get(contents);
+        if(!queue.offer(frame, isUrgent)) {
+            long dropped = queue.getDroppedCount();
 
-                try {
-                    DataOutputStream outputStream = new DataOutputStream(client.getOutputStream());
-                    outputStream.write(sizeBytes);
-                    outputStream.write(contents);
+            // Logged less and less often so a backed up client can't flood the log.
+            if(Long.bitCount(dropped) == 1)
+                Server.getLogger(Server.NET_LOG).warn(String.format("Outbound queue for client %s is backed up. Dropped %s packet(s) so far.", session.getClient().getID().toString(), dropped));
+        }
+    }
 
+    @Override
+    public void flushOutbound() {
+        if(!isRunning) return;
+        long now = System.nanoTime();
 
-                } catch (SocketException err) {
-                    err.printStackTrace();
+        for(SocketSession session: sessions.values()) {
+            OutboundQueue queue = session.getWriter().getQueue();
+            queue.releaseHeld();
 
-                } catch (IOException ioErr) {
-                    throw new RuntimeException("An IOException was raised whilst sending a packet: " + ioErr.getMessage());
-                }
+            if((slowClientNanos > 0) && queue.isStalled(now, slowClientNanos)) evictClient(session.getClient().getID());
+        }
+
+        abortOverdueWriters(now);
+    }
+
+    // Writers can block forever on a client that isn't reading, so they only get so long.
+    protected void abortOverdueWriters(long now) {
+        for(Map.Entry<SocketWriterThread, Long> entry: closingWriters.entrySet()) {
+            SocketWriterThread writer = entry.getKey();
+
+            if(!writer.isAlive()) closingWriters.remove(writer);
+            else if(now - entry.getValue() >= 0) {
+                writer.abort();
+                closingWriters.remove(writer);
+            }
+        }
+    }
+
+    // The tick stops flushing once the server closes, so the last writers are waited on here instead.
+    protected void awaitClosingWriters() {
+        for(Map.Entry<SocketWriterThread, Long> entry: closingWriters.entrySet()) {
+            SocketWriterThread writer = entry.getKey();
+            long remaining = entry.getValue() - System.nanoTime();
+
+            try {
+                if(remaining > 0) TimeUnit.NANOSECONDS.timedJoin(writer, remaining);
+
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
             }
+
+            if(writer.isAlive()) writer.abort();
+            closingWriters.remove(writer);
         }
     }
 
+    /** Disconnects a client which has stayed over its outbound high watermark for too long. */
+    protected void evictClient(UUID clientNetID) {
+        SocketSession session = sessions.get(clientNetID);
+        if(session == null) return;
+
+        backpressure.recordEviction();
+        Server.getLogger(Server.NET_LOG).warn(String.format("Client %s couldn't keep up with its outbound packets. Disconnecting.", clientNetID.toString()));
+
+        disconnectClient(clientNetID, new PacketInOutDisconnect(SLOW_CLIENT_REASON));
+    }
+
     @Override
-    public synchronized void broadcastDataPacket(NetworkPacket packet, boolean isUrgent) {
-        if(!isRunning) return;
-        for(UUID uuid: getClientNetIDs()) sendDataPacket(uuid, packet, isUrgent);
+    public boolean canCompress(UUID clientNetID) {
+        if(!isRunning) return false;
+        int threshold = Server.get().getSettings().getOrDefault(ServerConfig.COMPRESSION_THRESHOLD);
+        return (threshold >= 0) && (sessions.get(clientNetID) != null);
     }
 
     @Override
-    public synchronized void disconnectClient(UUID clientNetID, PacketInOutDisconnect disconnectPacket) {
+    public boolean enableCompression(UUID clientNetID) {
+        if(!isRunning) return false;
+        int threshold = Server.get().getSettings().getOrDefault(ServerConfig.COMPRESSION_THRESHOLD);
+        SocketSession session = sessions.get(clientNetID);
+
+        if((threshold < 0) || (session == null)) return false;
+
+        FrameCompressor compressor = new FrameCompressor(threshold);
+        session.getDecoder().setCompressor(compressor);
+        session.getWriter().getQueue().setCompressor(compressor); // Closed by the writer once it's done.
+        return true;
+    }
+
+    @Override
+    public void disconnectClient(UUID clientNetID, PacketInOutDisconnect disconnectPacket) {
         if(!isRunning) return;
-        if(clientSockets.containsKey(clientNetID)) {
-            Socket conn = clientSockets.get(clientNetID);
-            NetworkClient client = this.clientProfiles.remove(clientNetID);
+        SocketSession session = sessions.remove(sessions.toSessionID(clientNetID));
+
+        // Removing the session is what claims the disconnect, so it only happens once.
+        if(session != null) {
+            Socket conn = session.getSocket();
+            NetworkClient client = session.getClient();
+            SocketWriterThread writer = session.getWriter();
+
+            if(writer != null) {
 
-            if(conn.isConnected() && (!conn.isClosed())) {
+                if((disconnectPacket != null) && conn.isConnected() && (!conn.isClosed())) {
+                    PacketEvent.Out<?> packetEvent = new PacketEvent.Out<>(clientNetID, disconnectPacket);
+                    Server.get().getEventManager().call(packetEvent);
 
-                if(disconnectPacket != null) {
-                    try { sendDataPacket(clientNetID, disconnectPacket, true); }
-                    catch (RuntimeException err) { Server.getLogger(Server.NET_LOG).warn("Client disconnected with a IOException"); }
+                    if(!packetEvent.isCancelled()) {
+                        EncodedFrame frame = EncodedFrame.encode(disconnectPacket);
+                        writer.getQueue().offer(frame, true);
+                        frame.release();
+                    }
                 }
 
+                // Writes anything left in the queue, then closes the socket. If the client
+                // isn't reading, the writer's aborted once the grace period is up.
+                writer.finish();
+                closingWriters.put(writer, System.nanoTime() + DISCONNECT_GRACE_NANOS);
+
+            } else {
                 try { conn.close(); }
                 catch (Exception err) { err.printStackTrace(); }
             }
@@ -224,19 +374,19 @@ public class NISocket implements NetworkInterface {
             if(client != null) {
                 client.setState(ConnectionState.DISCONNECTED);
                 Server.get().getEventManager().call(new ClientSocketStatusEvent.Disconnect(client));
+                dispatcher.removeClient(client);
             }
-
-            clientSockets.remove(clientNetID);
         }
     }
 
     @Override
-    public synchronized boolean isClientConnected(UUID clientNetId) {
+    public boolean isClientConnected(UUID clientNetId) {
         if(!isRunning) return false;
-        if(clientSockets.containsKey(clientNetId)) {
-            Socket socket = clientSockets.get(clientNetId);
+        SocketSession session = sessions.get(clientNetId);
+
+        if(session != null) {
 
-            if(!socket.isClosed()) {
+            if(!session.getSocket().isClosed()) {
                 return true;
             } else {
                 // Clean-up dead connection
@@ -248,18 +398,39 @@ public class NISocket implements NetworkInterface {
     }
 
     @Override
-    public synchronized boolean isRunning() {
+    public boolean isRunning() {
         return isRunning;
     }
 
     @Override
-    public synchronized ArrayList<UUID> getClientNetIDs() {
+    public BackpressureStats getBackpressureStats() {
+        return backpressure;
+    }
+
+    @Override
+    public AcceptStats getAcceptStats() {
+        return acceptStats;
+    }
+
+    public RateLimitPolicy getRateLimitPolicy() {
+        return rateLimits;
+    }
+
+    @Override
+    public ArrayList<UUID> getClientNetIDs() {
         if(!isRunning) return new ArrayList<>();
-        return new ArrayList<>(clientProfiles.keySet());
+        return sessions.uuids();
     }
 
     @Override
     public Optional<NetworkClient> getClient(UUID id) {
-        return Optional.ofNullable(clientProfiles.get(id));
+        SocketSession session = sessions.get(id);
+        return session == null ? Optional.empty() : Optional.of(session.getClient());
+    }
+
+    /** @return the client with the session ID, looked up without hashing. */
+    public Optional<NetworkClient> getClient(int sessionID) {
+        SocketSession session = sessions.get(sessionID);
+        return session == null ? Optional.empty() : Optional.of(session.getClient());
     }
 }
@@ -17,7 +17,8 @@ public class SocketListenerThread extends Thread {
     @Override
     public void run() {
 
-        while (networkInterface.isRunning()) {
+        // Reads block now, so this only loops when data arrives or the socket times out.
+        while (networkInterface.isRunning() && networkInterface.isClientConnected(clientUUID)) {
             networkInterface.checkForInboundPackets(clientUUID);
         }
 
@@ -0,0 +1,40 @@
+package net.cg360.spookums.server.network.netimpl.socket;
+
+import net.cg360.spookums.server.network.netimpl.frame.FrameDecoder;
+import net.cg360.spookums.server.network.packet.NetworkPacket;
+import net.cg360.spookums.server.network.user.NetworkClient;
+
+import java.net.Socket;
+import java.util.ArrayList;
+
+/**
+ * Everything NISocket keeps for a single connection, held in one
+ * SessionTable slot rather than spread over a map per field.
+ */
+public class SocketSession {
+
+    protected final Socket socket;
+    protected final NetworkClient client;
+    protected final SocketListenerThread listener;
+    protected final SocketWriterThread writer;
+    protected final FrameDecoder decoder;
+    protected final ArrayList<NetworkPacket> inbox; // Packets decoded during the current check.
+
+    public SocketSession(Socket socket, NetworkClient client, SocketListenerThread listener, SocketWriterThread writer, FrameDecoder decoder, ArrayList<NetworkPacket> inbox) {
+        this.socket = socket;
+        this.client = client;
+        this.listener = listener;
+        this.writer = writer;
+        this.decoder = decoder;
+        this.inbox = inbox;
+    }
+
+
+    public int getSessionID() { return client.getSessionID(); }
+    public Socket getSocket() { return socket; }
+    public NetworkClient getClient() { return client; }
+    public SocketListenerThread getListener() { return listener; }
+    public SocketWriterThread getWriter() { return writer; }
+    public FrameDecoder getDecoder() { return decoder; }
+    public ArrayList<NetworkPacket> getInbox() { return inbox; }
+}
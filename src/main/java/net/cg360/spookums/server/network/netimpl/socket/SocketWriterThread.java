@@ -0,0 +1,90 @@
+package net.cg360.spookums.server.network.netimpl.socket;
+
+import net.cg360.spookums.server.network.VanillaProtocol;
+import net.cg360.spookums.server.network.netimpl.NetworkInterface;
+import net.cg360.spookums.server.network.netimpl.frame.EncodedFrame;
+import net.cg360.spookums.server.network.netimpl.frame.OutboundQueue;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.UUID;
+
+/**
+ * Drains a single client's outbound queue onto its socket. Blocking
+ * writes only ever stall this thread, rather than every sender.
+ * Frames are buffered until the queue runs dry, so everything queued
+ * at once goes out in one write.
+ */
+public class SocketWriterThread extends Thread {
+
+    protected UUID clientUUID;
+    protected Socket socket;
+    protected OutboundQueue queue;
+    protected NetworkInterface networkInterface;
+
+    protected volatile boolean isFinishing;
+
+    public SocketWriterThread(UUID clientUUID, Socket socket, OutboundQueue queue, NetworkInterface netInf) {
+        this.clientUUID = clientUUID;
+        this.socket = socket;
+        this.queue = queue;
+        this.networkInterface = netInf;
+
+        this.isFinishing = false;
+        this.setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+
+        try {
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream(), VanillaProtocol.MAX_BUFFER_SIZE);
+
+            while (!socket.isClosed()) {
+                EncodedFrame frame = queue.take(0);
+
+                if(frame == null) {
+                    if(queue.isClosed()) break; // Closed and fully drained.
+                    continue;
+                }
+
+                try { frame.writeTo(out); }
+                finally { frame.release(); }
+
+                if(queue.isEmpty()) out.flush();
+            }
+
+        } catch (IOException socketErr) {
+            if(!isFinishing) networkInterface.disconnectClient(clientUUID, null);
+
+        } catch (InterruptedException ignored) { }
+
+        queue.close();
+        queue.clear(); // Anything left will never be written.
+        if(queue.getCompressor() != null) queue.getCompressor().close();
+
+        if(isFinishing) {
+            try { socket.close(); }
+            catch (IOException err) { err.printStackTrace(); }
+        }
+    }
+
+    /** Stops queueing new frames, writes out whatever is left, then closes the socket. */
+    public void finish() {
+        this.isFinishing = true;
+        this.queue.close();
+    }
+
+    /** Closes the socket without waiting for the queue to drain, unblocking any write in progress. */
+    public void abort() {
+        this.isFinishing = true;
+        this.queue.close();
+
+        try { socket.close(); }
+        catch (IOException err) { err.printStackTrace(); }
+    }
+
+    public OutboundQueue getQueue() { return queue; }
+}
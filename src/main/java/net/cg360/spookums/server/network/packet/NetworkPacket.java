@@ -3,8 +3,7 @@ package net.cg360.spookums.server.network.packet;
 import net.cg360.spookums.server.Server;
 import net.cg360.spookums.server.network.VanillaProtocol;
 import net.cg360.spookums.server.util.NetworkBuffer;
-
-import java.nio.ByteBuffer;
+import net.cg360.spookums.server.util.NetworkBufferPool;
 
 // Hi me o/
 // Create a NetworkHelper that replaces the ByteBuffer, keeping reading + writing
@@ -13,13 +12,16 @@ import java.nio.ByteBuffer;
 
 public abstract class NetworkPacket {
 
+    // Used whenever the packet isn't being encoded or decoded.
+    private static final NetworkBuffer NO_BODY = NetworkBuffer.allocate(0);
+
     private NetworkBuffer body;
     private byte packetID;
 
     protected int bodySize; // It's an int in java but an unsigned short in the packet :)
 
     public NetworkPacket(){
-        this.body = NetworkBuffer.wrap(new byte[VanillaProtocol.MAX_PACKET_SIZE - 3]); // 3 bytes are reserved for meta.
+        this.body = NO_BODY; // Only set during encoding/decoding, so idle packets don't hold a buffer.
         this.packetID = getPacketTypeID();
         this.bodySize = 0;
     }
@@ -28,22 +30,43 @@ public abstract class NetworkPacket {
     protected abstract int encodeBody(); // Takes data and puts it into the body buffer. returns: body size
     protected abstract void decodeBody(int inboundSize); // Takes data from the body buffer and converts it to fields.
 
+    /** @return the full frame (size bytes included) in a buffer of its own. */
     public final NetworkBuffer encode() {
-        this.bodySize = this.encodeBody();
-        int size = bodySize + 1;
-
-        NetworkBuffer data = NetworkBuffer.wrap(new byte[2+size]);
+        NetworkBufferPool pool = NetworkBufferPool.get();
+        NetworkBuffer scratch = pool == null ? NetworkBuffer.allocate(VanillaProtocol.MAX_PACKET_SIZE) : pool.lease();
 
-        data.putUnsignedShort(size);
-        data.put(packetID);
+        try {
+            byte[] frame = new byte[encode(scratch)];
+            scratch.reset();
+            scratch.get(frame);
+            return NetworkBuffer.wrap(frame);
 
-        this.body.reset(); // Go to the start of the body.
+        } finally {
+            if(pool != null) pool.release(scratch);
+        }
+    }
 
-        for(short i = 0; i < size; i++) {
-            data.put(body.get()); // Copy bytes from body up to the size
+    /**
+     * Encodes the full frame (size bytes included) into the start of the
+     * target. The body is written in place so nothing is copied.
+     * @return the length of the frame.
+     */
+    public final int encode(NetworkBuffer target) {
+        target.reset();
+        NetworkBuffer header = target.slice(3);
+        int bodyCapacity = Math.min(target.countBytesRemaining(), VanillaProtocol.MAX_PACKET_SIZE - 3); // 3 bytes are reserved for meta.
+
+        try {
+            this.body = target.slice(bodyCapacity);
+            this.bodySize = this.encodeBody();
+
+        } finally {
+            this.body = NO_BODY;
         }
 
-        return data;
+        header.putUnsignedShort(bodySize + 1);
+        header.put(packetID);
+        return 3 + bodySize;
     }
 
     public final NetworkPacket decode(NetworkBuffer fullPacket) {
@@ -52,14 +75,16 @@ public abstract class NetworkPacket {
         this.bodySize = fullPacket.getUnsignedShort() - 1; // Really should be converted to an int if it's unsigned
         this.packetID = fullPacket.get();
 
-        this.body = NetworkBuffer.wrap(new byte[VanillaProtocol.MAX_PACKET_SIZE - 3]);
+        // The body is a view of the frame rather than a copy. It's only
+        // valid during decodeBody() as the source may be reused.
+        try {
+            this.body = fullPacket.slice(bodySize);
+            this.decodeBody(this.bodySize);
 
-        for(int i = 0; i < bodySize; i++) {
-            this.body.put(fullPacket.get()); // Copy bytes
+        } finally {
+            this.body = NO_BODY;
         }
 
-        this.body.reset();
-        this.decodeBody(this.bodySize);
         return this;
     }
 
@@ -34,8 +34,25 @@ public class PacketInLogin extends NetworkPacket {
         return VanillaProtocol.PACKET_LOGIN;
     }
 
+    // Only used by test clients, the server never sends it.
     @Override
-    protected int encodeBody() { return 0; }
+    protected int encodeBody() {
+        this.getBodyData().reset();
+        int size = 1;
+        this.getBodyData().put(mode);
+
+        switch (mode) {
+            case 0:
+                size += this.getBodyData().putSmallUTF8String(username);
+                size += this.getBodyData().putSmallUTF8String(password);
+                break;
+            case 1:
+                size += this.getBodyData().putSmallUTF8String(token);
+                break;
+        }
+
+        return size;
+    }
 
     @Override
     protected void decodeBody(int inboundSize) {
@@ -59,6 +76,20 @@ public class PacketInLogin extends NetworkPacket {
     }
 
 
+    public PacketInLogin setCredentials(String username, String password) {
+        this.mode = 0;
+        this.username = username;
+        this.password = password;
+        return this;
+    }
+
+    public PacketInLogin setToken(String token) {
+        this.mode = 1;
+        this.token = token;
+        return this;
+    }
+
+
     public byte getMode() {
         return mode;
     }
@@ -28,9 +28,27 @@ public class PacketInUpdateAccount extends NetworkPacket {
         return VanillaProtocol.PACKET_UPDATE_ACCOUNT;
     }
 
+    // Only used by test clients, the server never sends it.
     @Override
     protected int encodeBody() {
-        return 0;
+        MicroBoolean flags1 = MicroBoolean.empty()
+                .setValue(0, createNewAccount)
+                .setValue(EXISTING_PASSWORD_ID, isFilledString(existingPassword))
+                .setValue(NEW_PASSWORD_ID, isFilledString(newPassword))
+                .setValue(EXISTING_USERNAME_ID, isFilledString(existingUsername))
+                .setValue(NEW_USERNAME_ID, isFilledString(newUsername));
+
+        this.getBodyData().reset();
+        this.getBodyData().put(flags1.getStorageByte());
+        int size = 1;
+
+        // Same order as they're read in.
+        size += this.getBodyData().putSmallUTF8String(existingPassword);
+        size += this.getBodyData().putSmallUTF8String(newPassword);
+        size += this.getBodyData().putSmallUTF8String(existingUsername);
+        size += this.getBodyData().putSmallUTF8String(newUsername);
+
+        return size;
     }
 
     @Override
@@ -86,6 +104,15 @@ public class PacketInUpdateAccount extends NetworkPacket {
     }
 
 
+    public PacketInUpdateAccount setCreatingNewAccount(boolean createNewAccount) { this.createNewAccount = createNewAccount; return this; }
+
+    public PacketInUpdateAccount setExistingPassword(String existingPassword) { this.existingPassword = existingPassword; return this; }
+    public PacketInUpdateAccount setNewPassword(String newPassword) { this.newPassword = newPassword; return this; }
+
+    public PacketInUpdateAccount setExistingUsername(String existingUsername) { this.existingUsername = existingUsername; return this; }
+    public PacketInUpdateAccount setNewUsername(String newUsername) { this.newUsername = newUsername; return this; }
+
+
     public boolean isCreatingNewAccount() { return createNewAccount; }
 
     public String getExistingPassword() { return existingPassword; }
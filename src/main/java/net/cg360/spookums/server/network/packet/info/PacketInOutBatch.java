@@ -0,0 +1,121 @@
+package net.cg360.spookums.server.network.packet.info;
+
+import net.cg360.spookums.server.exception.MalformedFrameException;
+import net.cg360.spookums.server.network.VanillaProtocol;
+import net.cg360.spookums.server.network.netimpl.frame.EncodedFrame;
+import net.cg360.spookums.server.network.netimpl.frame.FrameDecoder;
+import net.cg360.spookums.server.network.packet.NetworkPacket;
+import net.cg360.spookums.server.util.NetworkBuffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Carries several whole frames so they can be sent in a single write.
+ * Batches cannot contain other batches.
+ *
+ * <h3>Format:</h3>
+ * x byte(s) - Frames one after another, each with their own size + packet ID (length = body size)
+ */
+public class PacketInOutBatch extends NetworkPacket {
+
+    public static final int MAX_CONTENT_SIZE = VanillaProtocol.MAX_PACKET_SIZE - 3;
+
+    protected ArrayList<EncodedFrame> frames;
+    protected int contentSize;
+
+
+    public PacketInOutBatch() {
+        this.frames = new ArrayList<>();
+        this.contentSize = 0;
+    }
+
+
+    /**
+     * Adds a frame to the batch, taking a reference to it.
+     * @return false if the frame wouldn't fit or is a batch itself.
+     */
+    public boolean addFrame(EncodedFrame frame) {
+        if(frame.getPacketID() == VanillaProtocol.PACKET_PROTOCOL_BATCH) return false;
+        if(contentSize + frame.getLength() > MAX_CONTENT_SIZE) return false;
+
+        this.frames.add(frame.retain());
+        this.contentSize += frame.getLength();
+        return true;
+    }
+
+    /** Gives back the batch's reference to every frame it holds. */
+    public void releaseFrames() {
+        for(EncodedFrame frame: frames) frame.release();
+        this.frames.clear();
+        this.contentSize = 0;
+    }
+
+
+    /**
+     * Reads the next frame from the content of a batch without copying it.
+     * @return a view of the frame, size bytes included.
+     */
+    public static NetworkBuffer nextFrame(NetworkBuffer content) {
+        if(!content.canReadBytesAhead(FrameDecoder.SIZE_BYTES))
+            throw new MalformedFrameException("Batch ended part way through a frame's size");
+
+        int size = content.getUnsignedShort();
+        if((size < 1) || !content.canReadBytesAhead(size))
+            throw new MalformedFrameException("Batch contained a frame with an invalid size of " + size + " bytes");
+
+        content.rewind(FrameDecoder.SIZE_BYTES);
+        return content.slice(FrameDecoder.SIZE_BYTES + size);
+    }
+
+
+
+    @Override
+    protected byte getPacketTypeID() {
+        return VanillaProtocol.PACKET_PROTOCOL_BATCH;
+    }
+
+    @Override
+    protected int encodeBody() {
+        this.getBodyData().reset();
+        for(EncodedFrame frame: frames) frame.copyTo(this.getBodyData());
+
+        return contentSize;
+    }
+
+    @Override
+    protected void decodeBody(int inboundSize) {
+        this.releaseFrames();
+        this.getBodyData().reset();
+
+        // The body is only a view of the inbound frame so each frame is copied out.
+        while (this.getBodyData().countBytesRemaining() > 0) {
+            NetworkBuffer frame = nextFrame(this.getBodyData());
+
+            if(frame.peek(FrameDecoder.SIZE_BYTES) == VanillaProtocol.PACKET_PROTOCOL_BATCH)
+                throw new MalformedFrameException("Batches cannot contain other batches");
+
+            byte[] copy = new byte[frame.capacity()];
+            frame.get(copy);
+
+            this.frames.add(EncodedFrame.wrap(copy, 0, copy.length));
+            this.contentSize += copy.length;
+        }
+    }
+
+
+    public List<EncodedFrame> getFrames() { return Collections.unmodifiableList(frames); }
+    public int getFrameCount() { return frames.size(); }
+    public int getContentSize() { return contentSize; }
+
+
+
+    @Override
+    public String toString() {
+        return "Content: {" +
+                "frames=" + frames.size() +
+                ", size=" + contentSize +
+                "}";
+    }
+}
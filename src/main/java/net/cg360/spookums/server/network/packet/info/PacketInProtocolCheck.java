@@ -7,12 +7,15 @@ public class PacketInProtocolCheck extends NetworkPacket {
 
     protected boolean isValid;
     protected int protocolVersion;
+    protected int capabilities; // Optional - older clients don't send any.
 
     public PacketInProtocolCheck() { this(VanillaProtocol.PROTOCOL_ID); }
+    public PacketInProtocolCheck(short protocolVersion) { this(protocolVersion, 0); }
 
-    public PacketInProtocolCheck(short protocolVersion) {
+    public PacketInProtocolCheck(short protocolVersion, int capabilities) {
         this.isValid = true;
         this.protocolVersion = protocolVersion;
+        this.capabilities = capabilities;
     }
 
     @Override
@@ -27,8 +30,9 @@ public class PacketInProtocolCheck extends NetworkPacket {
 
         this.getBodyData().reset();
         this.getBodyData().putUnsignedShort(this.protocolVersion);
+        this.getBodyData().putUnsignedByte(this.capabilities);
 
-        return 2; // Update if more is added
+        return 3; // Update if more is added
     }
 
     @Override
@@ -43,6 +47,7 @@ public class PacketInProtocolCheck extends NetworkPacket {
 
             this.getBodyData().reset();
             this.protocolVersion = this.getBodyData().getUnsignedShort();
+            this.capabilities = (inboundSize >= 3) ? this.getBodyData().getUnsignedByte() : 0;
         }
     }
 
@@ -51,6 +56,14 @@ public class PacketInProtocolCheck extends NetworkPacket {
         return this.protocolVersion;
     }
 
+    public int getCapabilities() {
+        return this.capabilities;
+    }
+
+    public boolean hasCapability(int capability) {
+        return (this.capabilities & capability) == capability;
+    }
+
     public boolean isValid() {
         return this.isValid;
     }
@@ -35,13 +35,13 @@ public class PacketOutProtocolError extends NetworkPacket {
         this.getBodyData().putUnsignedShort(requiredProtocolVersion);
         int strSize = this.getBodyData().putUnboundUTF8String(targetString);
 
-        return strSize + 1; // Update if more is added
+        return 2 + strSize; // Update if more is added
     }
 
     @Override
     protected void decodeBody(int inboundSize) {
         this.getBodyData().reset();
         this.requiredProtocolVersion = this.getBodyData().getUnsignedShort();
-        this.requiredClientVersionString = this.getBodyData().getUnboundUTF8String(inboundSize - 1);
+        this.requiredClientVersionString = this.getBodyData().getUnboundUTF8String(inboundSize - 2);
     }
 }
@@ -1,13 +1,43 @@
 package net.cg360.spookums.server.network.packet.info;
 
 import net.cg360.spookums.server.network.VanillaProtocol;
-import net.cg360.spookums.server.network.packet.type.PacketInOutEmpty;
+import net.cg360.spookums.server.network.packet.NetworkPacket;
 
-public class PacketOutProtocolSuccess extends PacketInOutEmpty {
+/**
+ * Confirms the client is compatible.
+ *
+ * <h3>Format:</h3>
+ * 1 byte - The capabilities the server agreed to use. 0 if none (or the client sent none.)
+ */
+public class PacketOutProtocolSuccess extends NetworkPacket {
+
+    protected int capabilities;
+
+    public PacketOutProtocolSuccess() { this(0); }
+
+    public PacketOutProtocolSuccess(int capabilities) {
+        this.capabilities = capabilities;
+    }
 
     @Override
     protected byte getPacketTypeID() {
         return VanillaProtocol.PACKET_PROTOCOL_SUCCESS;
     }
 
+    @Override
+    protected int encodeBody() {
+        this.getBodyData().reset();
+        this.getBodyData().putUnsignedByte(this.capabilities);
+        return 1;
+    }
+
+    @Override
+    protected void decodeBody(int inboundSize) {
+        this.getBodyData().reset();
+        this.capabilities = (inboundSize >= 1) ? this.getBodyData().getUnsignedByte() : 0;
+    }
+
+
+    public int getCapabilities() { return capabilities; }
+    public boolean hasCapability(int capability) { return (this.capabilities & capability) == capability; }
 }
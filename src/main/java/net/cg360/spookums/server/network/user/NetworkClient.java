@@ -7,12 +7,22 @@ import java.util.UUID;
 
 public class NetworkClient {
 
+    public static final int NO_PROTOCOL = -1;
+
+    protected int sessionID; // Only meaningful to the NetworkInterface that created it. -1 if it has none.
     protected UUID uuid;
     protected ConnectionState state;
+    protected volatile int protocolVersion; // Set by the protocol check. Read by the I/O threads to pick a packet table.
 
     public NetworkClient(UUID uuid) {
+        this(-1, uuid);
+    }
+
+    public NetworkClient(int sessionID, UUID uuid) {
+        this.sessionID = sessionID;
         this.uuid = uuid;
         this.state = ConnectionState.OPEN;
+        this.protocolVersion = NO_PROTOCOL;
     }
 
     public void send(NetworkPacket packet, boolean isUrgent) {
@@ -29,6 +39,14 @@ public class NetworkClient {
         return this;
     }
 
+    public NetworkClient setProtocolVersion(int protocolVersion) {
+        this.protocolVersion = protocolVersion;
+        return this;
+    }
+
+    public int getSessionID() { return sessionID; }
     public UUID getID() { return uuid; }
     public ConnectionState getState() {return state;}
+    /** @return the protocol version agreed during the protocol check, or NO_PROTOCOL. */
+    public int getProtocolVersion() { return protocolVersion; }
 }
@@ -1,14 +1,17 @@
 package net.cg360.spookums.server.util;
 
-import java.util.UUID;
-
 /**
  * A utility class which handles a cooldown-type timer with
  * a post-action.
+ *
+ * Timers are queued on the shared TimerService rather than each getting
+ * a thread, and each start is told apart by a counter rather than a
+ * random token, so a cooldown costs the same few bytes however many
+ * exist at once. The actions run on the timer thread, so should be short.
  */
 public class Cooldown {
 
-    protected UUID cooldownToken;
+    protected long cooldownGeneration; // Bumped by each start() and invalidate(). Only the latest start expires.
     protected float cooldownDelay;
     protected boolean isCooldownActive;
 
@@ -17,6 +20,7 @@ public class Cooldown {
 
     public Cooldown self() { return this; }
     public Cooldown() {
+        this.cooldownGeneration = 0;
         this.cooldownDelay = 5;
         this.isCooldownActive = false;
 
@@ -27,34 +31,21 @@ public class Cooldown {
 
     /** Starts the cooldown timer. */
     public synchronized void start() {
-        UUID token = UUID.randomUUID();
-        float cooldown = self().cooldownDelay;
-
-        new Thread() {
-            @Override
-            public void run() {
-                try {
-                    self().isCooldownActive = true;
-                    self().cooldownToken = token;
-
-                    long timer = (long) (cooldown * 1000);
-                    if(timer > 0) synchronized (this) { this.wait(timer); }
+        long generation = ++this.cooldownGeneration;
+        long timer = (long) (this.cooldownDelay * 1000000000d);
 
-                    synchronized (self()) {
-                        if (self().cooldownToken.equals(token)) {
-                            self().isCooldownActive = false;
-                            self().actionExpire.run();
-                        } else {
-                            self().actionReplaced.run();
-                        }
-                    }
+        this.isCooldownActive = true;
+        TimerService.schedule(() -> this.end(generation), timer);
+    }
 
-                } catch (InterruptedException ignored) {
-                } catch (Exception err) {
-                    err.printStackTrace();
-                }
-            }
-        }.start();
+    // Called by the timer once the delay of the start with the given generation is up.
+    protected synchronized void end(long generation) {
+        if (this.cooldownGeneration == generation) {
+            this.isCooldownActive = false;
+            this.actionExpire.run();
+        } else {
+            this.actionReplaced.run();
+        }
     }
 
     /**
@@ -63,7 +54,11 @@ public class Cooldown {
      * to replace the existing one.
      */
     public synchronized void invalidate() {
-        this.cooldownToken = UUID.randomUUID();
+        this.cooldownGeneration++;
+    }
+
+    public synchronized boolean isCooldownActive() {
+        return isCooldownActive;
     }
 
     public Cooldown setCooldownDelay(float cooldownDelay) {
@@ -0,0 +1,115 @@
+package net.cg360.spookums.server.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A NetworkBuffer backed by a ByteBuffer rather than an array, usually
+ * in direct memory so channels can read and write it without copying
+ * through a temporary buffer. Reads and writes use absolute indexes so
+ * the ByteBuffer's own position and limit are never touched.
+ */
+public class DirectNetworkBuffer extends NetworkBuffer {
+
+    protected final ByteBuffer data;
+    protected ByteBuffer cursor; // Duplicate of data used for bulk copies. Created when first needed.
+
+    public DirectNetworkBuffer(ByteBuffer data) {
+        this(data, 0, data.capacity());
+    }
+
+    protected DirectNetworkBuffer(ByteBuffer data, int offset, int length) {
+        super(offset, length);
+        if((offset < 0) || (length < 0) || (offset + length > data.capacity()))
+            throw new IndexOutOfBoundsException("View lies outside of the backing buffer.");
+
+        this.data = data;
+        this.cursor = null;
+    }
+
+
+
+    @Override
+    public byte peek(int index) {
+        if((index < 0) || (index >= length)) throw new IndexOutOfBoundsException("Index lies outside of the buffer.");
+        return data.get(offset + index);
+    }
+
+    @Override
+    public byte[] array() {
+        throw new UnsupportedOperationException("A direct buffer has no backing array.");
+    }
+
+    @Override
+    public int arrayOffset() {
+        throw new UnsupportedOperationException("A direct buffer has no backing array.");
+    }
+
+    @Override
+    public boolean hasArray() {
+        return false;
+    }
+
+    @Override
+    public boolean isDirect() {
+        return data.isDirect();
+    }
+
+    @Override
+    public ByteBuffer asByteBuffer() {
+        ByteBuffer view = data.duplicate();
+        view.limit(offset + length).position(offset);
+        return view.slice();
+    }
+
+
+
+    @Override
+    protected byte fetchRawByte() {
+        byte b = data.get(offset + pointerIndex);
+        incrementPointer();
+        return b;
+    }
+
+    @Override
+    protected void fetchRawBytes(byte[] target, int targetOffset, int byteCount) {
+        positionCursor().get(target, targetOffset, byteCount);
+        pointerIndex += byteCount;
+    }
+
+    @Override
+    protected void writeByte(byte b) {
+        data.put(offset + pointerIndex, b);
+        incrementPointer();
+    }
+
+    @Override
+    protected void writeBytes(byte[] src, int srcOffset, int byteCount) {
+        positionCursor().put(src, srcOffset, byteCount);
+        pointerIndex += byteCount;
+    }
+
+    @Override
+    protected String fetchRawUTF8String(int byteCount) {
+        return new String(fetchRawBytes(byteCount), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected NetworkBuffer createView(int viewOffset, int viewLength) {
+        return new DirectNetworkBuffer(data, viewOffset, viewLength);
+    }
+
+    @Override
+    protected int backingCapacity() {
+        return data.capacity();
+    }
+
+
+    protected ByteBuffer positionCursor() {
+        if(cursor == null) cursor = data.duplicate();
+
+        cursor.limit(cursor.capacity());
+        cursor.position(offset + pointerIndex);
+        return cursor;
+    }
+}
@@ -1,6 +1,7 @@
 package net.cg360.spookums.server.util;
 
 import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 /**
@@ -10,28 +11,93 @@ import java.nio.charset.StandardCharsets;
  * consistent format.
  *
  * This fixed a lot of the issues I was having when transferring data so nice
+ *
+ * Backed by a byte array on the heap. See DirectNetworkBuffer for one
+ * backed by direct memory. All raw access goes through the protected
+ * fetch/write methods so the two behave identically.
  */
 public class NetworkBuffer {
 
-    public static int MAX_UNSIGNED_SHORT_VALUE = (int) (Math.pow(2, 16) - 1);
-    public static short MAX_UNSIGNED_BYTE_VALUE = (short) (Math.pow(2, 8) - 1);
+    public static int MAX_UNSIGNED_SHORT_VALUE = (1 << 16) - 1;
+    public static short MAX_UNSIGNED_BYTE_VALUE = (1 << 8) - 1;
+
+    public static final int MAX_VAR_INT_SIZE = 5;
+    public static final int MAX_VAR_LONG_SIZE = 10;
 
-    protected byte[] buffer;
-    protected int pointerIndex;
+    protected byte[] buffer; // Null if the buffer isn't backed by an array.
+    protected int offset; // Where this buffer starts within the backing array. Non-zero for views.
+    protected int length;
+    protected int pointerIndex; // Relative to the offset.
 
     protected NetworkBuffer(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    protected NetworkBuffer(byte[] bytes, int offset, int length) {
+        if((offset < 0) || (length < 0) || (offset + length > bytes.length))
+            throw new IndexOutOfBoundsException("View lies outside of the backing array.");
+
         this.buffer = bytes;
+        this.offset = offset;
+        this.length = length;
+        this.pointerIndex = 0;
+    }
+
+    // For implementations with their own storage.
+    protected NetworkBuffer(int offset, int length) {
+        this.buffer = null;
+        this.offset = offset;
+        this.length = length;
         this.pointerIndex = 0;
     }
 
-    // The 2 methods below are just nice ways of instantiating a NetworkBuffer, similar to a ByteBuffer
+    // The methods below are just nice ways of instantiating a NetworkBuffer, similar to a ByteBuffer
 
     public static NetworkBuffer wrap(byte... bytes) { return new NetworkBuffer(bytes); }
     public static NetworkBuffer allocate(int size) { return new NetworkBuffer(new byte[size]); }
 
+    /** Wraps a section of an array without copying it. Changes to either are visible in both. */
+    public static NetworkBuffer wrap(byte[] bytes, int offset, int length) { return new NetworkBuffer(bytes, offset, length); }
+
+    public static NetworkBuffer allocateDirect(int size) { return new DirectNetworkBuffer(ByteBuffer.allocateDirect(size)); }
+
+
+    /**
+     * Creates a view of the next few bytes from the pointer, sharing the
+     * same backing array. The pointer is moved past the sliced bytes.
+     */
+    public NetworkBuffer slice(int byteCount) {
+        if(!canReadBytesAhead(byteCount)) throw new BufferUnderflowException();
+
+        NetworkBuffer view = createView(offset + pointerIndex, byteCount);
+        pointerIndex += byteCount;
+        return view;
+    }
+
+    /**
+     * Moves this buffer to cover a different section of the same backing
+     * array, resetting the pointer. Lets a single view be reused rather
+     * than creating one for every frame.
+     */
+    public NetworkBuffer reframe(int offset, int length) {
+        if((offset < 0) || (length < 0) || (offset + length > backingCapacity()))
+            throw new IndexOutOfBoundsException("View lies outside of the backing array.");
+
+        this.offset = offset;
+        this.length = length;
+        this.pointerIndex = 0;
+        return this;
+    }
+
+    /** @return a byte at an index from the start of the buffer without moving the pointer. */
+    public byte peek(int index) {
+        if((index < 0) || (index >= length)) throw new IndexOutOfBoundsException("Index lies outside of the buffer.");
+        return buffer[offset + index];
+    }
+
     /** Counts the amount of bytes between the pointer (inclusive) and the end of the buffer. */
     public int countBytesRemaining() {
-        return buffer.length - pointerIndex;
+        return length - pointerIndex;
     }
 
     /** Checks if the buffer has a provided number of bytes left before the end. */
@@ -52,7 +118,7 @@ public class NetworkBuffer {
 
     /** Moves the pointer forward a set number of positions. */
     public void skip(int delta) {
-        pointerIndex = Math.min(buffer.length - 1, pointerIndex + delta);
+        pointerIndex = Math.min(length - 1, pointerIndex + delta);
     }
 
     /** Rewinds the pointer by 1 position. */
@@ -66,7 +132,34 @@ public class NetworkBuffer {
     }
 
     public int capacity() {
-        return this.buffer.length;
+        return this.length;
+    }
+
+    /** @return the array backing this buffer. Changes to it are visible in the buffer. */
+    public byte[] array() {
+        return this.buffer;
+    }
+
+    /** @return true if array() can be used. False for direct buffers. */
+    public boolean hasArray() {
+        return true;
+    }
+
+    public boolean isDirect() {
+        return false;
+    }
+
+    /**
+     * @return a ByteBuffer over the same bytes as this buffer (from 0 to
+     * the capacity) for use with channels. Changes to either are visible in both.
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(buffer, offset, length).slice();
+    }
+
+    /** @return where this buffer starts within its backing array. */
+    public int arrayOffset() {
+        return this.offset;
     }
 
     protected void incrementPointer() {
@@ -78,7 +171,7 @@ public class NetworkBuffer {
 
     /** Unsafe way to fetch a byte. Make sure to check first :) */
     protected byte fetchRawByte() {
-        byte b = buffer[pointerIndex];
+        byte b = buffer[offset + pointerIndex];
         incrementPointer();
         return b;
     }
@@ -86,23 +179,48 @@ public class NetworkBuffer {
     /** Unsafe way to fetch a series of bytes. Make sure to check first :) */
     protected byte[] fetchRawBytes(int byteCount) {
         byte[] bytes = new byte[byteCount];
-
-        for(int i = 0; i < byteCount; i++) {
-            bytes[i] = buffer[pointerIndex];
-            incrementPointer();
-        }
+        fetchRawBytes(bytes, 0, byteCount);
         return bytes;
     }
 
+    /** Unsafe way to fetch a series of bytes into an array. Make sure to check first :) */
+    protected void fetchRawBytes(byte[] target, int targetOffset, int byteCount) {
+        System.arraycopy(buffer, offset + pointerIndex, target, targetOffset, byteCount);
+        pointerIndex += byteCount;
+    }
+
     /** Unsafe way to write a byte. Make sure to check first :) */
     protected void writeByte(byte b) {
-        buffer[pointerIndex] = b;
+        buffer[offset + pointerIndex] = b;
         incrementPointer();
     }
 
     /** Unsafe way to write a series of bytes. Make sure to check first :) */
     protected void writeBytes(byte[] bytes) {
-        for(byte b : bytes) writeByte(b);
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    /** Unsafe way to write a series of bytes from an array. Make sure to check first :) */
+    protected void writeBytes(byte[] src, int srcOffset, int byteCount) {
+        System.arraycopy(src, srcOffset, buffer, offset + pointerIndex, byteCount);
+        pointerIndex += byteCount;
+    }
+
+    /** Unsafe way to decode a UTF-8 string. Make sure to check first :) */
+    protected String fetchRawUTF8String(int byteCount) {
+        String string = new String(buffer, offset + pointerIndex, byteCount, StandardCharsets.UTF_8);
+        pointerIndex += byteCount;
+        return string;
+    }
+
+    /** Creates a buffer over a section of the same storage. */
+    protected NetworkBuffer createView(int viewOffset, int viewLength) {
+        return new NetworkBuffer(buffer, viewOffset, viewLength);
+    }
+
+    /** @return the size of the storage backing this buffer, views included. */
+    protected int backingCapacity() {
+        return buffer.length;
     }
 
     // Could be signed, unsigned, or even a string character.
@@ -117,7 +235,7 @@ public class NetworkBuffer {
     /** Fetches a quantity of bytes from the buffer without converting them. */
     public void get(byte[] target) {
         if(canReadBytesAhead(target.length)) {
-            for(int i = 0; i < target.length; i++) target[i] = fetchRawByte();
+            fetchRawBytes(target, 0, target.length);
             return;
         }
         throw new BufferUnderflowException();
@@ -156,15 +274,100 @@ public class NetworkBuffer {
         throw new BufferUnderflowException();
     }
 
+    /** @return a signed 32-bit integer (big-endian) from the current pointer position in the network buffer. */
+    public int getInt() {
+        if(canReadBytesAhead(4)) {
+            return ((fetchRawByte() & 0xFF) << 24)
+                 | ((fetchRawByte() & 0xFF) << 16)
+                 | ((fetchRawByte() & 0xFF) << 8)
+                 |  (fetchRawByte() & 0xFF);
+        }
+        throw new BufferUnderflowException();
+    }
+
+    /** @return a signed 64-bit integer (big-endian) from the current pointer position in the network buffer. */
+    public long getLong() {
+        if(canReadBytesAhead(8)) {
+            long upper = getInt() & 0xFFFFFFFFL;
+            long lower = getInt() & 0xFFFFFFFFL;
+            return (upper << 32) | lower;
+        }
+        throw new BufferUnderflowException();
+    }
+
+    /** @return an IEEE 754 single precision float (big-endian) from the current pointer position in the network buffer. */
+    public float getFloat() {
+        return Float.intBitsToFloat(getInt());
+    }
+
+    /** @return an IEEE 754 double precision float (big-endian) from the current pointer position in the network buffer. */
+    public double getDouble() {
+        return Double.longBitsToDouble(getLong());
+    }
+
+    /**
+     * @return an unsigned LEB128 varint (1-5 bytes, low 7 bits first) from the current
+     * pointer position in the network buffer. Values over 2^31 - 1 come back negative.
+     */
+    public int getVarInt() {
+        int value = 0;
+
+        for(int i = 0; i < MAX_VAR_INT_SIZE - 1; i++) {
+            byte b = get();
+            value |= (b & 0x7F) << (7 * i);
+            if((b & 0x80) == 0) return value;
+        }
+
+        // The last byte only has room for the top 4 bits. Anything more is out of range (or overlong).
+        byte last = get();
+        if((last & 0xF0) != 0) throw new IllegalStateException("VarInt is out of range or longer than " + MAX_VAR_INT_SIZE + " bytes");
+        return value | (last << 28);
+    }
+
+    /** @return an unsigned LEB128 varint (1-10 bytes, low 7 bits first) from the current pointer position in the network buffer. */
+    public long getVarLong() {
+        long value = 0;
+
+        for(int i = 0; i < MAX_VAR_LONG_SIZE - 1; i++) {
+            byte b = get();
+            value |= (long) (b & 0x7F) << (7 * i);
+            if((b & 0x80) == 0) return value;
+        }
+
+        // The last byte only has room for the top bit.
+        byte last = get();
+        if((last & 0xFE) != 0) throw new IllegalStateException("VarLong is out of range or longer than " + MAX_VAR_LONG_SIZE + " bytes");
+        return value | ((long) last << 63);
+    }
+
+    /** @return a zig-zag encoded signed varint from the current pointer position in the network buffer. */
+    public int getSignedVarInt() {
+        int raw = getVarInt();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    /** @return a zig-zag encoded signed varlong from the current pointer position in the network buffer. */
+    public long getSignedVarLong() {
+        long raw = getVarLong();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    /**
+     * @param fractionalBits the amount of bits used for the fraction. Must match the value used to write it.
+     * @return a quantized fixed-point number (a zig-zag varlong of value * 2^fractionalBits)
+     * from the current pointer position in the network buffer.
+     */
+    public double getFixedPoint(int fractionalBits) {
+        if((fractionalBits < 0) || (fractionalBits > 52)) throw new IllegalArgumentException("Fractional bits must be between 0 and 52");
+        return getSignedVarLong() / (double) (1L << fractionalBits);
+    }
+
     /** @return a UTF8 formatted string (<256 bytes length) from the current pointer position in the network buffer. */
     public String getSmallUTF8String() {
         if(canReadBytesAhead(1)) {
             short length = getUnsignedByte();
 
-            if(canReadBytesAhead(length)) {
-                byte[] strBytes = fetchRawBytes(length);
-                return new String(strBytes, StandardCharsets.UTF_8);
-            }
+            if(canReadBytesAhead(length)) return fetchRawUTF8String(length);
         }
 
         throw new BufferUnderflowException();
@@ -172,10 +375,7 @@ public class NetworkBuffer {
 
     /** @return a UTF8 formatted string (the remaining length of the buffer) from the current pointer position in the network buffer. */
     public String getUnboundUTF8String(int byteCount) {
-        if(canReadBytesAhead(byteCount)) {
-           byte[] strBytes = fetchRawBytes(byteCount);
-           return new String(strBytes, StandardCharsets.UTF_8);
-        }
+        if(canReadBytesAhead(byteCount)) return fetchRawUTF8String(byteCount);
         throw new BufferUnderflowException();
     }
 
@@ -185,7 +385,16 @@ public class NetworkBuffer {
     /** Sets bytes to the buffer without converting it.*/
     public boolean put(byte... b) {
         if(canReadBytesAhead(b.length)) {
-            for (byte value : b) writeByte(value);
+            writeBytes(b);
+            return true;
+        }
+        return false;
+    }
+
+    /** Sets a range of bytes from an array to the buffer without converting it.*/
+    public boolean put(byte[] src, int srcOffset, int length) {
+        if(canReadBytesAhead(length)) {
+            writeBytes(src, srcOffset, length);
             return true;
         }
         return false;
@@ -204,19 +413,7 @@ public class NetworkBuffer {
         if(value < 0) throw new IllegalArgumentException("Provided an 'unsigned byte' with a value less than 0");
 
         if(canReadBytesAhead(1)) {
-            byte rawByte = 0x00;
-            int degradedValue = value;
-
-            for (byte i = 7; i >= 0; i--) {
-                int valCheck = (int) Math.pow(2, i);
-
-                if ((degradedValue - valCheck) >= 0) {
-                    degradedValue -= valCheck;
-                    rawByte |= 1 << i;
-                }
-            }
-
-            writeByte(rawByte);
+            writeByte((byte) value);
             return true;
         }
 
@@ -224,33 +421,139 @@ public class NetworkBuffer {
     }
 
     public boolean putUnsignedShort(int value) {
-        if(value >= Math.pow(2, 16)) throw new IllegalArgumentException("Provided an 'unsigned short' with a value greater than 2^16");
+        if(value > MAX_UNSIGNED_SHORT_VALUE) throw new IllegalArgumentException("Provided an 'unsigned short' with a value greater than 2^16");
         if(value < 0) throw new IllegalArgumentException("Provided an 'unsigned short' with a value less than 0");
 
         if(canReadBytesAhead(2)) {
-            short rawShort = 0x0000;
-            int degradedValue = value;
+            writeByte((byte) (value >>> 8));
+            writeByte((byte) value);
+            return true;
+        }
 
-            for (byte i = 15; i >= 0; i--) {
-                double valCheck = Math.pow(2, i);
+        return false;
+    }
 
-                if ((degradedValue - valCheck) >= 0) {
-                    degradedValue -= valCheck;
-                    rawShort |= 1 << i;
-                }
-            }
+    /** Writes a signed 32-bit integer, big-endian. */
+    public boolean putInt(int value) {
+        if(canReadBytesAhead(4)) {
+            writeByte((byte) (value >>> 24));
+            writeByte((byte) (value >>> 16));
+            writeByte((byte) (value >>> 8));
+            writeByte((byte) value);
+            return true;
+        }
 
-            byte bUpper = (byte) ((rawShort & 0xFF00) >> 8);
-            byte bLower = (byte) (rawShort & 0x00FF);
+        return false;
+    }
 
-            writeByte(bUpper);
-            writeByte(bLower);
+    /** Writes a signed 64-bit integer, big-endian. */
+    public boolean putLong(long value) {
+        if(canReadBytesAhead(8)) {
+            putInt((int) (value >>> 32));
+            putInt((int) value);
             return true;
         }
 
         return false;
     }
 
+    /** Writes an IEEE 754 single precision float, big-endian. */
+    public boolean putFloat(float value) {
+        return putInt(Float.floatToIntBits(value));
+    }
+
+    /** Writes an IEEE 754 double precision float, big-endian. */
+    public boolean putDouble(double value) {
+        return putLong(Double.doubleToLongBits(value));
+    }
+
+    /**
+     * Writes an unsigned LEB128 varint, 7 bits per byte with the lowest
+     * bits first. Negative values are treated as unsigned and take 5 bytes,
+     * so use putSignedVarInt() for anything which could be negative.
+     * @return the amount of bytes written. 0 if there wasn't enough space.
+     */
+    public int putVarInt(int value) {
+        int size = getVarIntSize(value);
+        if(!canReadBytesAhead(size)) return 0;
+
+        while ((value & ~0x7F) != 0) {
+            writeByte((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        writeByte((byte) value);
+        return size;
+    }
+
+    /**
+     * Writes an unsigned LEB128 varlong, 7 bits per byte with the lowest bits first.
+     * @return the amount of bytes written. 0 if there wasn't enough space.
+     */
+    public int putVarLong(long value) {
+        int size = getVarLongSize(value);
+        if(!canReadBytesAhead(size)) return 0;
+
+        while ((value & ~0x7FL) != 0) {
+            writeByte((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        writeByte((byte) value);
+        return size;
+    }
+
+    /**
+     * Writes a zig-zag encoded signed varint, so small negative values stay small.
+     * (0 -> 0, -1 -> 1, 1 -> 2, -2 -> 3, ...)
+     * @return the amount of bytes written. 0 if there wasn't enough space.
+     */
+    public int putSignedVarInt(int value) {
+        return putVarInt((value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Writes a zig-zag encoded signed varlong.
+     * @return the amount of bytes written. 0 if there wasn't enough space.
+     */
+    public int putSignedVarLong(long value) {
+        return putVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Writes a quantized fixed-point number as a zig-zag varlong of value * 2^fractionalBits,
+     * rounded to the nearest step. e.g. 8 fractional bits stores positions to 1/256th.
+     * @param fractionalBits the amount of bits used for the fraction, 0-52.
+     * @return the amount of bytes written. 0 if there wasn't enough space.
+     */
+    public int putFixedPoint(double value, int fractionalBits) {
+        if((fractionalBits < 0) || (fractionalBits > 52)) throw new IllegalArgumentException("Fractional bits must be between 0 and 52");
+        if(Double.isNaN(value) || Double.isInfinite(value)) throw new IllegalArgumentException("Cannot quantize a non-finite value");
+
+        return putSignedVarLong(Math.round(value * (1L << fractionalBits)));
+    }
+
+
+    /** @return the amount of bytes putVarInt() would use to write a value. */
+    public static int getVarIntSize(int value) {
+        if((value & (~0 << 7)) == 0) return 1;
+        if((value & (~0 << 14)) == 0) return 2;
+        if((value & (~0 << 21)) == 0) return 3;
+        if((value & (~0 << 28)) == 0) return 4;
+        return 5;
+    }
+
+    /** @return the amount of bytes putVarLong() would use to write a value. */
+    public static int getVarLongSize(long value) {
+        int size = 1;
+
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
     /** @return the amount of bytes written. */
     public int putUTF8String(String string) {
         if(string == null || string.length() == 0) return 0;
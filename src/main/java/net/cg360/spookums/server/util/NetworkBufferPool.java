@@ -0,0 +1,94 @@
+package net.cg360.spookums.server.util;
+
+import net.cg360.spookums.server.util.clean.Check;
+
+import java.util.ArrayDeque;
+
+/**
+ * Keeps hold of released buffers so they can be leased out again,
+ * rather than allocating a new one for every packet. Every buffer in a
+ * pool has the same capacity and is either on the heap or in direct
+ * memory.
+ *
+ * A leased buffer belongs to whoever leased it until it's released.
+ * It must not be used after being released.
+ *
+ * The primary pool is what outbound frames are encoded into. The writers
+ * and the compressor read frames as arrays (Java 8 has no ByteBuffer
+ * input for Deflater or OutputStream), so it must be on the heap. Direct
+ * pools are for staging bytes right before a channel write, such as the
+ * NISelector's write buffers.
+ */
+public class NetworkBufferPool {
+
+    private static NetworkBufferPool primaryInstance;
+
+    protected final int bufferSize;
+    protected final int maxRetained;
+    protected final boolean isDirect;
+
+    protected final ArrayDeque<NetworkBuffer> retained;
+    protected int allocatedCount;
+
+    public NetworkBufferPool(int bufferSize, int maxRetained, boolean isDirect) {
+        this.bufferSize = Check.inclusiveLowerBound(bufferSize, 1, "bufferSize");
+        this.maxRetained = Check.inclusiveLowerBound(maxRetained, 0, "maxRetained");
+        this.isDirect = isDirect;
+
+        this.retained = new ArrayDeque<>();
+        this.allocatedCount = 0;
+    }
+
+    /** @throws IllegalStateException if the pool is direct, as frames are encoded into the primary pool. */
+    public boolean setAsPrimaryInstance() {
+        if(isDirect) throw new IllegalStateException("The primary buffer pool must be on the heap.");
+
+        if(primaryInstance == null) {
+            primaryInstance = this;
+            return true;
+        }
+        return false;
+    }
+
+
+
+    /** @return a buffer covering the pool's full buffer size with its pointer at the start. */
+    public NetworkBuffer lease() {
+        synchronized (retained) {
+            NetworkBuffer buffer = retained.poll();
+            if(buffer != null) return buffer;
+
+            allocatedCount++;
+        }
+
+        return isDirect ? NetworkBuffer.allocateDirect(bufferSize) : NetworkBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Returns a leased buffer to the pool. If the pool is already holding
+     * as many as it can, the buffer is left to the garbage collector.
+     */
+    public void release(NetworkBuffer buffer) {
+        Check.nullParam(buffer, "buffer");
+        if(buffer.isDirect() != isDirect) throw new IllegalArgumentException("Buffer was not leased from this pool.");
+
+        buffer.reframe(0, bufferSize); // Also throws if the buffer is too small to be from this pool.
+
+        synchronized (retained) {
+            if(retained.size() < maxRetained) retained.push(buffer);
+        }
+    }
+
+
+
+    public int getBufferSize() { return bufferSize; }
+    public int getMaxRetained() { return maxRetained; }
+    public boolean isDirect() { return isDirect; }
+    public int getRetainedCount() { synchronized (retained) { return retained.size(); } }
+    /** @return the amount of buffers the pool has had to allocate, including any since dropped. */
+    public int getAllocatedCount() { synchronized (retained) { return allocatedCount; } }
+
+    public static NetworkBufferPool get() {
+        return primaryInstance;
+    }
+}
@@ -0,0 +1,171 @@
+package net.cg360.spookums.server.util;
+
+import net.cg360.spookums.server.core.data.json.Json;
+import net.cg360.spookums.server.core.data.json.JsonArray;
+import net.cg360.spookums.server.core.data.json.JsonObject;
+import net.cg360.spookums.server.core.data.json.io.JsonIO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks NetworkBuffer against spec/network_buffer_vectors.json, the
+ * encodings the C# client is checked against too. Every vector must
+ * encode to exactly its bytes and decode back to its value, and every
+ * invalid vector must be rejected when decoded.
+ */
+public final class NetworkBufferVectorCheck {
+
+    public static final String DEFAULT_PATH = "spec/network_buffer_vectors.json";
+
+    private NetworkBufferVectorCheck() { }
+
+
+    /** @return a description of each vector which didn't match. Empty if they all passed. */
+    public static List<String> check(File file) throws IOException {
+        // Read here rather than by JsonIO so the strings are always decoded as UTF-8.
+        String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        JsonObject spec = new JsonIO().read(text);
+        ArrayList<String> failures = new ArrayList<>();
+
+        for(JsonObject vector: children(spec, "vectors")) {
+            try {
+                String problem = checkVector(vector);
+                if(problem != null) failures.add(describe(vector) + ": " + problem);
+
+            } catch (RuntimeException err) {
+                failures.add(describe(vector) + ": " + err);
+            }
+        }
+
+        for(JsonObject vector: children(spec, "invalid")) {
+            try {
+                NetworkBuffer buffer = NetworkBuffer.wrap(fromHex(string(vector, "hex")));
+                Object decoded = decode(string(vector, "type"), buffer, vector);
+                failures.add(describe(vector) + ": decoded as " + decoded + " rather than being rejected");
+
+            } catch (RuntimeException expected) { }
+        }
+
+        return failures;
+    }
+
+
+    // @return null if the vector passed.
+    protected static String checkVector(JsonObject vector) {
+        String type = string(vector, "type");
+        byte[] expected = fromHex(string(vector, "hex"));
+
+        NetworkBuffer out = NetworkBuffer.allocate(expected.length);
+        encode(type, out, vector);
+
+        if(out.pointerIndex != expected.length) return "encoded to " + out.pointerIndex + " bytes, expected " + expected.length;
+        for(int i = 0; i < expected.length; i++)
+            if(out.peek(i) != expected[i]) return "encoded to " + toHex(out) + ", expected " + string(vector, "hex");
+
+        NetworkBuffer in = NetworkBuffer.wrap(expected);
+        Object decoded = decode(type, in, vector);
+        if(in.countBytesRemaining() != 0) return "left " + in.countBytesRemaining() + " byte(s) unread";
+
+        // The JSON parser only keeps floats, so decoded fixed-point values are compared at float precision.
+        if(type.equals("fixed")) {
+            float decodedValue = number(vector, "decoded").floatValue();
+            return ((Double) decoded).floatValue() == decodedValue ? null : "decoded to " + decoded + ", expected " + decodedValue;
+        }
+
+        Object value = expectedValue(type, vector);
+        return value.equals(decoded) ? null : "decoded to " + decoded + ", expected " + value;
+    }
+
+    protected static void encode(String type, NetworkBuffer buffer, JsonObject vector) {
+        switch (type) {
+            case "u8": buffer.putUnsignedByte(number(vector, "value").intValue()); break;
+            case "u16": buffer.putUnsignedShort(number(vector, "value").intValue()); break;
+            case "i32": buffer.putInt(number(vector, "value").intValue()); break;
+            case "i64": buffer.putLong(Long.parseLong(string(vector, "value"))); break;
+            case "f32": buffer.putFloat(number(vector, "value").floatValue()); break;
+            case "f64": buffer.putDouble(doubleOf(vector, "value")); break;
+            case "varint": buffer.putVarInt(number(vector, "value").intValue()); break;
+            case "varlong": buffer.putVarLong(Long.parseLong(string(vector, "value"))); break;
+            case "svarint": buffer.putSignedVarInt(number(vector, "value").intValue()); break;
+            case "svarlong": buffer.putSignedVarLong(Long.parseLong(string(vector, "value"))); break;
+            case "fixed": buffer.putFixedPoint(doubleOf(vector, "value"), number(vector, "fractionalBits").intValue()); break;
+            case "smallUtf8": buffer.putSmallUTF8String(string(vector, "value")); break;
+            case "utf8": buffer.putUTF8String(string(vector, "value")); break;
+            default: throw new IllegalArgumentException("Unknown vector type '" + type + "'");
+        }
+    }
+
+    protected static Object decode(String type, NetworkBuffer buffer, JsonObject vector) {
+        switch (type) {
+            case "u8": return (int) buffer.getUnsignedByte();
+            case "u16": return buffer.getUnsignedShort();
+            case "i32": return buffer.getInt();
+            case "i64": return buffer.getLong();
+            case "f32": return buffer.getFloat();
+            case "f64": return buffer.getDouble();
+            case "varint": return buffer.getVarInt();
+            case "varlong": return buffer.getVarLong();
+            case "svarint": return buffer.getSignedVarInt();
+            case "svarlong": return buffer.getSignedVarLong();
+            case "fixed": return buffer.getFixedPoint(number(vector, "fractionalBits").intValue());
+            case "smallUtf8": return buffer.getSmallUTF8String();
+            case "utf8": return buffer.getUnboundUTF8String(buffer.getUnsignedShort());
+            default: throw new IllegalArgumentException("Unknown vector type '" + type + "'");
+        }
+    }
+
+    protected static Object expectedValue(String type, JsonObject vector) {
+        switch (type) {
+            case "i64": case "varlong": case "svarlong": return Long.parseLong(string(vector, "value"));
+            case "f32": return number(vector, "value").floatValue();
+            case "f64": return doubleOf(vector, "value");
+            case "smallUtf8": case "utf8": return string(vector, "value");
+            default: return number(vector, "value").intValue();
+        }
+    }
+
+
+
+    protected static List<JsonObject> children(JsonObject spec, String key) {
+        ArrayList<JsonObject> objects = new ArrayList<>();
+        Json<?> array = spec.getChild(key);
+        if(array == null) return objects;
+
+        for(Json<?> child: ((JsonArray) array.getValue()).getChildren()) objects.add((JsonObject) child.getValue());
+        return objects;
+    }
+
+    protected static String string(JsonObject vector, String key) {
+        return String.valueOf(vector.getChild(key).getValue());
+    }
+
+    protected static Number number(JsonObject vector, String key) {
+        return (Number) vector.getChild(key).getValue();
+    }
+
+    // Numbers are parsed as floats, so doubles go back through their text (0.1 stays 0.1, not 0.1f widened).
+    protected static double doubleOf(JsonObject vector, String key) {
+        return Double.parseDouble(string(vector, key));
+    }
+
+    protected static String describe(JsonObject vector) {
+        return string(vector, "type") + " " + string(vector, "hex");
+    }
+
+    protected static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for(int i = 0; i < bytes.length; i++) bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        return bytes;
+    }
+
+    protected static String toHex(NetworkBuffer buffer) {
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < buffer.pointerIndex; i++) builder.append(String.format("%02x", buffer.peek(i)));
+        return builder.toString();
+    }
+}
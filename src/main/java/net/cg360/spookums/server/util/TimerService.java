@@ -0,0 +1,61 @@
+package net.cg360.spookums.server.util;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single daemon thread shared by all the delayed actions of the server's
+ * utilities (such as Cooldowns), so waiting on a timer costs a queue entry
+ * rather than a thread of its own.
+ *
+ * Actions run on the timer thread one after another, so they should be
+ * kept short. Anything slow should be handed off to a scheduler.
+ */
+public final class TimerService {
+
+    private static final AtomicInteger threadCount = new AtomicInteger(0);
+
+    // Created on first use so nothing is started unless something needs a timer.
+    private static class Holder {
+        private static final ScheduledThreadPoolExecutor EXECUTOR = createExecutor();
+    }
+
+    private TimerService() { }
+
+
+    /**
+     * Runs an action once the delay is up. Exceptions thrown by the action
+     * are printed rather than cancelling the timer thread.
+     * @param delayNanos the delay, which is treated as 0 if negative.
+     */
+    public static ScheduledFuture<?> schedule(Runnable action, long delayNanos) {
+        return Holder.EXECUTOR.schedule(() -> {
+            try {
+                action.run();
+
+            } catch (Exception err) {
+                err.printStackTrace();
+            }
+        }, Math.max(0, delayNanos), TimeUnit.NANOSECONDS);
+    }
+
+    /** @return the number of actions waiting on their delay. */
+    public static int getPendingCount() {
+        return Holder.EXECUTOR.getQueue().size();
+    }
+
+
+    private static ScheduledThreadPoolExecutor createExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "Timer-Service-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Cancelled timers are dropped straight away rather than sitting in the queue until they're due.
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+}
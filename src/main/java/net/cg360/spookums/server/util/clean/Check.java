@@ -61,6 +61,12 @@ public final class Check {
         return val;
     }
 
+    /** @see #inclusiveLowerBound(int, int, String) NaN is always out of bounds. */
+    public static double inclusiveLowerBound(double val, double bound, String name) {
+        if(!(val >= bound)) throw new IllegalStateException(String.format("'%s' is out of bounds (val = %s | Lower = %s)", name, val, bound));
+        return val;
+    }
+
     /**
      * Assets that a value is below/equal to a number.
      * @param val the value being checked.